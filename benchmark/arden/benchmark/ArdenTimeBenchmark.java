@@ -0,0 +1,36 @@
+package arden.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arden.runtime.ArdenTime;
+
+/** Formats times as strings (e.g. for WRITE statements and string concatenation). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArdenTimeBenchmark {
+	private final ArdenTime time = new ArdenTime(1262304000000L);
+
+	@Benchmark
+	public String formatTime() {
+		return time.toString();
+	}
+
+	@Benchmark
+	public String formatTimeList(ListState state) {
+		return state.times.toString();
+	}
+}
@@ -0,0 +1,214 @@
+package arden.benchmark;
+
+import java.io.PushbackReader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import arden.compiler.Compiler;
+import arden.compiler.CompilerPhase;
+import arden.compiler.CompilerPhaseListener;
+import arden.compiler.lexer.Lexer;
+import arden.compiler.node.EOF;
+import arden.compiler.node.Token;
+
+/**
+ * Measures the throughput of the {@link Compiler} and the time and allocation
+ * spent in each {@link CompilerPhase}.
+ * <p>
+ * The corpus consists of generated MLMs of increasing size, from a few
+ * statements to a thousand (larger MLMs exceed the branch distance limit of
+ * the class file format). Each MLM is compiled from its source text,
+ * like in {@link Compiler#compile(java.io.Reader)}. The parse phase includes
+ * lexing, as the parser pulls the tokens from the lexer. The time for lexing
+ * alone is measured separately by running the lexer over the same text.
+ * </p>
+ * <p>
+ * Run with <code>ant benchmark.compiler -Dbenchmark.compiler.args="[mlms per size] [iterations]"</code>.
+ * </p>
+ */
+public class CompilerBenchmark {
+	private static final int[] SIZES = { 5, 50, 500, 1000 };
+	private static final String[] SIZE_NAMES = { "small", "medium", "large", "huge" };
+
+	public static void main(String[] args) throws Exception {
+		int mlmsPerSize = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		List<List<String>> corpus = new ArrayList<List<String>>();
+		for (int size : SIZES) {
+			List<String> texts = new ArrayList<String>();
+			for (int i = 0; i < mlmsPerSize; i++) {
+				texts.add(generate(size, i));
+			}
+			corpus.add(texts);
+		}
+
+		// warm up
+		for (int i = 0; i < iterations; i++) {
+			for (List<String> texts : corpus) {
+				run(texts, new PhaseTimer());
+			}
+		}
+
+		System.out.println(String.format("%d MLMs per size, %d iterations, allocation %s", mlmsPerSize,
+				iterations, PhaseTimer.isAllocationSupported() ? "measured" : "not supported"));
+		for (int s = 0; s < SIZES.length; s++) {
+			List<String> texts = corpus.get(s);
+			PhaseTimer timer = new PhaseTimer();
+			long lexTime = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				run(texts, timer);
+			}
+			long totalTime = System.nanoTime() - start;
+			for (int i = 0; i < iterations; i++) {
+				lexTime += lex(texts);
+			}
+
+			int compiled = texts.size() * iterations;
+			System.out.println();
+			System.out.println(String.format("%s (%d statements): %.1f MLMs/s, %.1f KiB allocated per MLM",
+					SIZE_NAMES[s], SIZES[s], compiled / (totalTime / 1e9), timer.getTotalAllocated() / 1024.0
+							/ compiled));
+			System.out.println(String.format("  %-14s %8.3f ms/MLM", "(lexing only)", lexTime / 1e6 / compiled));
+			for (CompilerPhase phase : CompilerPhase.values()) {
+				System.out.println(String.format("  %-14s %8.3f ms/MLM %5.1f%% %10.1f KiB/MLM", phase,
+						timer.times[phase.ordinal()] / 1e6 / compiled,
+						100.0 * timer.times[phase.ordinal()] / timer.getTotalTime(),
+						timer.allocated[phase.ordinal()] / 1024.0 / compiled));
+			}
+		}
+	}
+
+	private static void run(List<String> texts, PhaseTimer timer) throws Exception {
+		for (String text : texts) {
+			Compiler compiler = new Compiler();
+			compiler.setPhaseListener(timer);
+			compiler.compile(new StringReader(text));
+		}
+	}
+
+	private static long lex(List<String> texts) throws Exception {
+		long start = System.nanoTime();
+		for (String text : texts) {
+			Lexer lexer = new Lexer(new PushbackReader(new StringReader(text), 1024));
+			Token token;
+			do {
+				token = lexer.next();
+			} while (!(token instanceof EOF));
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Generates an MLM with the given number of statements, split between the
+	 * data, logic and action slots.
+	 */
+	static String generate(int statements, int index) {
+		int dataCount = Math.max(1, statements / 2);
+		int logicCount = Math.max(1, statements * 2 / 5);
+		int actionCount = Math.max(1, statements - dataCount - logicCount);
+
+		StringBuilder b = new StringBuilder();
+		b.append("maintenance:\n");
+		b.append("title: compiler benchmark;;\n");
+		b.append("mlmname: bench_").append(statements).append('_').append(index).append(";;\n");
+		b.append("arden: Version 2.5;;\n");
+		b.append("version: 1.00;;\n");
+		b.append("institution: benchmark;;\n");
+		b.append("author: ;;\n");
+		b.append("specialist: ;;\n");
+		b.append("date: 2016-01-01;;\n");
+		b.append("validation: testing;;\n");
+		b.append("library:\n");
+		b.append("purpose: ;;\n");
+		b.append("explanation: ;;\n");
+		b.append("keywords: ;;\n");
+		b.append("knowledge:\n");
+		b.append("type: data-driven;;\n");
+		b.append("data:\n");
+		b.append("e := event {bench_event_").append(index).append("};\n");
+		for (int i = 0; i < dataCount; i++) {
+			b.append("n").append(i).append(" := ").append(i).append(" * 2 + ").append(index).append(";\n");
+		}
+		b.append(";;\n");
+		b.append("evoke: e;;\n");
+		b.append("logic:\n");
+		b.append("s := \"\";\n");
+		for (int i = 0; i < logicCount; i++) {
+			int n = i % dataCount;
+			b.append("if n").append(n).append(" > ").append(i).append(" then s := s || \"").append(i)
+					.append("\"; else m").append(i).append(" := maximum (n").append(n).append(", ").append(i)
+					.append(", 3); endif;\n");
+		}
+		b.append("conclude true;\n");
+		b.append(";;\n");
+		b.append("action:\n");
+		for (int i = 0; i < actionCount; i++) {
+			b.append("write \"value \" || n").append(i % dataCount).append(";\n");
+		}
+		b.append(";;\n");
+		b.append("end:\n");
+		return b.toString();
+	}
+
+	/** Sums up the time and allocated bytes of each phase. */
+	private static class PhaseTimer implements CompilerPhaseListener {
+		private static final com.sun.management.ThreadMXBean THREADS = getThreadMXBean();
+
+		final long[] times = new long[CompilerPhase.values().length];
+		final long[] allocated = new long[CompilerPhase.values().length];
+		private long startTime;
+		private long startAllocated;
+
+		private static com.sun.management.ThreadMXBean getThreadMXBean() {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+				return (com.sun.management.ThreadMXBean) bean;
+			}
+			return null;
+		}
+
+		static boolean isAllocationSupported() {
+			return THREADS != null;
+		}
+
+		private static long getAllocatedBytes() {
+			if (THREADS == null) {
+				return 0;
+			}
+			return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		@Override
+		public void phaseStarted(CompilerPhase phase) {
+			startAllocated = getAllocatedBytes();
+			startTime = System.nanoTime();
+		}
+
+		@Override
+		public void phaseFinished(CompilerPhase phase) {
+			times[phase.ordinal()] += System.nanoTime() - startTime;
+			allocated[phase.ordinal()] += getAllocatedBytes() - startAllocated;
+		}
+
+		long getTotalTime() {
+			long total = 0;
+			for (long time : times) {
+				total += time;
+			}
+			return total;
+		}
+
+		long getTotalAllocated() {
+			long total = 0;
+			for (long bytes : allocated) {
+				total += bytes;
+			}
+			return total;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package arden.benchmark;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import arden.compiler.Compiler;
+import arden.engine.EvokeEngine;
+import arden.runtime.ArdenDuration;
+import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenRunnable;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenValue;
+import arden.runtime.BaseExecutionContext;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.evoke.Trigger;
+
+/**
+ * Measures the throughput and latency of the {@link EvokeEngine}.
+ * <p>
+ * The engine runs groups of three synthetic MLMs. All MLMs of a group are
+ * evoked by the same event: one directly, one 1 second after the event and
+ * one every second for 3 seconds after the event. Events are sent for the
+ * groups in turn at a fixed rate (open loop, so a slow engine does not slow
+ * down the sender).
+ * </p>
+ * <p>
+ * The latency is measured for the directly evoked MLMs, from sending the
+ * event until the action slot has finished. The TIME OF each event carries
+ * its sequence number to find its send time (the triggers only use the
+ * EVENTTIME). Delayed and cyclic MLMs add load and are counted.
+ * </p>
+ * <p>
+ * Run with <code>ant benchmark.engine -Dbenchmark.engine.args="[mlms] [events/s] [seconds]"</code>.
+ * </p>
+ */
+public class EngineBenchmark {
+	private static final String[] EVOKE_SLOTS = { "e", "1 second after time of e",
+			"every 1 second for 3 seconds starting time of e" };
+	private static final String[] KINDS = { "event", "delayed", "cyclic" };
+	private static final String MLM_FILE = "EngineBenchmark.mlm";
+
+	public static void main(String[] args) throws Exception {
+		int mlmCount = args.length > 0 ? Integer.parseInt(args[0]) : 99;
+		int rate = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int groups = Math.max(1, mlmCount / EVOKE_SLOTS.length);
+		int eventCount = rate * seconds;
+
+		String template = readTemplate();
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		for (int group = 0; group < groups; group++) {
+			for (int kind = 0; kind < EVOKE_SLOTS.length; kind++) {
+				mlms.add(compile(template, group, kind));
+			}
+		}
+
+		BenchmarkContext context = new BenchmarkContext(eventCount);
+		EvokeEngine engine = new EvokeEngine(context, mlms);
+		context.setEngine(engine);
+		Thread engineThread = new Thread(engine, "engine");
+		engineThread.start();
+
+		// send events at the target rate
+		long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+		long start = System.nanoTime();
+		for (int i = 0; i < eventCount; i++) {
+			long due = start + i * interval;
+			long wait = due - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			ArdenEvent event = new ArdenEvent("bench_event_" + (i % groups), i, context.getCurrentTime().value);
+			context.sendTimes[i] = System.nanoTime();
+			context.call(event, ArdenDuration.ZERO, 50);
+		}
+		long sendTime = System.nanoTime() - start;
+
+		// wait for the directly evoked MLMs
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+		while (context.latencyCount.get() < eventCount && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		long totalTime = context.lastCompletion.get() - start;
+		engineThread.interrupt();
+		engineThread.join();
+
+		int completed = context.latencyCount.get();
+		long[] latencies = Arrays.copyOf(context.latencies, completed);
+		Arrays.sort(latencies);
+		System.out.println(String.format("MLMs: %d, target rate: %d events/s, events: %d", groups * 3, rate,
+				eventCount));
+		System.out.println(String.format("sent:       %.1f events/s", eventCount / (sendTime / 1e9)));
+		System.out.println(String.format("throughput: %.1f events/s (%d of %d completed)",
+				completed / (totalTime / 1e9), completed, eventCount));
+		System.out.println(String.format("latency [ms]: p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f",
+				percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+				percentile(latencies, 0.999), percentile(latencies, 1)));
+		for (int kind = 0; kind < KINDS.length; kind++) {
+			System.out.println(String.format("%-8s MLM runs: %d", KINDS[kind], context.runs[kind].get()));
+		}
+	}
+
+	private static MedicalLogicModule compile(String template, int group, int kind) throws Exception {
+		String text = template.replace("$KIND", KINDS[kind]).replace("$GROUP", Integer.toString(group))
+				.replace("$EVOKE", EVOKE_SLOTS[kind]).replace("$INDEX", Integer.toString(kind));
+		return new Compiler().compileMlm(new StringReader(text));
+	}
+
+	private static String readTemplate() throws IOException {
+		Reader reader = new InputStreamReader(EngineBenchmark.class.getResourceAsStream(MLM_FILE), "UTF-8");
+		try {
+			StringBuilder text = new StringBuilder();
+			char[] buffer = new char[4096];
+			int read;
+			while ((read = reader.read(buffer)) >= 0) {
+				text.append(buffer, 0, read);
+			}
+			return text.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+
+	private static class BenchmarkContext extends BaseExecutionContext {
+		final long[] sendTimes;
+		final long[] latencies;
+		final AtomicInteger latencyCount = new AtomicInteger();
+		final AtomicLong lastCompletion = new AtomicLong();
+		final AtomicLong[] runs = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+
+		BenchmarkContext(int eventCount) {
+			super(new URL[0]);
+			sendTimes = new long[eventCount];
+			latencies = new long[eventCount];
+		}
+
+		@Override
+		public void write(ArdenValue message, ArdenValue destination, double urgency) {
+			runs[Integer.parseInt(((ArdenString) message).value)].incrementAndGet();
+		}
+
+		@Override
+		public void call(ArdenRunnable mlm, ArdenValue[] arguments, ArdenValue delay, Trigger callerTrigger,
+				double urgency) {
+			ArdenEvent event = callerTrigger.getTriggeringEvent();
+			if (event != null && callerTrigger.getDelay() == 0) {
+				// directly evoked by an event: measure the latency
+				mlm = new TimedRunnable(mlm, this, (int) event.primaryTime);
+			}
+			super.call(mlm, arguments, delay, callerTrigger, urgency);
+		}
+	}
+
+	private static class TimedRunnable implements ArdenRunnable {
+		private final ArdenRunnable mlm;
+		private final BenchmarkContext context;
+		private final int eventIndex;
+
+		TimedRunnable(ArdenRunnable mlm, BenchmarkContext context, int eventIndex) {
+			this.mlm = mlm;
+			this.context = context;
+			this.eventIndex = eventIndex;
+		}
+
+		@Override
+		public ArdenValue[] run(ExecutionContext executionContext, ArdenValue[] arguments, Trigger evokingTrigger)
+				throws InvocationTargetException {
+			ArdenValue[] result = mlm.run(executionContext, arguments, evokingTrigger);
+			long now = System.nanoTime();
+			context.latencies[context.latencyCount.getAndIncrement()] = now - context.sendTimes[eventIndex];
+			context.lastCompletion.set(now);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package arden.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExpressionHelpers;
+
+/** Runs the list operators implemented in {@link ExpressionHelpers}. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionHelpersBenchmark {
+	private static final ArdenValue PATTERN = new ArdenString("value1%");
+
+	@Benchmark
+	public ArdenValue sortByData(ListState state) {
+		return ExpressionHelpers.sortByData(state.numbers);
+	}
+
+	@Benchmark
+	public ArdenValue sortByTime(ListState state) {
+		return ExpressionHelpers.sortByTime(state.numbers);
+	}
+
+	@Benchmark
+	public ArdenValue where(ListState state) {
+		return ExpressionHelpers.where(state.numbers, state.booleans);
+	}
+
+	@Benchmark
+	public ArdenValue median(ListState state) {
+		return ExpressionHelpers.median(state.numbers);
+	}
+
+	@Benchmark
+	public ArdenValue indexLatest(ListState state) {
+		return ExpressionHelpers.indexLatest(state.numbers, 3);
+	}
+
+	@Benchmark
+	public ArdenValue isInScalar(ListState state) {
+		return ExpressionHelpers.isIn(state.number, state.numbers);
+	}
+
+	@Benchmark
+	public ArdenValue isInList(ListState state) {
+		return ExpressionHelpers.isIn(state.numbers, state.otherNumbers);
+	}
+
+	@Benchmark
+	public ArdenValue matchesPattern(ListState state) {
+		return ExpressionHelpers.matchesPattern(state.strings, PATTERN);
+	}
+}
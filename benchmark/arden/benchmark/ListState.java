@@ -0,0 +1,65 @@
+package arden.benchmark;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import arden.runtime.ArdenBoolean;
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+
+/**
+ * Lists of random values (with primary times) in the sizes given by the
+ * <code>size</code> parameter. The random generator has a fixed seed, so all
+ * runs use the same data.
+ */
+@State(Scope.Benchmark)
+public class ListState {
+	private static final long START_TIME = 1262304000000L; // 2010-01-01
+
+	@Param({ "1", "100", "10000" })
+	public int size;
+
+	public ArdenValue number;
+	public ArdenValue otherNumber;
+	public ArdenValue time;
+	public ArdenList numbers;
+	public ArdenList otherNumbers;
+	public ArdenList times;
+	public ArdenList strings;
+	public ArdenList booleans;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42);
+		number = new ArdenNumber(7);
+		otherNumber = new ArdenNumber(3);
+		time = new ArdenTime(START_TIME);
+
+		ArdenValue[] numberValues = new ArdenValue[size];
+		ArdenValue[] otherNumberValues = new ArdenValue[size];
+		ArdenValue[] timeValues = new ArdenValue[size];
+		ArdenValue[] stringValues = new ArdenValue[size];
+		ArdenValue[] booleanValues = new ArdenValue[size];
+		for (int i = 0; i < size; i++) {
+			long primaryTime = START_TIME + random.nextInt(365 * 24 * 60) * 60000L;
+			numberValues[i] = ArdenNumber.create(random.nextInt(1000), primaryTime);
+			otherNumberValues[i] = ArdenNumber.create(random.nextInt(1000), primaryTime);
+			timeValues[i] = new ArdenTime(primaryTime);
+			stringValues[i] = new ArdenString("value" + random.nextInt(1000), primaryTime);
+			booleanValues[i] = ArdenBoolean.create(random.nextBoolean(), primaryTime);
+		}
+		numbers = new ArdenList(numberValues);
+		otherNumbers = new ArdenList(otherNumberValues);
+		times = new ArdenList(timeValues);
+		strings = new ArdenList(stringValues);
+		booleans = new ArdenList(booleanValues);
+	}
+}
@@ -0,0 +1,89 @@
+package arden.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.evoke.CallTrigger;
+import arden.tests.implementation.TestContext;
+
+/**
+ * Measures metaspace usage while MLMs are reloaded over and over, once with a
+ * class loader per MLM and once with hidden classes.
+ * <p>
+ * Each reload cycle creates a new {@link CompiledMlm} from the same class file
+ * and runs it, which defines a new class. Run with
+ * <code>java -cp ... arden.benchmark.MetaspaceBenchmark [cycles]</code>.
+ * </p>
+ */
+public class MetaspaceBenchmark {
+	private static final String MLM_FILE = "/arden/tests/implementation/x3.3.mlm";
+
+	public static void main(String[] args) throws Exception {
+		int cycles = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+		Compiler compiler = new Compiler();
+		CompiledMlm compiled = compiler.compileMlm(new InputStreamReader(
+				MetaspaceBenchmark.class.getResourceAsStream(MLM_FILE)));
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		compiled.saveClassFile(bos);
+		byte[] classFile = bos.toByteArray();
+		String name = compiled.getName();
+
+		System.out.println("strategy        cycles  time[ms]  metaspace[KiB]  loaded  unloaded");
+		run("class loader", false, classFile, name, cycles);
+		if (CompiledMlm.isHiddenClassSupported()) {
+			run("hidden class", true, classFile, name, cycles);
+		} else {
+			System.out.println("hidden class    not supported by this JVM");
+		}
+	}
+
+	private static void run(String strategy, boolean hidden, byte[] classFile, String name, int cycles)
+			throws Exception {
+		CompiledMlm.setUseHiddenClasses(hidden);
+		ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+		try {
+			collectGarbage();
+			long metaspaceBefore = getMetaspaceUsed();
+			long loadedBefore = classLoading.getTotalLoadedClassCount();
+			long unloadedBefore = classLoading.getUnloadedClassCount();
+			long start = System.nanoTime();
+
+			for (int i = 0; i < cycles; i++) {
+				MedicalLogicModule mlm = new CompiledMlm(classFile, name);
+				mlm.run(new TestContext(), null, new CallTrigger());
+			}
+
+			long time = (System.nanoTime() - start) / 1000000;
+			collectGarbage();
+			long metaspace = (getMetaspaceUsed() - metaspaceBefore) / 1024;
+			System.out.println(String.format("%-14s %7d %9d %15d %7d %9d", strategy, cycles, time, metaspace,
+					classLoading.getTotalLoadedClassCount() - loadedBefore,
+					classLoading.getUnloadedClassCount() - unloadedBefore));
+		} finally {
+			CompiledMlm.setUseHiddenClasses(false);
+		}
+	}
+
+	private static long getMetaspaceUsed() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ("Metaspace".equals(pool.getName())) {
+				return pool.getUsage().getUsed();
+			}
+		}
+		return 0;
+	}
+
+	private static void collectGarbage() throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+	}
+}
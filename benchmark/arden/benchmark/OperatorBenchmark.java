@@ -0,0 +1,84 @@
+package arden.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arden.runtime.ArdenValue;
+import arden.runtime.BinaryOperator;
+import arden.runtime.TernaryOperator;
+import arden.runtime.UnaryOperator;
+
+/** Runs the unary, binary and ternary operators on scalars and lists. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperatorBenchmark {
+	@Benchmark
+	public ArdenValue addScalars(ListState state) {
+		return BinaryOperator.ADD.run(state.number, state.otherNumber);
+	}
+
+	@Benchmark
+	public ArdenValue addScalarToList(ListState state) {
+		return BinaryOperator.ADD.run(state.numbers, state.number);
+	}
+
+	@Benchmark
+	public ArdenValue addLists(ListState state) {
+		return BinaryOperator.ADD.run(state.numbers, state.otherNumbers);
+	}
+
+	@Benchmark
+	public ArdenValue lessThanLists(ListState state) {
+		return BinaryOperator.LT.run(state.numbers, state.otherNumbers);
+	}
+
+	@Benchmark
+	public ArdenValue andLists(ListState state) {
+		return BinaryOperator.AND.run(state.booleans, state.booleans);
+	}
+
+	@Benchmark
+	public ArdenValue beforeScalarList(ListState state) {
+		return BinaryOperator.BEFORE.run(state.times, state.time);
+	}
+
+	@Benchmark
+	public ArdenValue minusScalar(ListState state) {
+		return UnaryOperator.MINUS.run(state.number);
+	}
+
+	@Benchmark
+	public ArdenValue minusList(ListState state) {
+		return UnaryOperator.MINUS.run(state.numbers);
+	}
+
+	@Benchmark
+	public ArdenValue sqrtList(ListState state) {
+		return UnaryOperator.SQRT.run(state.numbers);
+	}
+
+	@Benchmark
+	public ArdenValue isNullList(ListState state) {
+		return UnaryOperator.ISNULL.run(state.numbers);
+	}
+
+	@Benchmark
+	public ArdenValue withinToScalar(ListState state) {
+		return TernaryOperator.WITHINTO.run(state.number, state.otherNumber, state.number);
+	}
+
+	@Benchmark
+	public ArdenValue withinToList(ListState state) {
+		return TernaryOperator.WITHINTO.run(state.numbers, state.otherNumber, state.number);
+	}
+}
@@ -70,6 +70,38 @@ public interface CommandLineOptions {
 	File getDirectory();
 	boolean isDirectory();
 	
+	@Option(shortName = "j",
+			description = "Number of files to compile in parallel.",
+			defaultValue = "1")
+	int getJobs();
+
+	@Option(longName = "cache",
+			description = "Directory for caching compiled MLMs, so unchanged MLMs are not compiled again.")
+	File getCache();
+	boolean isCache();
+
+	@Option(longName = "bundle",
+			description = "Compile all MLMs into a single bundle file (.mlmb) instead of .class files.")
+	File getBundle();
+	boolean isBundle();
+
+	@Option(longName = "reload",
+			description = "Reload changed input files while the evoke engine is running.")
+	boolean getReload();
+
+	@Option(longName = "max-loaded-mlms",
+			description = "Maximum number of MLMs whose class stays loaded (0 for no limit).",
+			defaultValue = "1000")
+	int getMaxLoadedMlms();
+
+	@Option(longName = "hidden-classes",
+			description = "Define MLM classes as hidden classes (Java 15 or newer), which can be unloaded individually.")
+	boolean getHiddenClasses();
+
+	@Option(longName = "profile",
+			description = "Measure the execution time of each MLM slot and print it on exit.")
+	boolean getProfile();
+
 	@Option(shortName = "a",
 			description = "Arguments for MLM as Arden Syntax constants.")
 	List<String> getArguments();
@@ -80,6 +112,45 @@ public interface CommandLineOptions {
 	int getPort();
 	boolean isPort();
 
+	@Option(longName = "metrics-port",
+			description = "Port on which to serve the metrics of the evoke engine over HTTP (Prometheus format).")
+	int getMetricsPort();
+	boolean isMetricsPort();
+
+	@Option(longName = "metrics-address",
+			description = "Address on which to serve the metrics, e.g. 0.0.0.0 for all interfaces.",
+			defaultValue = "127.0.0.1")
+	String getMetricsAddress();
+
+	@Option(longName = "queue-capacity",
+			description = "Maximum number of calls waiting in the evoke engine (0 for no limit).",
+			defaultValue = "0")
+	int getQueueCapacity();
+
+	@Option(longName = "overload-policy",
+			description = "What to do with new calls when the evoke engine's queue is full: "
+					+ "block, reject, shed (drop lowest urgency) or coalesce (drop duplicates).",
+			defaultValue = "block")
+	String getOverloadPolicy();
+
+	@Option(longName = "coalesce",
+			description = "Merge duplicate MLM calls (same MLM, arguments and event) waiting in the evoke engine: "
+					+ "none, latest (run with the newest event) or count (run with the first event).",
+			defaultValue = "none")
+	String getCoalesce();
+
+	@Option(longName = "shards",
+			description = "Number of evoke engine shards, each with its own thread, queue and trigger state.",
+			defaultValue = "1")
+	int getShards();
+
+	@Option(longName = "partition-key",
+			description = "Class implementing arden.engine.Partitioner, which decides on which shard an event "
+					+ "is handled. Default: partition by the partition key of the event (e.g. the patient sent "
+					+ "to the event server), or by event name if it has none.")
+	String getPartitionKey();
+	boolean isPartitionKey();
+
 	
 	// *** Execution Environment ***
 	@Option(longName = { "classpath", "cp" },
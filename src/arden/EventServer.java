@@ -7,10 +7,14 @@ import java.net.Socket;
 import java.util.Scanner;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import arden.runtime.ArdenDuration;
 import arden.runtime.ArdenEvent;
 import arden.runtime.ExecutionContext;
+import arden.runtime.metrics.Counter;
+import arden.runtime.metrics.Gauge;
+import arden.runtime.metrics.MetricsRegistry;
 
 /**
  * Listens for events on a Socket. Calls
@@ -21,9 +25,23 @@ import arden.runtime.ExecutionContext;
  * <pre>
  *   <code>echo "Patient admission" > /dev/tcp/127.0.0.1/9701</code>
  * </pre>
+ * 
+ * The event name may be followed by a tab and the partition key of the event
+ * (see {@link ArdenEvent#partitionKey}), e.g. the patient id:
+ * 
+ * <pre>
+ *   <code>printf "Patient admission\t4711\n" > /dev/tcp/127.0.0.1/9701</code>
+ * </pre>
  */
 public class EventServer implements Runnable {
 	private static final int MAX_CONNECTIONS = 10;
+	private static final Counter CONNECTIONS = MetricsRegistry.getDefault().counter(
+			"arden_eventserver_connections_total", "Connections accepted by the event server");
+	private static final Counter EVENTS = MetricsRegistry.getDefault().counter("arden_eventserver_events_total",
+			"Events received by the event server");
+	private static final Counter ERRORS = MetricsRegistry.getDefault().counter("arden_eventserver_errors_total",
+			"Failed connections of the event server");
+	private final AtomicInteger activeConnections = new AtomicInteger();
 	private boolean verbose;
 	private int port;
 	private ExecutorService threadPool = Executors.newFixedThreadPool(MAX_CONNECTIONS);
@@ -33,6 +51,13 @@ public class EventServer implements Runnable {
 		this.verbose = verbose;
 		this.port = port;
 		this.context = context;
+		MetricsRegistry.getDefault().gauge("arden_eventserver_active_connections",
+				"Open connections of the event server", new Gauge() {
+					@Override
+					public double getValue() {
+						return activeConnections.get();
+					}
+				});
 	}
 
 	public void startServer() {
@@ -52,7 +77,8 @@ public class EventServer implements Runnable {
 			socket = new ServerSocket(port);
 			while (!Thread.currentThread().isInterrupted()) {
 				Socket connection = socket.accept();
-				threadPool.execute(new ClientHandler(connection, context, verbose));
+				CONNECTIONS.increment();
+				threadPool.execute(new ClientHandler(connection, context, verbose, activeConnections));
 			}
 		} catch (IOException e) {
 			System.err.println("Could not listen for events");
@@ -69,34 +95,51 @@ public class EventServer implements Runnable {
 		}
 	}
 
+	/** Parses an event name, optionally followed by a tab and its partition key. */
+	static ArdenEvent parseEvent(String line, long time) {
+		int tab = line.indexOf('\t');
+		if (tab < 0) {
+			return new ArdenEvent(line, time);
+		}
+		String partitionKey = line.substring(tab + 1).trim();
+		return new ArdenEvent(line.substring(0, tab), time, time, partitionKey.isEmpty() ? null : partitionKey);
+	}
+
 	private static class ClientHandler implements Runnable {
 		private Socket connection;
 		private ExecutionContext context;
 		private boolean verbose;
+		private AtomicInteger activeConnections;
 
-		ClientHandler(Socket connection, ExecutionContext context, boolean verbose) {
+		ClientHandler(Socket connection, ExecutionContext context, boolean verbose, AtomicInteger activeConnections) {
 			this.connection = connection;
 			this.context = context;
 			this.verbose = verbose;
+			this.activeConnections = activeConnections;
 		}
 
 		@Override
 		public void run() {
+			activeConnections.incrementAndGet();
 			try {
 				InputStream eventStream = connection.getInputStream();
 				Scanner scanner = new Scanner(eventStream);
 				while (scanner.hasNext() && !Thread.currentThread().isInterrupted()) {
-					String eventName = scanner.nextLine();
+					String line = scanner.nextLine();
 					if (verbose) {
-						System.out.println("Received event: " + eventName);
+						System.out.println("Received event: " + line);
 					}
 					// send event to context
-					ArdenEvent event = new ArdenEvent(eventName, context.getCurrentTime().value);
+					ArdenEvent event = parseEvent(line, context.getCurrentTime().value);
+					EVENTS.increment();
 					context.call(event, ArdenDuration.ZERO, 50);
 				}
 				scanner.close();
 			} catch (IOException e) {
+				ERRORS.increment();
 				e.printStackTrace();
+			} finally {
+				activeConnections.decrementAndGet();
 			}
 		}
 	}
@@ -28,18 +28,28 @@
 package arden;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -48,12 +58,20 @@ import com.lexicalscope.jewel.cli.Cli;
 import com.lexicalscope.jewel.cli.CliFactory;
 import com.lexicalscope.jewel.cli.HelpRequestedException;
 
+import arden.compiler.CompilationCache;
 import arden.compiler.CompiledMlm;
 import arden.compiler.Compiler;
 import arden.compiler.CompilerException;
+import arden.compiler.MlmBundle;
+import arden.compiler.ModuleClassCache;
 import arden.constants.ConstantParser;
 import arden.constants.ConstantParserException;
+import arden.engine.Coalescing;
+import arden.engine.Engine;
 import arden.engine.EvokeEngine;
+import arden.engine.OverloadPolicy;
+import arden.engine.PartitionedEngine;
+import arden.engine.Partitioner;
 import arden.runtime.ArdenValue;
 import arden.runtime.BaseExecutionContext;
 import arden.runtime.ExecutionContext;
@@ -61,6 +79,8 @@ import arden.runtime.MedicalLogicModule;
 import arden.runtime.StdIOExecutionContext;
 import arden.runtime.evoke.CallTrigger;
 import arden.runtime.jdbc.JDBCExecutionContext;
+import arden.runtime.metrics.MetricsRegistry;
+import arden.runtime.profiler.MlmProfiler;
 
 public class MainClass {
 	public final static String MLM_FILE_EXTENSION = ".mlm";
@@ -83,7 +103,12 @@ public class MainClass {
 		System.exit(0);
 	}
 
-	private boolean handleCommandLineArgs(String[] args) {
+	/**
+	 * Handles the command line like {@link #main(String[])}, without exiting.
+	 * 
+	 * @return Whether the command succeeded.
+	 */
+	public boolean handleCommandLineArgs(String[] args) {
 		// suggest using help if no options given
 		if (args.length < 1) {
 			printLogo();
@@ -117,6 +142,29 @@ public class MainClass {
 			extendClasspath();
 		}
 
+		if (options.getHiddenClasses()) {
+			if (!CompiledMlm.isHiddenClassSupported()) {
+				System.err.println("Hidden classes require Java 15 or newer.");
+				return false;
+			}
+			CompiledMlm.setUseHiddenClasses(true);
+		}
+
+		if (options.getMaxLoadedMlms() > 0) {
+			CompiledMlm.setClassCache(new ModuleClassCache(options.getMaxLoadedMlms()));
+		}
+
+		if (options.getProfile()) {
+			MlmProfiler.setEnabled(true);
+			Runtime.getRuntime().addShutdownHook(new Thread("profile dump") {
+				@Override
+				public void run() {
+					System.out.println();
+					MlmProfiler.dump(System.out);
+				}
+			});
+		}
+
 		// input files may be regular files or classnames
 		List<File> inputFiles;
 		try {
@@ -288,56 +336,162 @@ public class MainClass {
 			}
 		}
 
-		for (File file : files) {
-			// compile
-			CompiledMlm mlm;
-			if (options.getVerbose()) {
-				System.out.println("Compiling " + file.getPath());
-			}
-			try {
-				mlm = compileMlm(file);
-			} catch (MainException e) {
-				e.print();
-				success = false;
-				// skip MLM
-				continue;
+		// compile into a single bundle instead of .class files
+		final boolean bundle = options.isBundle();
+		List<CompiledMlm> compiled = new ArrayList<>();
+
+		int jobs = Math.min(options.getJobs(), files.size());
+		if (jobs <= 1) {
+			for (File file : files) {
+				CompiledMlm mlm = compileFile(file, outputDir, bundle, System.out, System.err);
+				if (mlm != null) {
+					compiled.add(mlm);
+				} else {
+					success = false;
+				}
 			}
+			return saveBundle(compiled, outputDir) && success;
+		}
 
-			// get output file name
-			String outName = mlm.getName() + COMPILED_MLM_FILE_EXTENSION;
-			File outputFile;
-			if (outputDir != null) {
-				outputFile = new File(outputDir, outName);
-				if (options.getVerbose()) {
-					System.out.println("Saved to " + outputFile.getPath());
+		/*
+		 * Compile files concurrently. The output of each file is buffered and
+		 * printed in the order of the input files.
+		 */
+		final File finalOutputDir = outputDir;
+		ExecutorService executor = Executors.newFixedThreadPool(jobs);
+		try {
+			List<Future<CompileResult>> results = new ArrayList<>();
+			for (final File file : files) {
+				results.add(executor.submit(new Callable<CompileResult>() {
+					@Override
+					public CompileResult call() {
+						CompileResult result = new CompileResult();
+						PrintStream out = new PrintStream(result.out);
+						PrintStream err = new PrintStream(result.err);
+						result.mlm = compileFile(file, finalOutputDir, bundle, out, err);
+						out.close();
+						err.close();
+						return result;
+					}
+				}));
+			}
+			for (Future<CompileResult> future : results) {
+				CompileResult result;
+				try {
+					result = future.get();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+					success = false;
+					continue;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				System.out.print(result.out.toString());
+				System.err.print(result.err.toString());
+				if (result.mlm != null) {
+					compiled.add(result.mlm);
+				} else {
+					success = false;
 				}
-			} else {
-				outputFile = new File(file.getParentFile(), outName);
-				System.err.println(
-						"Warning: File " + file.getPath() + " compiled, but no output directory given. Assuming "
-								+ outputFile.getPath() + " as output file.");
 			}
+		} finally {
+			executor.shutdown();
+		}
+		return saveBundle(compiled, outputDir) && success;
+	}
 
-			// write compiled MLM to file.
-			try {
+	/** Buffered output of compiling a file in parallel. */
+	private static class CompileResult {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final ByteArrayOutputStream err = new ByteArrayOutputStream();
+		CompiledMlm mlm;
+	}
 
-				BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outputFile));
-				mlm.saveClassFile(bos);
-				bos.close();
-			} catch (IOException e) {
-				System.err.println("Could not write output file " + outputFile.getPath() + " :");
-				e.printStackTrace();
-				success = false;
+	/**
+	 * Writes the compiled MLMs into the bundle file given by the --bundle
+	 * option. Does nothing if that option is not set.
+	 * 
+	 * @return <code>true</code> if the bundle was saved or not requested.
+	 */
+	private boolean saveBundle(List<CompiledMlm> mlms, File outputDir) {
+		if (!options.isBundle()) {
+			return true;
+		}
+		File bundleFile = options.getBundle();
+		if (outputDir != null && !bundleFile.isAbsolute()) {
+			bundleFile = new File(outputDir, bundleFile.getPath());
+		}
+		try {
+			MlmBundle.write(bundleFile, mlms);
+		} catch (IOException e) {
+			System.err.println("Could not write bundle " + bundleFile.getPath() + " :");
+			e.printStackTrace();
+			return false;
+		}
+		if (options.getVerbose()) {
+			System.out.println("Saved " + mlms.size() + " MLMs to " + bundleFile.getPath());
+		}
+		return true;
+	}
+
+	/**
+	 * Compiles a single file and writes the .class file, unless the MLM is
+	 * added to a bundle.
+	 * 
+	 * @return The compiled MLM or <code>null</code> if the file could not be
+	 *         compiled or saved.
+	 */
+	private CompiledMlm compileFile(File file, File outputDir, boolean bundle, PrintStream out, PrintStream err) {
+		// compile
+		CompiledMlm mlm;
+		if (options.getVerbose()) {
+			out.println("Compiling " + file.getPath());
+		}
+		try {
+			mlm = compileMlm(file, getCompilationCache());
+		} catch (MainException e) {
+			e.print(err);
+			// skip MLM
+			return null;
+		}
+		if (bundle) {
+			return mlm;
+		}
+
+		// get output file name
+		String outName = mlm.getName() + COMPILED_MLM_FILE_EXTENSION;
+		File outputFile;
+		if (outputDir != null) {
+			outputFile = new File(outputDir, outName);
+			if (options.getVerbose()) {
+				out.println("Saved to " + outputFile.getPath());
 			}
+		} else {
+			outputFile = new File(file.getParentFile(), outName);
+			err.println("Warning: File " + file.getPath() + " compiled, but no output directory given. Assuming "
+					+ outputFile.getPath() + " as output file.");
 		}
 
-		return success;
+		// write compiled MLM to file.
+		try {
+
+			BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outputFile));
+			mlm.saveClassFile(bos);
+			bos.close();
+		} catch (IOException e) {
+			err.println("Could not write output file " + outputFile.getPath() + " :");
+			e.printStackTrace(err);
+			return null;
+		}
+		return mlm;
 	}
 
 	public boolean runEngine(List<File> files) {
+		BaseExecutionContext context = createExecutionContext();
 		List<MedicalLogicModule> mlms;
 		try {
-			mlms = getMlmsFromFiles(files);
+			mlms = getMlmsFromFiles(files, context);
 		} catch (MainException e) {
 			e.print();
 			return false;
@@ -360,15 +514,72 @@ public class MainClass {
 			}
 		});
 
-		BaseExecutionContext context = createExecutionContext();
-		EvokeEngine engine = new EvokeEngine(context, mlms);
+		if (options.getQueueCapacity() < 0) {
+			System.err.println("The queue capacity must not be negative.");
+			return false;
+		}
+		OverloadPolicy policy;
+		try {
+			policy = OverloadPolicy.valueOf(options.getOverloadPolicy().trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("Unknown overload policy: " + options.getOverloadPolicy());
+			return false;
+		}
+		Coalescing coalescing;
+		try {
+			coalescing = Coalescing.valueOf(options.getCoalesce().trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("Unknown coalescing mode: " + options.getCoalesce());
+			return false;
+		}
+		if (options.getShards() < 1) {
+			System.err.println("The number of shards must be positive.");
+			return false;
+		}
+		Engine engine;
+		if (options.getShards() > 1) {
+			Partitioner partitioner = Partitioner.PARTITION_KEY;
+			if (options.isPartitionKey()) {
+				try {
+					partitioner = (Partitioner) Class.forName(options.getPartitionKey()).getConstructor()
+							.newInstance();
+				} catch (ReflectiveOperationException | ClassCastException e) {
+					System.err.println("Could not create partitioner: " + options.getPartitionKey());
+					e.printStackTrace();
+					return false;
+				}
+			}
+			engine = new PartitionedEngine(context, mlms, options.getShards(), partitioner,
+					options.getQueueCapacity(), policy);
+		} else {
+			engine = new EvokeEngine(context, mlms, options.getQueueCapacity(), policy);
+		}
+		engine.setCoalescing(coalescing);
 		context.setEngine(engine);
 
+		// replace MLMs in the running engine when their files change
+		if (options.getReload()) {
+			new ModuleReloader(this, engine, context, files, options.getVerbose()).startReloader();
+		}
+
 		// start event server
 		if (options.isPort()) {
 			new EventServer(context, options.getVerbose(), options.getPort()).startServer();
 		}
 
+		// serve metrics
+		if (options.isMetricsPort()) {
+			try {
+				InetAddress address = InetAddress.getByName(options.getMetricsAddress());
+				new MetricsServer(MetricsRegistry.getDefault(), options.getVerbose(), address,
+						options.getMetricsPort()).startServer();
+			} catch (IOException e) {
+				System.err.println("Could not serve metrics");
+				e.printStackTrace();
+				return false;
+			}
+		}
+
 		// launch engine loop on main thread -> only exits on interrupt
 		engine.run();
 
@@ -391,6 +602,13 @@ public class MainClass {
 		return args.toArray(new ArdenValue[args.size()]);
 	}
 
+	private CompilationCache getCompilationCache() {
+		if (options.isCache()) {
+			return new CompilationCache(options.getCache());
+		}
+		return null;
+	}
+
 	private BaseExecutionContext createExecutionContext() {
 		if (options.getEnvironment().startsWith("jdbc")) {
 			return new JDBCExecutionContext(options);
@@ -402,39 +620,145 @@ public class MainClass {
 	}
 
 	private List<MedicalLogicModule> getMlmsFromFiles(List<File> files) throws MainException {
+		return getMlmsFromFiles(files, null);
+	}
+
+	/**
+	 * Loads the MLMs in parallel. The result is in the same order as the
+	 * files. Errors are collected for all files and thrown together.
+	 * 
+	 * @param triggerContext
+	 *            If not <code>null</code>, the triggers of each MLM are also
+	 *            initialized, so the engine does not have to do this when it
+	 *            starts.
+	 */
+	private List<MedicalLogicModule> getMlmsFromFiles(List<File> files, final ExecutionContext triggerContext)
+			throws MainException {
+		List<Callable<List<MedicalLogicModule>>> tasks = new ArrayList<>();
+		for (final File file : files) {
+			tasks.add(new Callable<List<MedicalLogicModule>>() {
+				@Override
+				public List<MedicalLogicModule> call() throws Exception {
+					List<MedicalLogicModule> mlms = loadMlms(file);
+					if (triggerContext != null) {
+						for (MedicalLogicModule mlm : mlms) {
+							if (mlm instanceof CompiledMlm) {
+								// defines the class, but does not run the data slot
+								((CompiledMlm) mlm).getStaticTriggers(triggerContext);
+							}
+						}
+					}
+					return mlms;
+				}
+			});
+		}
+
+		ForkJoinPool pool = new ForkJoinPool();
+		List<Future<List<MedicalLogicModule>>> results;
+		try {
+			results = pool.invokeAll(tasks);
+		} finally {
+			pool.shutdown();
+		}
+
 		List<MedicalLogicModule> mlms = new ArrayList<>();
 		List<String> errors = new ArrayList<String>();
-		for (File file : files) {
-			String filename = file.getName();
-			if (filename.endsWith(COMPILED_MLM_FILE_EXTENSION)) {
-				// load compiled mlm (.class file)
-				try {
-					mlms.add(new CompiledMlm(file, getFilenameBase(filename)));
-				} catch (IOException e) {
-					throw new MainException("Error loading " + file.getPath(), e);
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				mlms.addAll(results.get(i).get());
+			} catch (ExecutionException e) {
+				// the pool may wrap checked exceptions into RuntimeExceptions
+				Throwable cause = e.getCause();
+				while (!(cause instanceof MainException) && cause instanceof RuntimeException
+						&& cause.getCause() != null) {
+					cause = cause.getCause();
 				}
-			} else if (file.getName().endsWith(MLM_FILE_EXTENSION)) {
-				// compile .mlm file
-				if (options.getVerbose()) {
-					System.out.println("Compiling " + file.getPath() + " ...");
+				if (cause instanceof MainException) {
+					errors.add(cause.getMessage() + getCauseMessage(cause.getCause()));
+				} else {
+					errors.add("Error loading " + files.get(i).getPath() + getCauseMessage(cause));
 				}
-				mlms.add(compileMlm(file));
-			} else {
-				errors.add("File \"" + file.getPath() + "\" is neither .class nor .mlm file. Can't run such a file.");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MainException("Interrupted while loading MLMs", e);
 			}
 		}
 		if (!errors.isEmpty()) {
 			throw new MainException(errors);
 		}
+
+		/*
+		 * Triggers that depend on the data slot are initialized one after the
+		 * other, as the data slot may use the execution context (e.g. queries)
+		 * which is not necessarily thread-safe.
+		 */
+		if (triggerContext != null) {
+			for (MedicalLogicModule mlm : mlms) {
+				try {
+					mlm.getTriggers(triggerContext);
+				} catch (InvocationTargetException e) {
+					throw new MainException("Could not initialize triggers of " + mlm.getName(), e);
+				}
+			}
+		}
 		return mlms;
 	}
 
+	private static String getCauseMessage(Throwable cause) {
+		if (cause == null) {
+			return "";
+		}
+		return ": " + cause;
+	}
+
+	List<MedicalLogicModule> loadMlms(File file) throws MainException {
+		String filename = file.getName();
+		if (filename.endsWith(COMPILED_MLM_FILE_EXTENSION)) {
+			// load compiled mlm (.class file)
+			try {
+				return Collections.<MedicalLogicModule> singletonList(new CompiledMlm(file, getFilenameBase(filename)));
+			} catch (IOException e) {
+				throw new MainException("Error loading " + file.getPath(), e);
+			}
+		} else if (filename.endsWith(MlmBundle.FILE_EXTENSION)) {
+			// memory-map bundle of compiled MLMs
+			try {
+				return MlmBundle.open(file).getModules();
+			} catch (IOException e) {
+				throw new MainException("Error loading " + file.getPath(), e);
+			}
+		} else if (filename.endsWith(MLM_FILE_EXTENSION)) {
+			// compile .mlm file
+			if (options.getVerbose()) {
+				System.out.println("Compiling " + file.getPath() + " ...");
+			}
+			return Collections.<MedicalLogicModule> singletonList(compileMlm(file, getCompilationCache()));
+		} else {
+			throw new MainException("File \"" + file.getPath()
+					+ "\" is neither .class, .mlm nor .mlmb file. Can't run such a file.");
+		}
+	}
+
 	public static CompiledMlm compileMlm(File file) throws MainException {
+		return compileMlm(file, null);
+	}
+
+	/**
+	 * Compiles a single MLM.
+	 * 
+	 * @param cache
+	 *            Cache of compiled MLMs. May be <code>null</code>.
+	 */
+	public static CompiledMlm compileMlm(File file, CompilationCache cache) throws MainException {
 		CompiledMlm mlm;
-		Compiler compiler = new Compiler();
-		compiler.enableDebugging(file.getPath());
 		try {
-			mlm = compiler.compileMlm(new FileReader(file.getPath()));
+			if (cache != null) {
+				mlm = cache.compileMlm(new FileReader(file.getPath()), file.getPath());
+			} else {
+				Compiler compiler = new Compiler();
+				compiler.enableDebugging(file.getPath());
+				mlm = compiler.compileMlm(new FileReader(file.getPath()));
+			}
 		} catch (CompilerException e) {
 			throw new MainException("Could not compile " + file.getPath(), e);
 		} catch (FileNotFoundException e) {
@@ -497,7 +821,7 @@ public class MainClass {
 	}
 
 	@SuppressWarnings("serial")
-	private static class MainException extends Exception {
+	static class MainException extends Exception {
 
 		public MainException(String message) {
 			super(message);
@@ -521,9 +845,13 @@ public class MainClass {
 		}
 
 		public void print() {
-			System.err.println(getMessage());
+			print(System.err);
+		}
+
+		public void print(PrintStream err) {
+			err.println(getMessage());
 			if (getCause() != null) {
-				printStackTrace();
+				printStackTrace(err);
 			}
 		}
 	}
@@ -0,0 +1,91 @@
+package arden;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import arden.runtime.metrics.MetricsRegistry;
+
+/**
+ * Serves the metrics of a {@link MetricsRegistry} over HTTP in the Prometheus
+ * text format. To read the metrics (in bash):
+ * 
+ * <pre>
+ *   <code>curl http://127.0.0.1:9702/metrics</code>
+ * </pre>
+ */
+public class MetricsServer {
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final MetricsRegistry registry;
+	private final boolean verbose;
+	private final InetAddress address;
+	private final int port;
+	private HttpServer server;
+
+	/** Creates a server which only accepts connections from this host. */
+	public MetricsServer(MetricsRegistry registry, boolean verbose, int port) {
+		this(registry, verbose, InetAddress.getLoopbackAddress(), port);
+	}
+
+	/**
+	 * @param address
+	 *            The address to bind to, e.g. the wildcard address to serve
+	 *            the metrics on all interfaces.
+	 */
+	public MetricsServer(MetricsRegistry registry, boolean verbose, InetAddress address, int port) {
+		this.registry = registry;
+		this.verbose = verbose;
+		this.address = address;
+		this.port = port;
+	}
+
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(address, port), 0);
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					if (!"GET".equals(exchange.getRequestMethod())) {
+						exchange.sendResponseHeaders(405, -1);
+						return;
+					}
+					StringWriter text = new StringWriter();
+					registry.write(text);
+					byte[] body = text.toString().getBytes("UTF-8");
+					exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+					exchange.sendResponseHeaders(200, body.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(body);
+					out.close();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		// requests are handled on the server's own thread
+		server.start();
+		if (verbose) {
+			System.out.println("Serving metrics on http://" + server.getAddress().getHostString() + ":" + getPort()
+					+ "/metrics");
+		}
+	}
+
+	/** Gets the port of the running server, e.g. if started with port 0. */
+	public int getPort() {
+		return server != null ? server.getAddress().getPort() : port;
+	}
+
+	public void stopServer() {
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+	}
+}
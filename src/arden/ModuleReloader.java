@@ -0,0 +1,190 @@
+package arden;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import arden.compiler.CompiledMlm;
+import arden.engine.Engine;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+
+/**
+ * Watches the input files of the evoke engine. When a file is changed, it is
+ * compiled (or loaded) on this thread and the new version replaces the old
+ * one in the running engine, see {@link Engine#replaceModule(MedicalLogicModule)}.
+ * <p>
+ * Saving a file often causes several events (e.g. create and modify, or one
+ * modify per write). A file is only reloaded after no event for it arrived for
+ * a quiet period, so it is compiled once and not while it is half written.
+ * </p>
+ */
+public class ModuleReloader implements Runnable {
+	/** Default time without changes before a file is reloaded. */
+	public static final long DEFAULT_QUIET_MILLIS = 200;
+
+	private final MainClass main;
+	private final Engine engine;
+	private final ExecutionContext context;
+	private final Map<Path, File> files = new HashMap<Path, File>();
+	private final boolean verbose;
+	private final long quietNanos;
+	private WatchService watcher;
+	private Thread thread;
+
+	public ModuleReloader(MainClass main, Engine engine, ExecutionContext context, List<File> files,
+			boolean verbose) {
+		this(main, engine, context, files, verbose, DEFAULT_QUIET_MILLIS);
+	}
+
+	/**
+	 * @param quietMillis
+	 *            Time without further events for a file before it is
+	 *            reloaded.
+	 */
+	public ModuleReloader(MainClass main, Engine engine, ExecutionContext context, List<File> files,
+			boolean verbose, long quietMillis) {
+		this.main = main;
+		this.engine = engine;
+		this.context = context;
+		this.verbose = verbose;
+		this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+		for (File file : files) {
+			this.files.put(file.toPath().toAbsolutePath().normalize(), file);
+		}
+	}
+
+	/**
+	 * Starts watching the files. Changes after this method returns are
+	 * reloaded on a new thread.
+	 */
+	public void startReloader() {
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+			Set<Path> directories = new HashSet<Path>();
+			for (Path file : files.keySet()) {
+				directories.add(file.getParent());
+			}
+			for (Path directory : directories) {
+				directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+			}
+		} catch (IOException e) {
+			System.err.println("Could not watch input files for changes");
+			e.printStackTrace();
+			return;
+		}
+		thread = new Thread(this, "MLM reloader");
+		// don't keep the process alive when the engine stops
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Stops watching the files and waits for the reloader thread. */
+	public void stopReloader() throws InterruptedException {
+		if (thread != null) {
+			thread.interrupt();
+			thread.join();
+			thread = null;
+		}
+	}
+
+	@Override
+	public void run() {
+		// changed files with the time when they are reloaded
+		Map<File, Long> pending = new LinkedHashMap<File, Long>();
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key;
+				if (pending.isEmpty()) {
+					key = watcher.take();
+				} else {
+					long wait = getEarliest(pending) - System.nanoTime();
+					key = wait > 0 ? watcher.poll(wait, TimeUnit.NANOSECONDS) : null;
+				}
+				if (key != null) {
+					Path directory = (Path) key.watchable();
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							continue;
+						}
+						File file = files.get(directory.resolve((Path) event.context()));
+						if (file != null) {
+							// each event restarts the quiet period
+							pending.put(file, System.nanoTime() + quietNanos);
+						}
+					}
+					key.reset();
+				}
+
+				long now = System.nanoTime();
+				Iterator<Map.Entry<File, Long>> it = pending.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry<File, Long> entry = it.next();
+					if (entry.getValue() - now <= 0) {
+						it.remove();
+						reload(entry.getKey());
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// shutting down
+		} finally {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static long getEarliest(Map<File, Long> pending) {
+		long earliest = Long.MAX_VALUE;
+		boolean first = true;
+		for (long time : pending.values()) {
+			if (first || time - earliest < 0) {
+				earliest = time;
+				first = false;
+			}
+		}
+		return earliest;
+	}
+
+	/** Loads the changed file and replaces its MLMs in the engine. */
+	protected void reload(File file) {
+		long start = System.nanoTime();
+		List<MedicalLogicModule> mlms;
+		try {
+			mlms = main.loadMlms(file);
+		} catch (MainClass.MainException e) {
+			// keep running the old version
+			e.print();
+			return;
+		}
+		for (MedicalLogicModule mlm : mlms) {
+			if (mlm instanceof CompiledMlm) {
+				// define the class before it is swapped in
+				((CompiledMlm) mlm).getStaticTriggers(context);
+			}
+			MedicalLogicModule oldMlm = engine.replaceModule(mlm);
+			if (verbose) {
+				long millis = (System.nanoTime() - start) / 1000000;
+				System.out.println((oldMlm != null ? "Reloaded " : "Added ") + mlm.getName() + " from "
+						+ file.getPath() + " in " + millis + " ms");
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.codegenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Reads class level attributes from .class files without loading the class.
+ */
+public final class ClassFileReader {
+	private ClassFileReader() {
+	}
+
+	/**
+	 * Finds a class level attribute.
+	 * 
+	 * @param classFile
+	 *            The contents of the .class file.
+	 * @param name
+	 *            The name of the attribute.
+	 * @return The data of the attribute or <code>null</code> if the class has
+	 *         no such attribute.
+	 */
+	public static byte[] getAttribute(byte[] classFile, String name) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(classFile));
+		if (input.readInt() != 0xCAFEBABE)
+			throw new IOException("Not a class file.");
+		input.readUnsignedShort(); // minor_version
+		input.readUnsignedShort(); // major_version
+
+		// remember which constant pool entry holds the attribute name
+		int constantPoolCount = input.readUnsignedShort();
+		int nameIndex = -1;
+		for (int i = 1; i < constantPoolCount; i++) {
+			int tag = input.readUnsignedByte();
+			switch (tag) {
+			case 1: // Utf8
+				if (name.equals(input.readUTF()))
+					nameIndex = i;
+				break;
+			case 7: // Class
+			case 8: // String
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				skip(input, 2);
+				break;
+			case 15: // MethodHandle
+				skip(input, 3);
+				break;
+			case 3: // Integer
+			case 4: // Float
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				skip(input, 4);
+				break;
+			case 5: // Long
+			case 6: // Double
+				skip(input, 8);
+				i++; // takes two entries
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+		if (nameIndex < 0)
+			return null;
+
+		skip(input, 6); // access_flags, this_class, super_class
+		skip(input, 2 * input.readUnsignedShort()); // interfaces
+		skipMembers(input); // fields
+		skipMembers(input); // methods
+
+		int attributesCount = input.readUnsignedShort();
+		for (int i = 0; i < attributesCount; i++) {
+			int attributeNameIndex = input.readUnsignedShort();
+			int length = input.readInt();
+			if (attributeNameIndex == nameIndex) {
+				byte[] data = new byte[length];
+				input.readFully(data);
+				return data;
+			}
+			skip(input, length);
+		}
+		return null;
+	}
+
+	private static void skipMembers(DataInputStream input) throws IOException {
+		int count = input.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			skip(input, 6); // access_flags, name_index, descriptor_index
+			skipAttributes(input);
+		}
+	}
+
+	private static void skipAttributes(DataInputStream input) throws IOException {
+		int count = input.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			skip(input, 2); // attribute_name_index
+			skip(input, input.readInt());
+		}
+	}
+
+	private static void skip(DataInputStream input, int length) throws IOException {
+		if (input.skipBytes(length) != length)
+			throw new IOException("Unexpected end of class file.");
+	}
+}
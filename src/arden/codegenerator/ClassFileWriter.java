@@ -67,6 +67,18 @@ public final class ClassFileWriter {
 		return sourceFileName;
 	}
 
+	private List<AttributeInfo> customAttributes = new ArrayList<AttributeInfo>();
+
+	/**
+	 * Adds a custom attribute to the class. The JVM ignores attributes it does
+	 * not know, they can be read with {@link ClassFileReader}.
+	 */
+	public void addAttribute(String name, byte[] data) {
+		AttributeInfo attribute = new AttributeInfo(name);
+		attribute.data = data;
+		customAttributes.add(attribute);
+	}
+
 	private class AttributeInfo {
 		int nameIndex;
 		byte[] data;
@@ -181,6 +193,7 @@ public final class ClassFileWriter {
 			sourceFile.data = byteOutputStream.toByteArray();
 			attributes.add(sourceFile);
 		}
+		attributes.addAll(customAttributes);
 
 		// Write the class file
 		output.writeInt(0xCAFEBABE); // magic
@@ -28,10 +28,14 @@
 package arden.compiler;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 
 import arden.codegenerator.Label;
+import arden.compiler.analysis.DepthFirstAdapter;
 import arden.compiler.node.*;
 import arden.runtime.ArdenValue;
+import arden.runtime.ListBuilder;
 import arden.runtime.MedicalLogicModuleImplementation;
 
 /**
@@ -104,6 +108,12 @@ final class ActionCompiler extends VisitorBase {
 	public static void compileForStatement(CompilerContext context, TFor tFor, TIdentifier identifier,
 			PExpr collectionExpr, Switchable block, Switch blockCompiler) {
 		context.writer.sequencePoint(tFor.getLine());
+		GetExpressionVisitor exprVisitor = new GetExpressionVisitor();
+		collectionExpr.apply(exprVisitor);
+		if (exprVisitor.result instanceof ASeqExprRange) {
+			compileSeqtoForStatement(context, identifier, (ASeqExprRange) exprVisitor.result, block, blockCompiler);
+			return;
+		}
 		collectionExpr.apply(new ExpressionCompiler(context));
 		try {
 			context.writer.invokeInstance(ArdenValue.class.getMethod("getElements"));
@@ -114,18 +124,13 @@ final class ActionCompiler extends VisitorBase {
 		}
 		int arrayVar = context.allocateVariable();
 		context.writer.storeVariable(arrayVar);
+		List<DataVariable> listBuilders = beginListBuilders(context, block);
 		int loopIndexVar = context.allocateVariable();
 		context.writer.loadIntegerConstant(0);
 		context.writer.storeIntVariable(loopIndexVar);
 
-		String varName = identifier.getText();
-		if (context.codeGenerator.getVariable(varName) != null)
-			throw new RuntimeCompilerException(identifier, "A variable with the name '" + varName
-					+ "' is already defined at this location.");
-
-		ForLoopVariable newLoopVariable = new ForLoopVariable(identifier, context.allocateVariable());
-		context.codeGenerator.addVariable(newLoopVariable);
-		context.writer.defineLocalVariable(newLoopVariable.variableIndex, varName, ArdenValue.class);
+		ForLoopVariable newLoopVariable = declareForLoopVariable(context, identifier);
+		context.writer.defineLocalVariable(newLoopVariable.variableIndex, identifier.getText(), ArdenValue.class);
 
 		Label loopCondition = new Label();
 		Label loopBody = new Label();
@@ -150,8 +155,93 @@ final class ActionCompiler extends VisitorBase {
 		context.writer.arrayLength();
 		context.writer.jumpIfLessThan(loopBody);
 
-		if (newLoopVariable != null)
-			context.codeGenerator.deleteVariable(newLoopVariable);
+		endListBuilders(context, listBuilders);
+		context.codeGenerator.deleteVariable(newLoopVariable);
+	}
+
+	/**
+	 * Compiles "FOR i IN a SEQTO b DO ..." as a loop over a primitive int
+	 * counter, so the list of numbers is never created. The counter is only
+	 * boxed into the loop variable if the loop body uses it.
+	 */
+	private static void compileSeqtoForStatement(CompilerContext context, TIdentifier identifier,
+			ASeqExprRange range, Switchable block, Switch blockCompiler) {
+		ExpressionCompiler expressionCompiler = new ExpressionCompiler(context);
+		range.getThisOr().apply(expressionCompiler);
+		range.getNextOr().apply(expressionCompiler);
+		// stack: lower, upper
+		context.writer.dup2();
+		context.writer.invokeStatic(ExpressionCompiler.getMethod("seqtoUpperBound", ArdenValue.class,
+				ArdenValue.class));
+		int upperVar = context.allocateVariable();
+		context.writer.storeIntVariable(upperVar);
+		context.writer.invokeStatic(ExpressionCompiler.getMethod("seqtoLowerBound", ArdenValue.class,
+				ArdenValue.class));
+		int counterVar = context.allocateVariable();
+		context.writer.storeIntVariable(counterVar);
+		List<DataVariable> listBuilders = beginListBuilders(context, block);
+
+		ForLoopVariable newLoopVariable = declareForLoopVariable(context, identifier);
+		boolean isLoopVariableUsed = isIdentifierUsed(block, identifier.getText());
+		if (isLoopVariableUsed)
+			context.writer.defineLocalVariable(newLoopVariable.variableIndex, identifier.getText(), ArdenValue.class);
+
+		Label loopBody = new Label();
+		Label loopEnd = new Label();
+		// if (upperVar < counterVar) goto loopEnd;
+		context.writer.loadIntVariable(upperVar);
+		context.writer.loadIntVariable(counterVar);
+		context.writer.jumpIfLessThan(loopEnd);
+		context.writer.mark(loopBody);
+
+		if (isLoopVariableUsed) {
+			// loopVar = ExpressionHelpers.seqtoElement(counterVar);
+			context.writer.loadIntVariable(counterVar);
+			context.writer.invokeStatic(ExpressionCompiler.getMethod("seqtoElement", int.class));
+			context.writer.storeVariable(newLoopVariable.variableIndex);
+		}
+
+		block.apply(blockCompiler);
+
+		// if (counterVar < upperVar) { counterVar++; goto loopBody; }
+		// (comparing before incrementing avoids an overflow at
+		// Integer.MAX_VALUE)
+		Label increment = new Label();
+		context.writer.loadIntVariable(counterVar);
+		context.writer.loadIntVariable(upperVar);
+		context.writer.jumpIfLessThan(increment);
+		context.writer.jump(loopEnd);
+		context.writer.markForwardJumpsOnly(increment);
+		context.writer.incVariable(counterVar, 1);
+		context.writer.jump(loopBody);
+		context.writer.markForwardJumpsOnly(loopEnd);
+
+		endListBuilders(context, listBuilders);
+		context.codeGenerator.deleteVariable(newLoopVariable);
+	}
+
+	private static ForLoopVariable declareForLoopVariable(CompilerContext context, TIdentifier identifier) {
+		String varName = identifier.getText();
+		if (context.codeGenerator.getVariable(varName) != null)
+			throw new RuntimeCompilerException(identifier, "A variable with the name '" + varName
+					+ "' is already defined at this location.");
+
+		ForLoopVariable newLoopVariable = new ForLoopVariable(identifier, context.allocateVariable());
+		context.codeGenerator.addVariable(newLoopVariable);
+		return newLoopVariable;
+	}
+
+	/** Checks whether an identifier with the specified name occurs in the block. */
+	private static boolean isIdentifierUsed(Switchable block, final String name) {
+		final boolean[] found = new boolean[1];
+		block.apply(new DepthFirstAdapter() {
+			@Override
+			public void caseTIdentifier(TIdentifier node) {
+				if (node.getText().equalsIgnoreCase(name))
+					found[0] = true;
+			}
+		});
+		return found[0];
 	}
 
 	@Override
@@ -163,6 +253,7 @@ final class ActionCompiler extends VisitorBase {
 	public static void compileWhileStatement(CompilerContext context, TWhile tWhile, PExpr expr, Switchable block,
 			Switch blockCompiler) {
 
+		List<DataVariable> listBuilders = beginListBuilders(context, expr, block);
 		Label start = new Label();
 		Label end = new Label();
 		context.writer.mark(start);
@@ -179,6 +270,50 @@ final class ActionCompiler extends VisitorBase {
 		block.apply(blockCompiler);
 		context.writer.jump(start);
 		context.writer.markForwardJumpsOnly(end);
+		endListBuilders(context, listBuilders);
+	}
+
+	/**
+	 * Moves the variables that the loop only extends using "x := x, e;" into
+	 * ListBuilders, so that building a list in a loop takes linear time.
+	 */
+	private static List<DataVariable> beginListBuilders(CompilerContext context, Switchable... loopParts) {
+		List<DataVariable> variables = new ArrayList<DataVariable>();
+		for (String name : ListAppendAnalyzer.analyze(loopParts)) {
+			Variable v = context.codeGenerator.getVariable(name);
+			// only plain variables that are not already collected by an
+			// enclosing loop
+			if (v == null || v.getClass() != DataVariable.class || context.getListBuilderVariable(name) >= 0)
+				continue;
+			int builderVar = context.allocateVariable();
+			// builderVar = new ListBuilder(v);
+			context.writer.newObject(ListBuilder.class);
+			context.writer.dup();
+			v.loadValue(context, v.definitionPosition);
+			try {
+				context.writer.invokeConstructor(ListBuilder.class.getConstructor(ArdenValue.class));
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException(e);
+			}
+			context.writer.storeVariable(builderVar);
+			context.setListBuilderVariable(name, builderVar);
+			variables.add((DataVariable) v);
+		}
+		return variables;
+	}
+
+	/** Stores the values collected in the ListBuilders back into the variables. */
+	private static void endListBuilders(CompilerContext context, List<DataVariable> variables) {
+		for (DataVariable v : variables) {
+			context.writer.loadVariable(context.getListBuilderVariable(v.name));
+			try {
+				context.writer.invokeInstance(ListBuilder.class.getMethod("toValue"));
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException(e);
+			}
+			v.saveValue(context, v.definitionPosition);
+			context.removeListBuilderVariable(v.name);
+		}
 	}
 
 	PExpr currentCallDelay;
@@ -33,6 +33,8 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 
 import arden.codegenerator.ClassFileWriter;
@@ -50,6 +52,7 @@ import arden.runtime.LibraryMetadata;
 import arden.runtime.MaintenanceMetadata;
 import arden.runtime.MedicalLogicModule;
 import arden.runtime.MedicalLogicModuleImplementation;
+import arden.runtime.ObjectMemberCache;
 import arden.runtime.evoke.Trigger;
 
 /**
@@ -276,6 +279,14 @@ final class CodeGenerator {
 		return new CompilerContext(this, w, 1);
 	}
 	
+	public CompilerContext createStaticTriggers() {
+		MethodWriter w = classFileWriter.createMethod("getStaticTriggers", Modifier.PUBLIC, new Class<?>[] {
+				ExecutionContext.class, MedicalLogicModule.class }, Trigger[].class);
+		if (isDebuggingEnabled)
+			w.enableLineNumberTable();
+		return new CompilerContext(this, w, 2);
+	}
+
 	public void createGetValue() {
 		MethodWriter w = classFileWriter.createMethod(
 				"getValue", 
@@ -373,6 +384,46 @@ final class CodeGenerator {
 				| Modifier.FINAL);
 	}
 
+	private int objectMemberCacheCount;
+
+	/**
+	 * Creates a static field holding a new ObjectMemberCache for accessing the
+	 * specified field. Every access site gets its own cache.
+	 */
+	public FieldReference createObjectMemberCache(String upperCaseFieldName) {
+		FieldReference ref = classFileWriter.declareField("member$" + (++objectMemberCacheCount),
+				ObjectMemberCache.class, Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+		MethodWriter init = getStaticInitializer();
+		init.newObject(ObjectMemberCache.class);
+		init.dup();
+		init.loadStringConstant(upperCaseFieldName);
+		try {
+			init.invokeConstructor(ObjectMemberCache.class.getConstructor(String.class));
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+		init.storeStaticField(ref);
+		return ref;
+	}
+
+	private final LinkedHashSet<String> evokeEvents = new LinkedHashSet<String>();
+
+	/** Records the mapping of an event that is used in the evoke slot. */
+	public void addEvokeEvent(String mapping) {
+		if (mapping != null)
+			evokeEvents.add(mapping);
+	}
+
+	/** Gets the mappings of all events used in the evoke slot. */
+	public List<String> getEvokeEvents() {
+		return new ArrayList<String>(evokeEvents);
+	}
+
+	/** Adds a custom attribute to the generated class file. */
+	public void addClassAttribute(String name, byte[] data) {
+		classFileWriter.addAttribute(name, data);
+	}
+
 	private ArrayList<FieldReference> fieldsNeedingInitialization = new ArrayList<FieldReference>();
 
 	/**
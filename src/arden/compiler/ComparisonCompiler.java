@@ -27,9 +27,14 @@
 
 package arden.compiler;
 
+import java.util.List;
+
+import arden.codegenerator.FieldReference;
+import arden.codegenerator.MethodWriter;
 import arden.compiler.node.*;
 import arden.runtime.ArdenValue;
 import arden.runtime.BinaryOperator;
+import arden.runtime.ListIndex;
 import arden.runtime.ObjectType;
 import arden.runtime.TernaryOperator;
 import arden.runtime.UnaryOperator;
@@ -223,9 +228,64 @@ final class ComparisonCompiler extends VisitorBase {
 	// in_comp_op = in expr_string;
 	@Override
 	public void caseAInCompOp(AInCompOp node) {
-		argument.apply(expressionCompiler);
-		node.getExprString().apply(expressionCompiler);
-		context.writer.invokeStatic(ExpressionCompiler.getMethod("isIn", ArdenValue.class, ArdenValue.class));
+		if (isConstantList(node.getExprString())) {
+			// constant lists are indexed once in the static initializer
+			FieldReference indexField = createListIndex(node.getExprString());
+			argument.apply(expressionCompiler);
+			context.writer.loadStaticField(indexField);
+			context.writer.invokeStatic(ExpressionCompiler.getMethod("isIn", ArdenValue.class, ListIndex.class));
+		} else {
+			argument.apply(expressionCompiler);
+			node.getExprString().apply(expressionCompiler);
+			context.writer.invokeStatic(ExpressionCompiler.getMethod("isIn", ArdenValue.class, ArdenValue.class));
+		}
+	}
+
+	/** Checks whether the expression is a parenthesized list of literals. */
+	private static boolean isConstantList(PExprString expr) {
+		GetExpressionVisitor v = new GetExpressionVisitor();
+		expr.apply(v);
+		if (!(v.result instanceof AExpExprFactorAtom))
+			return false;
+		List<PExprSort> elements = ParseHelpers.toCommaSeparatedList(((AExpExprFactorAtom) v.result).getExpr());
+		if (elements.size() < 2)
+			return false;
+		for (PExprSort element : elements) {
+			GetExpressionVisitor ev = new GetExpressionVisitor();
+			element.apply(ev);
+			if (!isLiteral(ev.result))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isLiteral(Node node) {
+		if (node instanceof ATimeExprFactorAtom) {
+			PTimeValue time = ((ATimeExprFactorAtom) node).getTimeValue();
+			return time instanceof AIdtTimeValue || time instanceof AIdatTimeValue;
+		}
+		return node instanceof ANumExprFactorAtom || node instanceof AStringExprFactorAtom
+				|| node instanceof ABoolExprFactorAtom || node instanceof ANullExprFactorAtom;
+	}
+
+	/**
+	 * Creates a static field holding a ListIndex for the constant list
+	 * expression.
+	 */
+	private FieldReference createListIndex(PExprString expr) {
+		FieldReference indexField = context.codeGenerator.createStaticFinalField(ListIndex.class);
+		MethodWriter init = context.codeGenerator.getStaticInitializer();
+		// index = new ListIndex(expr);
+		init.newObject(ListIndex.class);
+		init.dup();
+		expr.apply(new ExpressionCompiler(new CompilerContext(context.codeGenerator, init, 0)));
+		try {
+			init.invokeConstructor(ListIndex.class.getConstructor(ArdenValue.class));
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+		init.storeStaticField(indexField);
+		return indexField;
 	}
 
 	// unary_comp_op =
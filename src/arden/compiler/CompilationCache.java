@@ -0,0 +1,285 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persistent cache of compiled MLMs.
+ * <p>
+ * Entries are stored in a directory, one file per source text. They are
+ * keyed by a SHA-256 hash of the source text, the source file name (which is
+ * part of the debugging information) and the version of the compiler, so an
+ * unchanged MLM is not parsed and compiled again.
+ * </p>
+ */
+public final class CompilationCache {
+	private static final String ENTRY_EXTENSION = ".mlmcache";
+	private static final String COMPILER_VERSION = getCompilerVersion();
+
+	private final File directory;
+
+	public CompilationCache(File directory) {
+		this.directory = directory;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Compiles a list of MLMs, or returns them from the cache if the same
+	 * source text has already been compiled.
+	 * 
+	 * @param sourceFileName
+	 *            If not <code>null</code>, debugging is enabled for this
+	 *            source file name.
+	 */
+	public List<CompiledMlm> compile(Reader input, String sourceFileName) throws CompilerException, IOException {
+		String source = readFully(input);
+		String key = getKey(source, sourceFileName);
+		File entry = new File(directory, key + ENTRY_EXTENSION);
+
+		List<CompiledMlm> mlms = load(entry);
+		if (mlms != null) {
+			return mlms;
+		}
+
+		Compiler compiler = new Compiler();
+		if (sourceFileName != null) {
+			compiler.enableDebugging(sourceFileName);
+		}
+		mlms = compiler.compile(new StringReader(source));
+		store(entry, mlms);
+		return mlms;
+	}
+
+	/** Compiles a single MLM, or returns it from the cache. */
+	public CompiledMlm compileMlm(Reader input, String sourceFileName) throws CompilerException, IOException {
+		List<CompiledMlm> output = compile(input, sourceFileName);
+		if (output.size() != 1)
+			throw new CompilerException("Expected only a single MLM per file", 0, 0);
+		return output.get(0);
+	}
+
+	private static List<CompiledMlm> load(File entry) {
+		if (!entry.isFile()) {
+			return null;
+		}
+		try {
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(entry.toPath())));
+			int count = input.readInt();
+			List<CompiledMlm> mlms = new ArrayList<CompiledMlm>(count);
+			for (int i = 0; i < count; i++) {
+				byte[] data = new byte[input.readInt()];
+				input.readFully(data);
+				mlms.add(new CompiledMlm(new ByteArrayInputStream(data), null));
+			}
+			return mlms;
+		} catch (IOException | RuntimeException e) {
+			// damaged entry, compile again
+			return null;
+		}
+	}
+
+	private void store(File entry, List<CompiledMlm> mlms) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bos);
+		output.writeInt(mlms.size());
+		for (CompiledMlm mlm : mlms) {
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			mlm.saveClassFile(data);
+			output.writeInt(data.size());
+			data.writeTo(output);
+		}
+		output.close();
+
+		// write to a temporary file first, so concurrent readers never see a
+		// partially written entry
+		directory.mkdirs();
+		File temp = File.createTempFile("entry", ".tmp", directory);
+		try {
+			Files.write(temp.toPath(), bos.toByteArray());
+			try {
+				Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private static String getKey(String source, String sourceFileName) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		digest.update(COMPILER_VERSION.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		if (sourceFileName != null) {
+			digest.update(sourceFileName.getBytes(StandardCharsets.UTF_8));
+		}
+		digest.update((byte) 0);
+		digest.update(source.getBytes(StandardCharsets.UTF_8));
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16));
+			key.append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Identifies the build of the compiler and runtime: a SHA-256 hash of the
+	 * jar containing them, or of all class files in <code>arden</code> when
+	 * running from a classes directory. Besides the compiler, the code
+	 * generator and constant parser shape the bytecode and generated MLMs
+	 * call runtime helpers, so any change to these classes invalidates the
+	 * cache.
+	 */
+	private static String getCompilerVersion() {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		try {
+			CodeSource codeSource = Compiler.class.getProtectionDomain().getCodeSource();
+			File location = codeSource != null ? new File(codeSource.getLocation().toURI()) : null;
+			if (location != null && location.isFile()) {
+				hashFile(digest, location);
+			} else if (location != null && location.isDirectory()) {
+				hashClassFiles(digest, new File(location, "arden"), "arden");
+			} else {
+				return getClassFileVersion();
+			}
+		} catch (IOException | URISyntaxException | SecurityException | IllegalArgumentException e) {
+			return getClassFileVersion();
+		}
+		StringBuilder version = new StringBuilder();
+		for (byte b : digest.digest()) {
+			version.append(Character.forDigit((b >> 4) & 0xF, 16));
+			version.append(Character.forDigit(b & 0xF, 16));
+		}
+		return version.toString();
+	}
+
+	private static void hashClassFiles(MessageDigest digest, File directory, String path) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		// the order of the files must not depend on the file system
+		Arrays.sort(files);
+		for (File file : files) {
+			String filePath = path + '/' + file.getName();
+			if (file.isDirectory()) {
+				hashClassFiles(digest, file, filePath);
+			} else if (file.getName().endsWith(".class")) {
+				digest.update(filePath.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+				hashFile(digest, file);
+			}
+		}
+	}
+
+	private static void hashFile(MessageDigest digest, File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int length;
+			while ((length = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, length);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Fallback if the classes cannot be read: the implementation version of
+	 * the jar, if any, and the modification time of the compiler's class file.
+	 */
+	private static String getClassFileVersion() {
+		StringBuilder version = new StringBuilder();
+		Package pkg = Compiler.class.getPackage();
+		if (pkg != null && pkg.getImplementationVersion() != null) {
+			version.append(pkg.getImplementationVersion());
+		}
+		version.append('/');
+		try {
+			URL url = Compiler.class.getResource("Compiler.class");
+			if (url != null) {
+				URLConnection connection = url.openConnection();
+				version.append(connection.getLastModified());
+				connection.getInputStream().close();
+			}
+		} catch (IOException e) {
+			// version stays less specific
+		}
+		return version.toString();
+	}
+
+	private static String readFully(Reader input) throws IOException {
+		StringBuilder builder = new StringBuilder();
+		char[] buffer = new char[8192];
+		int length;
+		while ((length = input.read(buffer)) >= 0) {
+			builder.append(buffer, 0, length);
+		}
+		return builder.toString();
+	}
+}
@@ -28,6 +28,8 @@
 package arden.compiler;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -35,6 +37,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 
 import arden.MainClass;
 import arden.runtime.ArdenList;
@@ -44,8 +47,12 @@ import arden.runtime.LibraryMetadata;
 import arden.runtime.MaintenanceMetadata;
 import arden.runtime.MedicalLogicModule;
 import arden.runtime.MedicalLogicModuleImplementation;
+import arden.runtime.ModuleMetadata;
 import arden.runtime.evoke.CallTrigger;
 import arden.runtime.evoke.Trigger;
+import arden.runtime.profiler.JfrEvents;
+import arden.runtime.profiler.MlmProfile;
+import arden.runtime.profiler.MlmProfiler;
 
 /**
  * Represents a compiled MedicalLogicModule with minimal Metadata (as loaded from a .class File)
@@ -57,27 +64,45 @@ import arden.runtime.evoke.Trigger;
  * calling loadClassFile().
  * 
  * When createInstance() or run() is called, the compiled bytecode is loaded
- * using the InMemoryClassLoader for execution.
+ * using the InMemoryClassLoader for execution, or defined as hidden class if
+ * enabled by setUseHiddenClasses().
  * 
  * @author Daniel Grunwald, Hannes Flicka
  * 
  */
 public final class CompiledMlm implements MedicalLogicModule {
-	private byte[] data;
-	Class<? extends MedicalLogicModuleImplementation> clazz = null;
-	private MedicalLogicModuleImplementation uninitializedInstance = null;	
-	private MedicalLogicModuleImplementation initializedInstance = null;
+	// the fields below are volatile, because unload() does not lock
+	private volatile byte[] data;
+	private ByteBuffer buffer;
+	private volatile Class<? extends MedicalLogicModuleImplementation> clazz = null;
+	private volatile MedicalLogicModuleImplementation uninitializedInstance = null;
+	private volatile MedicalLogicModuleImplementation initializedInstance = null;
 	private Trigger[] triggers = null;
 	private String mlmname;
+	private ModuleMetadata metadata = null;
+	private boolean isMetadataRead = false;
+	private MlmProfile profile = null;
+
+	private static volatile boolean useHiddenClasses = false;
+	private static volatile ModuleClassCache classCache = null;
 
 	public CompiledMlm(byte[] data, String mlmname) {
 		this.data = data;
 		this.mlmname = mlmname;
 	}
+
+	/**
+	 * Creates an MLM from class file bytes in a buffer, e.g. a memory-mapped
+	 * {@link MlmBundle}. The bytes are copied from the buffer only when they
+	 * are needed.
+	 */
+	public CompiledMlm(ByteBuffer buffer, String mlmname) {
+		this.buffer = buffer.slice();
+		this.mlmname = mlmname;
+	}
 	
 	public CompiledMlm(InputStream in, String mlmname) throws IOException {
-		this((byte[]) null, mlmname);
-		loadClassData(in, in.available());
+		this(readFully(in), mlmname);
 		this.mlmname = getName();
 	}
 	
@@ -91,37 +116,124 @@ public final class CompiledMlm implements MedicalLogicModule {
 	}
 
 	public void saveClassFile(OutputStream os) throws IOException {
-		os.write(data);
+		os.write(getData());
+	}
+
+	private synchronized byte[] getData() {
+		byte[] bytes = data;
+		if (bytes == null && buffer != null) {
+			bytes = new byte[buffer.remaining()];
+			buffer.duplicate().get(bytes);
+			data = bytes;
+		}
+		return bytes;
+	}
+
+	/** Returns whether the class of this MLM is currently defined. */
+	public synchronized boolean isLoaded() {
+		return clazz != null;
+	}
+
+	/**
+	 * Drops the class of this MLM and its instances, so the class can be
+	 * unloaded. Only the class file is kept (as bytes or as part of a bundle),
+	 * the class is defined again when the MLM is used the next time. Does not
+	 * lock, so a {@link ModuleClassCache} can unload MLMs while another MLM is
+	 * defined.
+	 */
+	public void unload() {
+		clazz = null;
+		uninitializedInstance = null;
+		initializedInstance = null;
+		if (buffer != null) {
+			// can be copied from the buffer again
+			data = null;
+		}
 	}
 	
 	private void loadClassFile(File file) throws IOException {
-		loadClassData(
-				new BufferedInputStream(
-						new FileInputStream(file)),
-				(int)(file.length()));
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			data = new byte[(int) file.length()];
+			new DataInputStream(in).readFully(data);
+		} finally {
+			in.close();
+		}
 	}
-	
-	private void loadClassData(InputStream in, int len) throws IOException {
-		data = new byte[len];
-		in.read(data, 0, len);
+
+	/** Reads the stream until its end, {@link InputStream#available()} may be less. */
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int length;
+		while ((length = in.read(buffer)) >= 0) {
+			bos.write(buffer, 0, length);
+		}
+		return bos.toByteArray();
+	}
+
+	/** Returns whether the JVM supports hidden classes (Java 15 or newer). */
+	public static boolean isHiddenClassSupported() {
+		return HiddenClassHost.isSupported();
+	}
+
+	/**
+	 * Sets whether MLM classes are defined as hidden classes instead of using
+	 * a class loader for each MLM. Hidden classes need less memory and are
+	 * unloaded as soon as their MLM is no longer used. Only affects MLMs whose
+	 * class is not defined yet.
+	 */
+	public static void setUseHiddenClasses(boolean value) {
+		if (value) {
+			HiddenClassHost.checkSupported();
+		}
+		useHiddenClasses = value;
+	}
+
+	public static boolean getUseHiddenClasses() {
+		return useHiddenClasses;
+	}
+
+	/**
+	 * Sets the cache which limits the number of MLMs whose class is loaded, or
+	 * <code>null</code> to keep all of them loaded. Every definition and use
+	 * of an MLM class is recorded in it, no matter whether the MLM was loaded
+	 * at startup, from a bundle or found by a {@link arden.runtime.ModuleRegistry}.
+	 */
+	public static void setClassCache(ModuleClassCache cache) {
+		classCache = cache;
+	}
+
+	public static ModuleClassCache getClassCache() {
+		return classCache;
 	}
 
 	@SuppressWarnings("unchecked")
 	private Class<? extends MedicalLogicModuleImplementation> loadClazz() {
-		if (clazz == null) {
-			try {
-				ClassLoader classLoader = new InMemoryClassLoader(mlmname, data);
-				clazz = (Class<? extends MedicalLogicModuleImplementation>) classLoader.loadClass(mlmname);
-			} catch (ClassNotFoundException e) {
-				throw new RuntimeException(e);
+		ModuleClassCache cache = classCache;
+		if (cache != null) {
+			cache.access(this);
+		}
+		Class<? extends MedicalLogicModuleImplementation> loaded = clazz;
+		if (loaded == null) {
+			if (useHiddenClasses) {
+				loaded = (Class<? extends MedicalLogicModuleImplementation>) HiddenClassHost.define(getData());
+			} else {
+				try {
+					ClassLoader classLoader = new InMemoryClassLoader(mlmname, getData());
+					loaded = (Class<? extends MedicalLogicModuleImplementation>) classLoader.loadClass(mlmname);
+				} catch (ClassNotFoundException e) {
+					throw new RuntimeException(e);
+				}
 			}
+			clazz = loaded;
 		}
-		return clazz;
+		return loaded;
 	}
 	
 	private synchronized Constructor<? extends MedicalLogicModuleImplementation> getConstructor() {
 		Constructor<? extends MedicalLogicModuleImplementation> ctor = null;
-		loadClazz();
+		Class<? extends MedicalLogicModuleImplementation> clazz = loadClazz();
 		// We know the class has an appropriate constructor because we
 		// compiled it, so wrap all the checked exceptions that should never
 		// occur.
@@ -137,8 +249,7 @@ public final class CompiledMlm implements MedicalLogicModule {
 	
 	private synchronized Constructor<? extends MedicalLogicModuleImplementation> getParameterlessConstructor() {		
 		Constructor<? extends MedicalLogicModuleImplementation> ctor = null;
-		loadClazz();
-		//loadClazz();
+		Class<? extends MedicalLogicModuleImplementation> clazz = loadClazz();
 		// We know the class has an appropriate constructor because we
 		// compiled it, so wrap all the checked exceptions that should never
 		// occur.
@@ -184,6 +295,8 @@ public final class CompiledMlm implements MedicalLogicModule {
 	 */
 	@Override
 	public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments, Trigger evokingTrigger) throws InvocationTargetException {
+		if (MlmProfiler.isEnabled() || JfrEvents.isRecording())
+			return runProfiled(context, arguments, evokingTrigger);
 		MedicalLogicModuleImplementation instance = createInstance(context, arguments, evokingTrigger);
 		initializedInstance = instance;
 		try {
@@ -195,12 +308,70 @@ public final class CompiledMlm implements MedicalLogicModule {
 			throw new InvocationTargetException(ex);
 		}
 	}	
+
+	/**
+	 * Executes the MLM and records the time of each slot in its profile and
+	 * the whole execution as JFR event.
+	 */
+	private ArdenValue[] runProfiled(ExecutionContext context, ArdenValue[] arguments, Trigger evokingTrigger)
+			throws InvocationTargetException {
+		MlmProfile profile = MlmProfiler.isEnabled() ? getProfile() : null;
+		context = MlmProfiler.wrap(context, profile);
+		Object event = JfrEvents.beginMlmExecution();
+		boolean conclusion = false;
+		try {
+			long start = System.nanoTime();
+			MedicalLogicModuleImplementation instance;
+			try {
+				instance = createInstance(context, arguments, evokingTrigger);
+			} finally {
+				record(profile, MlmProfile.Part.DATA, start);
+			}
+			initializedInstance = instance;
+			try {
+				start = System.nanoTime();
+				try {
+					conclusion = instance.logic(context);
+				} finally {
+					record(profile, MlmProfile.Part.LOGIC, start);
+				}
+				if (!conclusion)
+					return null;
+				start = System.nanoTime();
+				try {
+					return instance.action(context);
+				} finally {
+					record(profile, MlmProfile.Part.ACTION, start);
+				}
+			} catch (Exception ex) {
+				throw new InvocationTargetException(ex);
+			}
+		} finally {
+			JfrEvents.endMlmExecution(event, mlmname, conclusion);
+		}
+	}
+
+	private static void record(MlmProfile profile, MlmProfile.Part part, long start) {
+		if (profile != null)
+			profile.record(part, start);
+	}
+
+	private synchronized MlmProfile getProfile() {
+		if (profile == null) {
+			MaintenanceMetadata maintenance = getMaintenance();
+			profile = MlmProfiler.getProfile(maintenance.getMlmName(), maintenance.getInstitution(),
+					maintenance.getVersion());
+		}
+		return profile;
+	}
 	
 	/** use this method only to access static fields in the MLM implementation */
-	private MedicalLogicModuleImplementation getNonInitializedInstance() {
-		if (uninitializedInstance == null) {
+	private synchronized MedicalLogicModuleImplementation getNonInitializedInstance() {
+		MedicalLogicModuleImplementation instance = uninitializedInstance;
+		if (instance == null) {
 			try {
-				uninitializedInstance = getParameterlessConstructor().newInstance();
+				instance = getParameterlessConstructor().newInstance();
+				uninitializedInstance = instance;
 			} catch (InstantiationException e) {
 				throw new RuntimeException(e);
 			} catch (IllegalAccessException e) {
@@ -211,16 +382,40 @@ public final class CompiledMlm implements MedicalLogicModule {
 				throw new RuntimeException(e);
 			} 
 		}
-		return uninitializedInstance;
+		return instance;
 	}
 	
+	/**
+	 * Gets the metadata stored in the class file attribute, or
+	 * <code>null</code> if the class file has no such attribute.
+	 */
+	public synchronized ModuleMetadata getMetadata() {
+		if (!isMetadataRead) {
+			try {
+				metadata = ModuleMetadata.fromClassFile(getData());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			isMetadataRead = true;
+		}
+		return metadata;
+	}
+
 	@Override
 	public MaintenanceMetadata getMaintenance() {
+		ModuleMetadata metadata = getMetadata();
+		if (metadata != null) {
+			return metadata.getMaintenance();
+		}
 		return getNonInitializedInstance().getMaintenanceMetadata();
 	}
 
 	@Override
 	public LibraryMetadata getLibrary() {
+		ModuleMetadata metadata = getMetadata();
+		if (metadata != null) {
+			return metadata.getLibrary();
+		}
 		return getNonInitializedInstance().getLibraryMetadata();
 	}
 	
@@ -236,28 +431,84 @@ public final class CompiledMlm implements MedicalLogicModule {
 
 	@Override
 	public double getPriority() {
+		ModuleMetadata metadata = getMetadata();
+		if (metadata != null) {
+			return metadata.getPriority();
+		}
 		return getNonInitializedInstance().getPriority();
 	}
 
 	/**
-	 * Gets a trigger telling when to run the MLM. As that trigger may depend on
+	 * Gets a trigger telling when to run the MLM. If that trigger depends on
 	 * data set in the constructor, the data section of the MLM is run.
 	 */
 	@Override
-	public Trigger[] getTriggers(ExecutionContext context) throws InvocationTargetException {
+	public synchronized Trigger[] getTriggers(ExecutionContext context) throws InvocationTargetException {
 		if (triggers == null) {
 			MedicalLogicModuleImplementation instance = initializedInstance;
 			if (instance == null) {
+				if (getStaticTriggers(context) != null) {
+					return triggers;
+				}
 				instance = createInstance(context, null, null);
 			}
 			triggers = instance.getTriggers(context);
+			unloadMapped();
 		}
 		return triggers;
 	}
 
+	/**
+	 * Gets the triggers only if they can be created without running the data
+	 * section of the MLM.
+	 * 
+	 * @return The triggers or <code>null</code> if they depend on the data
+	 *         section.
+	 */
+	public synchronized Trigger[] getStaticTriggers(ExecutionContext context) {
+		if (triggers == null) {
+			triggers = getNonInitializedInstance().getStaticTriggers(context, this);
+			if (triggers != null) {
+				unloadMapped();
+			}
+		}
+		return triggers;
+	}
+
+	/**
+	 * Creates new triggers, which do not share their state with the triggers
+	 * returned by {@link #getTriggers(ExecutionContext)}, e.g. for another
+	 * engine. The data section is only run if the triggers depend on it.
+	 */
+	public synchronized Trigger[] createTriggers(ExecutionContext context) throws InvocationTargetException {
+		Trigger[] created = getNonInitializedInstance().getStaticTriggers(context, this);
+		if (created == null) {
+			created = createInstance(context, null, null).getTriggers(context);
+		}
+		unloadMapped();
+		return created;
+	}
+
+	/**
+	 * The triggers are created by the class of the MLM, but do not refer to
+	 * it. If the class file is in a buffer (e.g. an {@link MlmBundle}), the
+	 * class is dropped again once the triggers exist, so an engine only keeps
+	 * the triggers. The class is defined again when a trigger runs the MLM.
+	 */
+	private void unloadMapped() {
+		if (buffer != null) {
+			unload();
+			ModuleClassCache cache = classCache;
+			if (cache != null) {
+				cache.remove(this);
+			}
+		}
+	}
+
 	public ArdenValue getValue(String name) {
-		if (initializedInstance != null) {
-			return initializedInstance.getValue(name);
+		MedicalLogicModuleImplementation instance = initializedInstance;
+		if (instance != null) {
+			return instance.getValue(name);
 		}
 		return null;
 	}
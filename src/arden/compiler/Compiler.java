@@ -68,6 +68,7 @@ import arden.runtime.MaintenanceMetadata;
 import arden.runtime.MaintenanceMetadata.ArdenVersion;
 import arden.runtime.MaintenanceMetadata.Validation;
 import arden.runtime.MedicalLogicModule;
+import arden.runtime.ModuleMetadata;
 import arden.runtime.RuntimeHelpers;
 import arden.runtime.evoke.Trigger;
 
@@ -79,6 +80,7 @@ import arden.runtime.evoke.Trigger;
 public final class Compiler {
 	private boolean isDebuggingEnabled = false;
 	private String sourceFileName;
+	private CompilerPhaseListener phaseListener;
 
 	/** Enables debugging for the code being produced. */
 	public void enableDebugging(String sourceFileName) {
@@ -86,6 +88,21 @@ public final class Compiler {
 		this.sourceFileName = sourceFileName;
 	}
 
+	/** Sets a listener which is notified of each phase of the compiler. */
+	public void setPhaseListener(CompilerPhaseListener phaseListener) {
+		this.phaseListener = phaseListener;
+	}
+
+	private void startPhase(CompilerPhase phase) {
+		if (phaseListener != null)
+			phaseListener.phaseStarted(phase);
+	}
+
+	private void finishPhase(CompilerPhase phase) {
+		if (phaseListener != null)
+			phaseListener.phaseFinished(phase);
+	}
+
 	/** Compiles a single MLM given in the input stream. */
 	public CompiledMlm compileMlm(Reader input) throws CompilerException, IOException {
 		List<CompiledMlm> output = compile(input);
@@ -96,6 +113,7 @@ public final class Compiler {
 
 	/** Compiles a list of MLMs given in the input stream. */
 	public List<CompiledMlm> compile(Reader input) throws CompilerException, IOException {
+		startPhase(CompilerPhase.PARSE);
 		Lexer lexer = new Lexer(new PushbackReader(input, 1024));
 		Parser parser = new Parser(lexer);
 		Start syntaxTree;
@@ -105,6 +123,8 @@ public final class Compiler {
 			throw new CompilerException(e);
 		} catch (LexerException e) {
 			throw new CompilerException(e);
+		} finally {
+			finishPhase(CompilerPhase.PARSE);
 		}
 		return compile(syntaxTree);
 	}
@@ -140,49 +160,95 @@ public final class Compiler {
 		// mlm.apply(new PrintTreeVisitor(System.out));
 
 		// compile metadata
+		startPhase(CompilerPhase.METADATA);
 		MetadataCompiler metadata = new MetadataCompiler();
 		AKnowledgeCategory knowledgeCategory = (AKnowledgeCategory) mlm.getKnowledgeCategory();
 		AKnowledgeBody knowledge = (AKnowledgeBody) knowledgeCategory.getKnowledgeBody();
-		mlm.getMaintenanceCategory().apply(metadata);
-		mlm.getLibraryCategory().apply(metadata);
-		knowledge.getPrioritySlot().apply(metadata);
+		try {
+			mlm.getMaintenanceCategory().apply(metadata);
+			mlm.getLibraryCategory().apply(metadata);
+			knowledge.getPrioritySlot().apply(metadata);
+		} finally {
+			finishPhase(CompilerPhase.METADATA);
+		}
 
 		// check for errors
-		mlm.apply(new ErrorAnalysis());
+		startPhase(CompilerPhase.ERROR_ANALYSIS);
+		try {
+			mlm.apply(new ErrorAnalysis());
+		} finally {
+			finishPhase(CompilerPhase.ERROR_ANALYSIS);
+		}
 
 		// compile knowledge category
 		CodeGenerator codeGen = new CodeGenerator(metadata.maintenance.getMlmName(),
 				knowledgeCategory.getKnowledgeColon().getLine());
 		if (isDebuggingEnabled)
 			codeGen.enableDebugging(sourceFileName);
-		compileData(codeGen, knowledge.getDataSlot(), metadata.maintenance.getInstitution());
-		compileLogic(codeGen, knowledge.getLogicSlot());
-		compileAction(codeGen, knowledge.getActionSlot());
-		compileEvoke(codeGen, knowledge.getEvokeSlot());
-		compileUrgency(codeGen, knowledge.getUrgencySlot());
+		startPhase(CompilerPhase.DATA_SLOT);
 		try {
-			compileMaintenance(codeGen, metadata.maintenance);
-			compileLibrary(codeGen, metadata.library);
-			compilePriority(codeGen, metadata.priority);
-		} catch (NoSuchMethodException e) {
-			throw new RuntimeException(e);
-		} catch (SecurityException e) {
-			throw new RuntimeException(e);
+			compileData(codeGen, knowledge.getDataSlot(), metadata.maintenance.getInstitution());
+		} finally {
+			finishPhase(CompilerPhase.DATA_SLOT);
+		}
+		startPhase(CompilerPhase.LOGIC_SLOT);
+		try {
+			compileLogic(codeGen, knowledge.getLogicSlot());
+		} finally {
+			finishPhase(CompilerPhase.LOGIC_SLOT);
+		}
+		startPhase(CompilerPhase.ACTION_SLOT);
+		try {
+			compileAction(codeGen, knowledge.getActionSlot());
+		} finally {
+			finishPhase(CompilerPhase.ACTION_SLOT);
+		}
+		startPhase(CompilerPhase.EVOKE_SLOT);
+		try {
+			compileEvoke(codeGen, knowledge.getEvokeSlot());
+		} finally {
+			finishPhase(CompilerPhase.EVOKE_SLOT);
+		}
+		startPhase(CompilerPhase.URGENCY_SLOT);
+		try {
+			compileUrgency(codeGen, knowledge.getUrgencySlot());
+		} finally {
+			finishPhase(CompilerPhase.URGENCY_SLOT);
 		}
 
-		// create method to access the MLMs variables
-		codeGen.createGetValue();
-
-		// save bytecode to a CompiledMlm wrapper
+		startPhase(CompilerPhase.SAVE);
 		byte[] data;
 		try {
-			ByteArrayOutputStream bos = new ByteArrayOutputStream();
-			DataOutputStream s = new DataOutputStream(bos);
-			codeGen.save(s);
-			s.close();
-			data = bos.toByteArray();
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+			try {
+				compileMaintenance(codeGen, metadata.maintenance);
+				compileLibrary(codeGen, metadata.library);
+				compilePriority(codeGen, metadata.priority);
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException(e);
+			} catch (SecurityException e) {
+				throw new RuntimeException(e);
+			}
+
+			// store metadata so it can be read without loading the class
+			ModuleMetadata moduleMetadata = new ModuleMetadata(metadata.maintenance, metadata.library,
+					metadata.priority, codeGen.getEvokeEvents());
+			codeGen.addClassAttribute(ModuleMetadata.ATTRIBUTE_NAME, moduleMetadata.toAttributeData());
+
+			// create method to access the MLMs variables
+			codeGen.createGetValue();
+
+			// save bytecode to a CompiledMlm wrapper
+			try {
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				DataOutputStream s = new DataOutputStream(bos);
+				codeGen.save(s);
+				s.close();
+				data = bos.toByteArray();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		} finally {
+			finishPhase(CompilerPhase.SAVE);
 		}
 		return new CompiledMlm(data, metadata.maintenance.getMlmName());
 	}
@@ -277,6 +343,13 @@ public final class Compiler {
 		context.writer.swap();
 		context.writer.storeInstanceField(triggerField);
 		context.writer.returnObjectFromFunction();
+
+		// the same triggers without running the data slot, if possible
+		if (EvokeCompiler.isStatic(evokeSlot, codeGen)) {
+			CompilerContext staticContext = codeGen.createStaticTriggers();
+			evokeSlot.apply(new EvokeCompiler(staticContext, true));
+			staticContext.writer.returnObjectFromFunction();
+		}
 	}
 
 	private void compileData(CodeGenerator codeGen, PDataSlot dataSlot, String institutionSelf) {
@@ -27,6 +27,8 @@
 
 package arden.compiler;
 
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Stack;
 
 import arden.codegenerator.MethodWriter;
@@ -48,6 +50,8 @@ final class CompilerContext {
 	private Stack<Integer> itVariables = new Stack<Integer>();
 	/** Stack of 'it' variables that are free for reuse */
 	private Stack<Integer> freeItVariables = new Stack<Integer>();
+	/** Local variables holding the ListBuilders of variables in enclosing loops */
+	private HashMap<String, Integer> listBuilderVariables = new HashMap<String, Integer>();
 
 	public CompilerContext(CodeGenerator codeGenerator, MethodWriter writer, int parameters) {
 		this.codeGenerator = codeGenerator;
@@ -100,4 +104,22 @@ final class CompilerContext {
 	public void popItVariable() {
 		freeItVariables.push(itVariables.pop());
 	}
+
+	/**
+	 * Gets the local variable holding the ListBuilder for the variable with
+	 * the specified name, or -1 if the variable is not being appended to in a
+	 * ListBuilder.
+	 */
+	public int getListBuilderVariable(String name) {
+		Integer var = listBuilderVariables.get(name.toLowerCase(Locale.ENGLISH));
+		return var == null ? -1 : var;
+	}
+
+	public void setListBuilderVariable(String name, int var) {
+		listBuilderVariables.put(name.toLowerCase(Locale.ENGLISH), var);
+	}
+
+	public void removeListBuilderVariable(String name) {
+		listBuilderVariables.remove(name.toLowerCase(Locale.ENGLISH));
+	}
 }
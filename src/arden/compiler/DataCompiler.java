@@ -68,6 +68,7 @@ import arden.compiler.node.AReadDataAssignPhrase;
 import arden.compiler.node.AReadasDataAssignPhrase;
 import arden.compiler.node.ATexprDataAssignment;
 import arden.compiler.node.AWhileDataStatement;
+import arden.compiler.node.Node;
 import arden.compiler.node.PCallPhrase;
 import arden.compiler.node.PExpr;
 import arden.compiler.node.PReadPhrase;
@@ -281,11 +282,13 @@ final class DataCompiler extends VisitorBase {
 			public void caseAEmapDataAssignPhrase(AEmapDataAssignPhrase node) {
 				// {emap} event mapping_factor
 				EventVariable e = EventVariable.getVariable(context.codeGenerator, lhs);
+				String mapping = ParseHelpers.getStringForMapping(node.getMappingFactor());
+				e.addDefinition(mapping, isConditional(node));
 				context.writer.sequencePoint(lhs.getPosition().getLine());
 				context.writer.loadThis();
 				context.writer.loadVariable(context.executionContextVariable);
 				context.writer.loadVariable(context.selfMLMVariable);
-				context.writer.loadStringConstant(ParseHelpers.getStringForMapping(node.getMappingFactor()));
+				context.writer.loadStringConstant(mapping);
 				context.writer.invokeInstance(ExecutionContextMethods.getEvent);
 				context.writer.loadThis();
 				context.writer.loadInstanceField(context.codeGenerator.getTriggerField());
@@ -424,6 +427,16 @@ final class DataCompiler extends VisitorBase {
 		assignArgument(LeftHandSideAnalyzer.analyze(node.getDataVarList()));
 	}
 
+	/** Checks whether the node is inside an IF or a loop of the data slot. */
+	private static boolean isConditional(Node node) {
+		for (Node parent = node.parent(); parent != null; parent = parent.parent()) {
+			if (parent instanceof AIfDataStatement || parent instanceof AForDataStatement
+					|| parent instanceof AWhileDataStatement)
+				return true;
+		}
+		return false;
+	}
+
 	/** Creates an MLM variable. */
 	private void createMlmVariable(LeftHandSideResult lhs, TTerm name, TStringLiteral institution) {
 		CallableVariable var = MedicalLogicModuleVariable.getVariable(context.codeGenerator, lhs);
@@ -39,6 +39,9 @@ import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
 
 final class EventVariable extends DataVariable {
+	private String mapping;
+	private int definitionCount;
+	private boolean isConditional;
 
 	private EventVariable(TIdentifier name, FieldReference field) {
 		super(name, field);
@@ -59,6 +62,31 @@ final class EventVariable extends DataVariable {
 		}
 	}
 
+	/** Gets the mapping of the event, as given in the data slot. */
+	public String getMapping() {
+		return mapping;
+	}
+
+	/**
+	 * Records a definition of the event in the data slot.
+	 * 
+	 * @param isConditional
+	 *            Whether the definition is inside an IF or a loop.
+	 */
+	public void addDefinition(String mapping, boolean isConditional) {
+		this.mapping = mapping;
+		this.definitionCount++;
+		this.isConditional |= isConditional;
+	}
+
+	/**
+	 * Whether the event is the same for every run of the data slot, so it can
+	 * be created from its mapping without running the data slot.
+	 */
+	public boolean isStatic() {
+		return mapping != null && definitionCount == 1 && !isConditional;
+	}
+
 	@Override
 	public void call(CompilerContext context, Token errorPosition, PExpr arguments) {
 		context.writer.sequencePoint(errorPosition.getLine());
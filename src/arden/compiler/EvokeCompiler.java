@@ -3,6 +3,7 @@ package arden.compiler;
 import java.util.ArrayList;
 import java.util.List;
 
+import arden.compiler.analysis.DepthFirstAdapter;
 import arden.compiler.node.AAnyEventOr;
 import arden.compiler.node.AAolstEventAny;
 import arden.compiler.node.ACallEvokeStatement;
@@ -30,6 +31,7 @@ import arden.compiler.node.PEventAny;
 import arden.compiler.node.PEventList;
 import arden.compiler.node.PEventOr;
 import arden.compiler.node.PEvokeBlock;
+import arden.compiler.node.PEvokeSlot;
 import arden.compiler.node.PEvokeStatement;
 import arden.runtime.ArdenEvent;
 import arden.runtime.ArdenTime;
@@ -42,9 +44,45 @@ import arden.runtime.evoke.Trigger;
 
 public class EvokeCompiler extends VisitorBase {
 	private final CompilerContext context;
+	private final boolean isStatic;
 	
 	public EvokeCompiler(CompilerContext context) {
-		this.context = context;		
+		this(context, false);
+	}
+
+	/**
+	 * @param isStatic
+	 *            Whether the triggers are compiled into a method that runs
+	 *            without the data slot. Events are then created from their
+	 *            mapping instead of being loaded from the event variables.
+	 */
+	public EvokeCompiler(CompilerContext context, boolean isStatic) {
+		this.context = context;
+		this.isStatic = isStatic;
+	}
+
+	/**
+	 * Checks whether the triggers in the evoke slot can be created without
+	 * running the data slot. This is the case if all events are defined
+	 * unconditionally and exactly once, and there is no UNTIL expression
+	 * (which may use any variable).
+	 */
+	public static boolean isStatic(PEvokeSlot evokeSlot, final CodeGenerator codeGenerator) {
+		final boolean[] result = { true };
+		evokeSlot.apply(new DepthFirstAdapter() {
+			@Override
+			public void caseASuntQualifiedEvokeCycle(ASuntQualifiedEvokeCycle node) {
+				result[0] = false;
+			}
+
+			@Override
+			public void caseAIdEventFactor(AIdEventFactor node) {
+				Variable var = codeGenerator.getVariable(node.getIdentifier().getText());
+				if (!(var instanceof EventVariable) || !((EventVariable) var).isStatic())
+					result[0] = false;
+			}
+		});
+		return result[0];
 	}
 		
 	public List<PEvokeStatement> listEvokeBlocks(PEvokeBlock first) {
@@ -251,9 +289,18 @@ public class EvokeCompiler extends VisitorBase {
 		if (!(var instanceof EventVariable)) {
 			throw new RuntimeCompilerException(id.getIdentifier(), "This is not an event variable: \"" + name + "\"");
 		}
+		String mapping = ((EventVariable) var).getMapping();
+		context.codeGenerator.addEvokeEvent(mapping);
 		context.writer.newObject(EventTrigger.class);
 		context.writer.dup();
-		var.loadValue(context, id.getIdentifier());
+		if (isStatic) {
+			context.writer.loadVariable(context.executionContextVariable);
+			context.writer.loadVariable(context.selfMLMVariable);
+			context.writer.loadStringConstant(mapping);
+			context.writer.invokeInstance(ExecutionContextMethods.getEvent);
+		} else {
+			var.loadValue(context, id.getIdentifier());
+		}
 		try {
 			context.writer.invokeConstructor(EventTrigger.class.getConstructor(ArdenEvent.class));
 		} catch (NoSuchMethodException e) {
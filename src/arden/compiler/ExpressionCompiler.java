@@ -41,6 +41,7 @@ import arden.runtime.ArdenObject;
 import arden.runtime.ArdenValue;
 import arden.runtime.BinaryOperator;
 import arden.runtime.ExpressionHelpers;
+import arden.runtime.ObjectMemberCache;
 import arden.runtime.ObjectType;
 import arden.runtime.TernaryOperator;
 import arden.runtime.UnaryOperator;
@@ -220,27 +221,77 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseASortExprSort(ASortExprSort node) {
 		// expr_sort = {sort} sort data? expr_sort
-		GetExpressionVisitor exprVisitor = new GetExpressionVisitor();
-		node.getExprSort().apply(exprVisitor);
+		PExprFunction sortTimeArgument = getSortTimeArgument(node);
+		if (sortTimeArgument != null) {
+			sortTimeArgument.apply(this); // evaluate 'x'
+			context.writer.invokeStatic(getMethod("sortByTime", ArdenValue.class));
+			return;
+		}
+		// did not find pattern, so sort by data
+		node.getExprSort().apply(this);
+		context.writer.invokeStatic(getMethod("sortByData", ArdenValue.class));
+	}
+
+	/**
+	 * Gets 'x' if the sort expression has the form 'sort time x', otherwise
+	 * returns null.
+	 */
+	static PExprFunction getSortTimeArgument(ASortExprSort node) {
 		// if data wasn't specified, we need to check whether this is was a
 		// 'sort time x' expression
 		// we have to do this in code as handling it in the grammar would cause
 		// a shift/reduce conflict
-		if (node.getData() == null && exprVisitor.result instanceof AOfexprExprFunction) {
+		if (node.getData() != null)
+			return null;
+		GetExpressionVisitor exprVisitor = new GetExpressionVisitor();
+		node.getExprSort().apply(exprVisitor);
+		if (exprVisitor.result instanceof AOfexprExprFunction) {
 			AOfexprExprFunction ofExpr = (AOfexprExprFunction) exprVisitor.result;
 			if (ofExpr.getOfFuncOp() instanceof AOfnrOfFuncOp) {
 				AOfnrOfFuncOp ofOp = (AOfnrOfFuncOp) ofExpr.getOfFuncOp();
 				if (ofOp.getOfNoreadFuncOp() instanceof ATimeOfNoreadFuncOp) {
 					// found pattern 'sort time x'
-					ofExpr.getExprFunction().apply(this); // evaluate 'x'
-					context.writer.invokeStatic(getMethod("sortByTime", ArdenValue.class));
-					return;
+					return ofExpr.getExprFunction();
 				}
 			}
 		}
-		// did not find pattern, so sort by data
-		exprVisitor.result.apply(this);
-		context.writer.invokeStatic(getMethod("sortByData", ArdenValue.class));
+		return null;
+	}
+
+	/**
+	 * Operator fusion: gets the SORT expression if the argument of an operator
+	 * is a parenthesized SORT expression, e.g. "FIRST 3 FROM (SORT x)";
+	 * otherwise returns null.
+	 */
+	static ASortExprSort getParenthesizedSort(Node argument) {
+		PExprSort exprSort = getParenthesizedExpression(argument);
+		return exprSort instanceof ASortExprSort ? (ASortExprSort) exprSort : null;
+	}
+
+	/**
+	 * Operator fusion: gets the WHERE expression if the argument of an
+	 * operator is a parenthesized WHERE expression, e.g.
+	 * "COUNT (x WHERE it > 5)"; otherwise returns null.
+	 */
+	static AWrangeExprWhere getParenthesizedWhere(Node argument) {
+		PExprSort exprSort = getParenthesizedExpression(argument);
+		if (exprSort instanceof AWhereExprSort) {
+			PExprWhere exprWhere = ((AWhereExprSort) exprSort).getExprWhere();
+			if (exprWhere instanceof AWrangeExprWhere)
+				return (AWrangeExprWhere) exprWhere;
+		}
+		return null;
+	}
+
+	private static PExprSort getParenthesizedExpression(Node argument) {
+		GetExpressionVisitor exprVisitor = new GetExpressionVisitor();
+		argument.apply(exprVisitor);
+		if (exprVisitor.result instanceof AExpExprFactorAtom) {
+			PExpr expr = ((AExpExprFactorAtom) exprVisitor.result).getExpr();
+			if (expr instanceof ASortExpr)
+				return ((ASortExpr) expr).getExprSort();
+		}
+		return null;
 	}
 
 	// expr_where =
@@ -256,12 +307,21 @@ final class ExpressionCompiler extends VisitorBase {
 	public void caseAWrangeExprWhere(AWrangeExprWhere node) {
 		// expr_where = {wrange} [this_range]:expr_range where
 		// [next_range]:expr_range
+		compileWhere(node, "where");
+	}
+
+	/**
+	 * Evaluates the sequence and the condition of the WHERE expression and
+	 * passes them to the specified ExpressionHelpers method, which is either
+	 * the WHERE operator itself or an aggregation fused with it.
+	 */
+	public void compileWhere(AWrangeExprWhere node, String helperName) {
 		node.getThisRange().apply(this);
 		context.writer.dup();
 		int it = context.allocateItVariable();
 		context.writer.storeVariable(it);
 		node.getNextRange().apply(this);
-		context.writer.invokeStatic(getMethod("where", ArdenValue.class, ArdenValue.class));
+		context.writer.invokeStatic(getMethod(helperName, ArdenValue.class, ArdenValue.class));
 		context.popItVariable();
 	}
 
@@ -814,9 +874,14 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseADotExprFactor(ADotExprFactor node) {
 		// expr_factor = {dot} expr_factor dot identifier
+		context.writer.loadStaticField(context.codeGenerator.createObjectMemberCache(node.getIdentifier().getText()
+				.toUpperCase(Locale.ENGLISH)));
 		node.getExprFactor().apply(this);
-		context.writer.loadStringConstant(node.getIdentifier().getText().toUpperCase(Locale.ENGLISH));
-		context.writer.invokeStatic(Compiler.getRuntimeHelper("getObjectMember", ArdenValue.class, String.class));
+		try {
+			context.writer.invokeInstance(ObjectMemberCache.class.getMethod("get", ArdenValue.class));
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	// expr_factor_atom =
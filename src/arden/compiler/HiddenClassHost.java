@@ -0,0 +1,150 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import arden.codegenerator.ClassFileWriter;
+import arden.codegenerator.MethodWriter;
+
+/**
+ * Defines MLM classes as hidden classes (Java 15 or newer).
+ * <p>
+ * All MLM classes become nestmates of one small generated host class in the
+ * unnamed package, which is the only class that needs its own class loader.
+ * Hidden classes are not registered with that loader, so each MLM class can
+ * be unloaded as soon as it is no longer used.
+ * </p>
+ * <p>
+ * The API is called through reflection, so the runtime still works on older
+ * Java versions.
+ * </p>
+ */
+final class HiddenClassHost {
+	private static final String HOST_CLASS_NAME = "ArdenMlmHost";
+
+	private static Object hostLookup;
+	private static Method defineHiddenClass;
+	private static Object classOptions;
+	private static Method lookupClass;
+	private static boolean initialized;
+	// set if the JVM has hidden classes, but the host could not be created
+	private static RuntimeException initializationError;
+
+	private HiddenClassHost() {
+	}
+
+	/**
+	 * Returns whether the JVM supports hidden classes and the host class could
+	 * be created.
+	 */
+	public static synchronized boolean isSupported() {
+		initialize();
+		return defineHiddenClass != null;
+	}
+
+	/**
+	 * Throws an exception with the reason if hidden classes cannot be used.
+	 */
+	public static synchronized void checkSupported() {
+		if (!isSupported()) {
+			if (initializationError != null) {
+				throw new UnsupportedOperationException("Hidden classes could not be set up.", initializationError);
+			}
+			throw new UnsupportedOperationException("Hidden classes require Java 15 or newer.");
+		}
+	}
+
+	/** Defines the class file as hidden class. */
+	public static Class<?> define(byte[] data) {
+		checkSupported();
+		try {
+			Object lookup = defineHiddenClass.invoke(hostLookup, data, false, classOptions);
+			return (Class<?>) lookupClass.invoke(lookup);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void initialize() {
+		if (initialized) {
+			return;
+		}
+		Class<?> optionClass;
+		try {
+			optionClass = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+		} catch (ClassNotFoundException e) {
+			// Java 14 or older
+			initialized = true;
+			return;
+		}
+		try {
+			Object options = Array.newInstance(optionClass, 1);
+			Array.set(options, 0, Enum.valueOf((Class<Enum>) optionClass, "NESTMATE"));
+			Method define = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class,
+					boolean.class, options.getClass());
+
+			// the lookup must be created by the host class itself to have full access
+			Class<?> host = new InMemoryClassLoader(HOST_CLASS_NAME, createHostClass()).loadClass(HOST_CLASS_NAME);
+			hostLookup = host.getMethod("lookup").invoke(null);
+			lookupClass = MethodHandles.Lookup.class.getMethod("lookupClass");
+			classOptions = options;
+			defineHiddenClass = define;
+		} catch (Exception e) {
+			// defineHiddenClass stays null, define() reports the cause
+			initializationError = new RuntimeException(e);
+		}
+		initialized = true;
+	}
+
+	/**
+	 * Creates the host class:
+	 * <code>public class ArdenMlmHost { public static Lookup lookup() { return MethodHandles.lookup(); } }</code>
+	 */
+	private static byte[] createHostClass() throws Exception {
+		ClassFileWriter classFileWriter = new ClassFileWriter(HOST_CLASS_NAME, Object.class);
+		MethodWriter w = classFileWriter.createMethod("lookup", Modifier.PUBLIC | Modifier.STATIC, new Class<?>[0],
+				MethodHandles.Lookup.class);
+		w.invokeStatic(MethodHandles.class.getMethod("lookup"));
+		w.returnObjectFromFunction();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream s = new DataOutputStream(bos);
+		classFileWriter.save(s);
+		s.flush();
+		return bos.toByteArray();
+	}
+}
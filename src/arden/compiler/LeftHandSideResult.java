@@ -33,11 +33,14 @@ import java.util.List;
 import java.util.Locale;
 
 import arden.codegenerator.FieldReference;
+import arden.compiler.node.AExsortExpr;
 import arden.compiler.node.Switchable;
 import arden.compiler.node.TIdentifier;
 import arden.compiler.node.TNow;
 import arden.compiler.node.Token;
 import arden.runtime.ArdenValue;
+import arden.runtime.ListBuilder;
+import arden.runtime.ObjectMemberCache;
 import arden.runtime.UnaryOperator;
 
 /**
@@ -76,6 +79,18 @@ final class LeftHandSideIdentifier extends LeftHandSideResult {
 	@Override
 	public void assign(CompilerContext context, Switchable expr) {
 		context.writer.sequencePoint(identifier.getLine());
+		int listBuilder = context.getListBuilderVariable(identifier.getText());
+		if (listBuilder >= 0 && ListAppendAnalyzer.isAppendTo(identifier.getText(), expr)) {
+			// identifier := identifier, e; => listBuilder.append(e);
+			context.writer.loadVariable(listBuilder);
+			((AExsortExpr) expr).getExprSort().apply(new ExpressionCompiler(context));
+			try {
+				context.writer.invokeInstance(ListBuilder.class.getMethod("append", ArdenValue.class));
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException(e);
+			}
+			return;
+		}
 		Variable v = context.codeGenerator.getVariable(identifier.getText());
 		if (v == null) {
 			FieldReference f = context.codeGenerator.createInitializedField(identifier.getText(), Modifier.PRIVATE);
@@ -111,18 +126,29 @@ final class LeftHandSideObjectMember extends LeftHandSideResult {
 	@Override
 	public void assign(CompilerContext context, Switchable expr) {
 		context.writer.sequencePoint(getPosition().getLine());
+		context.writer.loadStaticField(createCache(context));
 		target.loadValue(context);
-		context.writer.loadStringConstant(identifier.getText().toUpperCase(Locale.ENGLISH));
 		expr.apply(new ExpressionCompiler(context));
-		context.writer.invokeStatic(Compiler.getRuntimeHelper("setObjectMember", ArdenValue.class, String.class,
-				ArdenValue.class));
+		try {
+			context.writer.invokeInstance(ObjectMemberCache.class.getMethod("set", ArdenValue.class, ArdenValue.class));
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	@Override
 	public void loadValue(CompilerContext context) {
+		context.writer.loadStaticField(createCache(context));
 		target.loadValue(context);
-		context.writer.loadStringConstant(identifier.getText().toUpperCase(Locale.ENGLISH));
-		context.writer.invokeStatic(Compiler.getRuntimeHelper("getObjectMember", ArdenValue.class, String.class));
+		try {
+			context.writer.invokeInstance(ObjectMemberCache.class.getMethod("get", ArdenValue.class));
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private FieldReference createCache(CompilerContext context) {
+		return context.codeGenerator.createObjectMemberCache(identifier.getText().toUpperCase(Locale.ENGLISH));
 	}
 }
 
@@ -0,0 +1,130 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import arden.compiler.analysis.DepthFirstAdapter;
+import arden.compiler.node.*;
+
+/**
+ * Finds the variables that a loop only extends using "x := x, e;".
+ * 
+ * A variable qualifies if every occurrence of its name within the loop is
+ * part of such an assignment and the loop cannot be left early (CONCLUDE,
+ * RETURN). The value of such a variable is not observable while the loop
+ * runs, so it can be accumulated in a ListBuilder.
+ */
+final class ListAppendAnalyzer extends DepthFirstAdapter {
+	private final HashMap<String, Integer> identifierCount = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> appendCount = new HashMap<String, Integer>();
+	private boolean hasEarlyExit;
+
+	/** Gets the lower-case names of the variables that are only appended to. */
+	public static List<String> analyze(Switchable... loopParts) {
+		ListAppendAnalyzer a = new ListAppendAnalyzer();
+		for (Switchable part : loopParts)
+			part.apply(a);
+		List<String> result = new ArrayList<String>();
+		if (a.hasEarlyExit)
+			return result;
+		for (Map.Entry<String, Integer> entry : a.appendCount.entrySet()) {
+			// each append statement contains the name twice
+			if (a.identifierCount.get(entry.getKey()) == 2 * entry.getValue())
+				result.add(entry.getKey());
+		}
+		return result;
+	}
+
+	/** Checks whether the expression has the form "name, e". */
+	public static boolean isAppendTo(String name, Switchable expr) {
+		if (!(expr instanceof AExsortExpr))
+			return false;
+		PExpr left = ((AExsortExpr) expr).getExpr();
+		if (!(left instanceof ASortExpr))
+			return false;
+		GetExpressionVisitor v = new GetExpressionVisitor();
+		left.apply(v);
+		return v.result instanceof AIdExprFactorAtom
+				&& ((AIdExprFactorAtom) v.result).getIdentifier().getText().equalsIgnoreCase(name);
+	}
+
+	private void checkAssignment(PIdentifierBecomes identifierBecomes, PExpr expr) {
+		LeftHandSideResult lhs = LeftHandSideAnalyzer.analyze(identifierBecomes);
+		if (!(lhs instanceof LeftHandSideIdentifier))
+			return;
+		String name = ((LeftHandSideIdentifier) lhs).identifier.getText();
+		if (isAppendTo(name, expr))
+			increment(appendCount, name);
+	}
+
+	private static void increment(HashMap<String, Integer> counts, String name) {
+		String key = name.toLowerCase(Locale.ENGLISH);
+		Integer count = counts.get(key);
+		counts.put(key, count == null ? 1 : count + 1);
+	}
+
+	@Override
+	public void caseTIdentifier(TIdentifier node) {
+		increment(identifierCount, node.getText());
+	}
+
+	@Override
+	public void inAIdexLogicAssignment(AIdexLogicAssignment node) {
+		// logic_assignment = {idex} identifier_becomes expr
+		checkAssignment(node.getIdentifierBecomes(), node.getExpr());
+	}
+
+	@Override
+	public void inAAssign1ActionStatement(AAssign1ActionStatement node) {
+		// action_statement = {assign1} identifier_becomes expr
+		checkAssignment(node.getIdentifierBecomes(), node.getExpr());
+	}
+
+	@Override
+	public void inAIphrDataAssignment(AIphrDataAssignment node) {
+		// data_assignment = {iphr} identifier_becomes data_assign_phrase
+		if (node.getDataAssignPhrase() instanceof AExprDataAssignPhrase)
+			checkAssignment(node.getIdentifierBecomes(), ((AExprDataAssignPhrase) node.getDataAssignPhrase())
+					.getExpr());
+	}
+
+	@Override
+	public void inAConcLogicStatement(AConcLogicStatement node) {
+		hasEarlyExit = true;
+	}
+
+	@Override
+	public void inAReturnActionStatement(AReturnActionStatement node) {
+		hasEarlyExit = true;
+	}
+}
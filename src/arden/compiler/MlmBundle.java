@@ -0,0 +1,238 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import arden.runtime.MaintenanceMetadata;
+import arden.runtime.MedicalLogicModule;
+
+/**
+ * A single file containing many compiled MLMs.
+ * <p>
+ * The file starts with an index of all MLMs (name, institution, version,
+ * validation and the position of the class file), followed by the class files
+ * (which contain the metadata, see {@link arden.runtime.ModuleMetadata}). The
+ * bundle is memory-mapped when it is opened. The class file of an MLM is only
+ * copied from the mapping when the MLM is used.
+ * </p>
+ * <p>
+ * The evoke slot of an MLM is compiled into its class, so an engine which
+ * evokes the MLMs of a bundle defines each class once to create the triggers.
+ * The class is dropped right after that (see
+ * {@link CompiledMlm#getTriggers(arden.runtime.ExecutionContext)}), so only
+ * the index and the triggers stay resident, and the class is defined again
+ * when a trigger first runs the MLM. Bundles are not searched by
+ * {@link arden.runtime.ModuleRegistry}, they are only loaded as files given on
+ * the command line.
+ * </p>
+ */
+public final class MlmBundle {
+	public static final String FILE_EXTENSION = ".mlmb";
+
+	private static final int MAGIC = 0x41524442; // "ARDB"
+	private static final int FORMAT_VERSION = 1;
+	// four string lengths, offset and length of the class file
+	private static final int MIN_INDEX_ENTRY_SIZE = 6 * 4;
+
+	/** An MLM in the bundle. */
+	public static final class Entry {
+		private final String name;
+		private final String institution;
+		private final String version;
+		private final String validation;
+		private final CompiledMlm module;
+
+		private Entry(String name, String institution, String version, String validation, CompiledMlm module) {
+			this.name = name;
+			this.institution = institution;
+			this.version = version;
+			this.validation = validation;
+			this.module = module;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getInstitution() {
+			return institution;
+		}
+
+		public String getVersion() {
+			return version;
+		}
+
+		public String getValidation() {
+			return validation;
+		}
+
+		/** Gets the MLM. Its class is defined the first time it is run. */
+		public CompiledMlm getModule() {
+			return module;
+		}
+	}
+
+	private final List<Entry> entries;
+
+	private MlmBundle(List<Entry> entries) {
+		this.entries = Collections.unmodifiableList(entries);
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/** Gets all MLMs in the order they were written. */
+	public List<MedicalLogicModule> getModules() {
+		List<MedicalLogicModule> modules = new ArrayList<MedicalLogicModule>(entries.size());
+		for (Entry entry : entries) {
+			modules.add(entry.getModule());
+		}
+		return modules;
+	}
+
+	/** Opens a bundle by memory-mapping the file. */
+	public static MlmBundle open(File file) throws IOException {
+		MappedByteBuffer buffer;
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			// the mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+		return read(buffer);
+	}
+
+	/** Reads a bundle from a buffer, the MLMs share the buffer's content. */
+	public static MlmBundle read(ByteBuffer buffer) throws IOException {
+		try {
+			if (buffer.getInt() != MAGIC)
+				throw new IOException("Not an MLM bundle.");
+			int formatVersion = buffer.getInt();
+			if (formatVersion != FORMAT_VERSION)
+				throw new IOException("Unsupported MLM bundle version " + formatVersion);
+
+			int count = buffer.getInt();
+			if (count < 0 || count > buffer.remaining() / MIN_INDEX_ENTRY_SIZE)
+				throw new IOException("Damaged MLM bundle: invalid number of MLMs " + count);
+			String[][] names = new String[count][];
+			int[] offsets = new int[count];
+			int[] lengths = new int[count];
+			for (int i = 0; i < count; i++) {
+				names[i] = new String[] { readString(buffer), readString(buffer), readString(buffer),
+						readString(buffer) };
+				offsets[i] = buffer.getInt();
+				lengths[i] = buffer.getInt();
+			}
+
+			// offsets are relative to the end of the index
+			int dataStart = buffer.position();
+			List<Entry> entries = new ArrayList<Entry>(count);
+			for (int i = 0; i < count; i++) {
+				if (offsets[i] < 0 || lengths[i] < 0
+						|| (long) dataStart + offsets[i] + lengths[i] > buffer.limit())
+					throw new IOException("Damaged MLM bundle: class file of " + names[i][0]
+							+ " is outside of the bundle");
+				ByteBuffer classFile = buffer.duplicate();
+				classFile.position(dataStart + offsets[i]);
+				classFile.limit(dataStart + offsets[i] + lengths[i]);
+				CompiledMlm module = new CompiledMlm(classFile, names[i][0]);
+				entries.add(new Entry(names[i][0], names[i][1], names[i][2], names[i][3], module));
+			}
+			return new MlmBundle(entries);
+		} catch (RuntimeException e) {
+			// BufferUnderflowException, IllegalArgumentException
+			throw new IOException("Damaged MLM bundle.", e);
+		}
+	}
+
+	/** Writes the MLMs into a bundle file. */
+	public static void write(File file, List<CompiledMlm> mlms) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			write(out, mlms);
+		} finally {
+			out.close();
+		}
+	}
+
+	/** Writes the MLMs as a bundle. */
+	public static void write(OutputStream out, List<CompiledMlm> mlms) throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+		DataOutputStream index = new DataOutputStream(indexBytes);
+		index.writeInt(MAGIC);
+		index.writeInt(FORMAT_VERSION);
+		index.writeInt(mlms.size());
+		for (CompiledMlm mlm : mlms) {
+			MaintenanceMetadata maintenance = mlm.getMaintenance();
+			writeString(index, mlm.getName());
+			writeString(index, maintenance.getInstitution());
+			writeString(index, maintenance.getVersion());
+			writeString(index, maintenance.getValidation().name());
+			int offset = data.size();
+			mlm.saveClassFile(data);
+			index.writeInt(offset);
+			index.writeInt(data.size() - offset);
+		}
+		index.flush();
+		indexBytes.writeTo(out);
+		data.writeTo(out);
+		out.flush();
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining())
+			throw new IOException("Damaged MLM bundle: invalid string length " + length);
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
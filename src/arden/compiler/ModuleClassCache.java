@@ -0,0 +1,118 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.compiler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounds the number of MLMs whose class is loaded.
+ * <p>
+ * Once set with {@link CompiledMlm#setClassCache(ModuleClassCache)}, every
+ * definition and use of an MLM class (creating an instance to run the MLM or
+ * to read its triggers) moves the MLM to the front of the cache. When more
+ * MLMs than the capacity are in use, the least recently used one is unloaded
+ * (see {@link CompiledMlm#unload()}). It keeps its class file bytes, so it is
+ * defined again when it is used the next time.
+ * </p>
+ */
+public final class ModuleClassCache {
+	private final int capacity;
+	private final LinkedHashMap<CompiledMlm, Boolean> loaded = new LinkedHashMap<CompiledMlm, Boolean>(16, 0.75f, true);
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param capacity
+	 *            Maximum number of loaded MLMs, must be at least 1.
+	 */
+	public ModuleClassCache(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be at least 1");
+		this.capacity = capacity;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Records a use of the MLM and unloads the least recently used MLMs if
+	 * there are too many.
+	 */
+	public synchronized void access(CompiledMlm mlm) {
+		if (loaded.get(mlm) != null) {
+			hits++;
+			return;
+		}
+		misses++;
+		loaded.put(mlm, Boolean.TRUE);
+		Iterator<Map.Entry<CompiledMlm, Boolean>> it = loaded.entrySet().iterator();
+		while (loaded.size() > capacity) {
+			CompiledMlm eldest = it.next().getKey();
+			it.remove();
+			eldest.unload();
+			evictions++;
+		}
+	}
+
+	/** Forgets an MLM which has unloaded its class by itself. */
+	synchronized void remove(CompiledMlm mlm) {
+		loaded.remove(mlm);
+	}
+
+	/** Unloads all MLMs in the cache. */
+	public synchronized void clear() {
+		for (CompiledMlm mlm : loaded.keySet()) {
+			mlm.unload();
+		}
+		loaded.clear();
+	}
+
+	/** Gets the number of MLMs in the cache. */
+	public synchronized int size() {
+		return loaded.size();
+	}
+
+	/** Gets the number of uses of an MLM that was still loaded. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Gets the number of uses of an MLM that had to be loaded (again). */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Gets the number of MLMs that were unloaded to stay within the capacity. */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+}
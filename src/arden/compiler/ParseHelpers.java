@@ -164,7 +164,9 @@ final class ParseHelpers {
 		
 		Date date;
 		try {
-			date = format.parse(parsableText.toString());
+			synchronized (format) {
+				date = format.parse(parsableText.toString());
+			}
 		} catch (ParseException e) {
 			throw new RuntimeCompilerException(dateTime, "Invalid DateTime literal");
 		}
@@ -173,7 +175,9 @@ final class ParseHelpers {
 
 	public static long parseIsoDate(TIsoDate date) {
 		try {
-			return ArdenTime.isoDateFormat.parse(date.getText()).getTime();
+			synchronized (ArdenTime.isoDateFormat) {
+				return ArdenTime.isoDateFormat.parse(date.getText()).getTime();
+			}
 		} catch (ParseException e) {
 			throw new RuntimeCompilerException(e.getMessage());
 		}
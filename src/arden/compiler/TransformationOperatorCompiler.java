@@ -89,12 +89,25 @@ final class TransformationOperatorCompiler extends VisitorBase {
 
 	@Override
 	public void caseALastFromOfFuncOp(ALastFromOfFuncOp node) {
-		handleTransformationOperator("last", false);
+		handleFirstOrLast("last");
 	}
 
 	@Override
 	public void caseAFirFromOfFuncOp(AFirFromOfFuncOp node) {
-		handleTransformationOperator("first", false);
+		handleFirstOrLast("first");
+	}
+
+	/**
+	 * Compiles FIRST/LAST n FROM. For "FIRST n FROM (SORT x)", only the n
+	 * smallest (or largest) elements are selected instead of sorting the
+	 * whole list.
+	 */
+	private void handleFirstOrLast(String name) {
+		ASortExprSort sort = ExpressionCompiler.getParenthesizedSort(sourceListArgument);
+		if (sort != null && ExpressionCompiler.getSortTimeArgument(sort) == null)
+			handleTransformationOperator(name + "OfSorted", sort.getExprSort(), false);
+		else
+			handleTransformationOperator(name, false);
 	}
 
 	@Override
@@ -108,8 +121,12 @@ final class TransformationOperatorCompiler extends VisitorBase {
 	}
 
 	private void handleTransformationOperator(String name, boolean followedByElementAt) {
+		handleTransformationOperator(name, sourceListArgument, followedByElementAt);
+	}
+
+	private void handleTransformationOperator(String name, Switchable sourceList, boolean followedByElementAt) {
 		numberArgument.apply(parent);
-		sourceListArgument.apply(parent);
+		sourceList.apply(parent);
 		if (followedByElementAt)
 			context.writer.dup_x1();
 		context.writer.swap();
@@ -90,6 +90,7 @@ import arden.compiler.node.ARoundOfNoreadFuncOp;
 import arden.compiler.node.ASinOfNoreadFuncOp;
 import arden.compiler.node.ASineOfNoreadFuncOp;
 import arden.compiler.node.ASlpOfNoreadFuncOp;
+import arden.compiler.node.ASortExprSort;
 import arden.compiler.node.ASqrtOfNoreadFuncOp;
 import arden.compiler.node.AStdvOfNoreadFuncOp;
 import arden.compiler.node.AStrOfNoreadFuncOp;
@@ -100,7 +101,9 @@ import arden.compiler.node.ATimeOfNoreadFuncOp;
 import arden.compiler.node.ATruncOfNoreadFuncOp;
 import arden.compiler.node.AUcOfNoreadFuncOp;
 import arden.compiler.node.AVarOfNoreadFuncOp;
+import arden.compiler.node.AWrangeExprWhere;
 import arden.compiler.node.Node;
+import arden.compiler.node.PExprFunction;
 import arden.runtime.ArdenValue;
 import arden.runtime.UnaryOperator;
 
@@ -149,20 +152,17 @@ final class UnaryOperatorCompiler extends VisitorBase {
 	// | {med} median;
 	@Override
 	public void caseAAvgeOfReadFuncOp(AAvgeOfReadFuncOp node) {
-		argument.apply(parent);
-		context.writer.invokeStatic(ExpressionCompiler.getMethod("average", ArdenValue.class));
+		compileAggregation("average");
 	}
 
 	@Override
 	public void caseAAvgOfReadFuncOp(AAvgOfReadFuncOp node) {
-		argument.apply(parent);
-		context.writer.invokeStatic(ExpressionCompiler.getMethod("average", ArdenValue.class));
+		compileAggregation("average");
 	}
 
 	@Override
 	public void caseACntOfReadFuncOp(ACntOfReadFuncOp node) {
-		argument.apply(parent);
-		context.writer.invokeStatic(ExpressionCompiler.getMethod("count", ArdenValue.class));
+		compileAggregation("count");
 	}
 
 	@Override
@@ -179,8 +179,7 @@ final class UnaryOperatorCompiler extends VisitorBase {
 
 	@Override
 	public void caseASumOfReadFuncOp(ASumOfReadFuncOp node) {
-		argument.apply(parent);
-		context.writer.invokeStatic(ExpressionCompiler.getMethod("sum", ArdenValue.class));
+		compileAggregation("sum");
 	}
 
 	@Override
@@ -189,6 +188,21 @@ final class UnaryOperatorCompiler extends VisitorBase {
 		context.writer.invokeStatic(ExpressionCompiler.getMethod("median", ArdenValue.class));
 	}
 
+	/**
+	 * Compiles an aggregation operator. If the argument is a WHERE
+	 * expression, the aggregation is fused with the WHERE operator so that
+	 * the filtered list is not created.
+	 */
+	private void compileAggregation(String name) {
+		AWrangeExprWhere where = ExpressionCompiler.getParenthesizedWhere(argument);
+		if (where != null) {
+			parent.compileWhere(where, name + "Where");
+		} else {
+			argument.apply(parent);
+			context.writer.invokeStatic(ExpressionCompiler.getMethod(name, ArdenValue.class));
+		}
+	}
+
 	// of_noread_func_op =
 	// {any} any
 	// | {all} all
@@ -573,7 +587,7 @@ final class UnaryOperatorCompiler extends VisitorBase {
 
 	@Override
 	public void caseAEarFromOfFuncOp(AEarFromOfFuncOp node) {
-		argument.apply(parent);
+		getArgumentIgnoringSortByTime().apply(parent);
 		context.writer.dup();
 		context.writer.invokeStatic(ExpressionCompiler.getMethod("indexEarliest", ArdenValue.class));
 		context.writer.invokeStatic(ExpressionCompiler.getMethod("elementAt", ArdenValue.class, ArdenValue.class));
@@ -581,12 +595,26 @@ final class UnaryOperatorCompiler extends VisitorBase {
 
 	@Override
 	public void caseALatFromOfFuncOp(ALatFromOfFuncOp node) {
-		argument.apply(parent);
+		getArgumentIgnoringSortByTime().apply(parent);
 		context.writer.dup();
 		context.writer.invokeStatic(ExpressionCompiler.getMethod("indexLatest", ArdenValue.class));
 		context.writer.invokeStatic(ExpressionCompiler.getMethod("elementAt", ArdenValue.class, ArdenValue.class));
 	}
 
+	/**
+	 * EARLIEST and LATEST pick the same element regardless of the order of the
+	 * list, so for "LATEST OF (SORT TIME x)" the sorting can be skipped.
+	 */
+	private Node getArgumentIgnoringSortByTime() {
+		ASortExprSort sort = ExpressionCompiler.getParenthesizedSort(argument);
+		if (sort != null) {
+			PExprFunction sortTimeArgument = ExpressionCompiler.getSortTimeArgument(sort);
+			if (sortTimeArgument != null)
+				return sortTimeArgument;
+		}
+		return argument;
+	}
+
 	// index_from_of_func_op =
 	// {minimum} index minimum
 	// | {indexmin} index min
@@ -132,7 +132,9 @@ class ConstantVisitor extends DepthFirstAdapter {
 
 		Date date;
 		try {
-			date = format.parse(parsableText.toString());
+			synchronized (format) {
+				date = format.parse(parsableText.toString());
+			}
 		} catch (ParseException e) {
 			throw new ConstantParserException(dateTime, "Invalid DateTime literal");
 		}
@@ -141,7 +143,9 @@ class ConstantVisitor extends DepthFirstAdapter {
 
 	private static long parseIsoDate(TArdenDate isoDate) throws ConstantParserException {
 		try {
-			return ArdenTime.isoDateFormat.parse(isoDate.getText()).getTime();
+			synchronized (ArdenTime.isoDateFormat) {
+				return ArdenTime.isoDateFormat.parse(isoDate.getText()).getTime();
+			}
 		} catch (ParseException e) {
 			throw new ConstantParserException(isoDate, e.getMessage());
 		}
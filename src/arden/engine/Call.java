@@ -1,14 +1,118 @@
 package arden.engine;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 public abstract class Call implements Runnable, Comparable<Call> {
+	private static final int QUEUED = 0;
+	private static final int TAKEN = 1;
+	private static final int CANCELLED = 2;
+	// a newer call is being merged into the waiting call, see beginMerge()
+	private static final int MERGING = 3;
+	private static final AtomicIntegerFieldUpdater<Call> STATE = AtomicIntegerFieldUpdater.newUpdater(Call.class,
+			"state");
+
 	private final int priority;
+	// System.nanoTime() when the call was added to the engine's queue
+	private long queuedAt;
+	// whether the call is still waiting in the queue
+	private volatile int state = QUEUED;
 
 	public Call(int priority) {
 		this.priority = priority;
 	}
 
+	int getPriority() {
+		return priority;
+	}
+
+	/** Gets the name of the called event or MLM, e.g. for profiling. */
+	String getName() {
+		return null;
+	}
+
+	/**
+	 * Gets the partition key of the called or triggering event, see
+	 * {@link arden.runtime.ArdenEvent#partitionKey}.
+	 */
+	String getPartitionKey() {
+		return null;
+	}
+
+	/**
+	 * Returns whether this call does the same as another call, so one of them
+	 * can be dropped when the engine is overloaded.
+	 */
+	boolean isDuplicateOf(Call other) {
+		return false;
+	}
+
+	void setQueuedAt(long queuedAt) {
+		this.queuedAt = queuedAt;
+	}
+
+	long getQueuedAt() {
+		return queuedAt;
+	}
+
+	void setQueued() {
+		while (true) {
+			int current = state;
+			// a merge into a waiting call ends in QUEUED by itself
+			if (current == QUEUED || current == MERGING || STATE.compareAndSet(this, current, QUEUED)) {
+				return;
+			}
+		}
+	}
+
+	boolean isQueued() {
+		int current = state;
+		return current == QUEUED || current == MERGING;
+	}
+
+	/**
+	 * Starts merging a newer call into this call. Until {@link #endMerge()},
+	 * the call can be neither taken nor cancelled.
+	 * 
+	 * @return Whether the call is still waiting, otherwise nothing may be
+	 *         merged into it.
+	 */
+	boolean beginMerge() {
+		return STATE.compareAndSet(this, QUEUED, MERGING);
+	}
+
+	void endMerge() {
+		state = QUEUED;
+	}
+
+	/** Takes the call out of the queue, unless it was cancelled. */
+	boolean claim() {
+		return leaveQueue(TAKEN);
+	}
+
+	/** Cancels the call while it waits in the queue, unless it was taken. */
+	boolean cancel() {
+		return leaveQueue(CANCELLED);
+	}
+
+	private boolean leaveQueue(int newState) {
+		while (true) {
+			int current = state;
+			if (current == QUEUED) {
+				if (STATE.compareAndSet(this, QUEUED, newState)) {
+					return true;
+				}
+			} else if (current == MERGING) {
+				// merging only replaces a field, wait until it is done
+				Thread.yield();
+			} else {
+				return false;
+			}
+		}
+	}
+
+	/** Calls with a higher priority come first. */
 	@Override
 	public int compareTo(Call other) {
-		return priority - other.priority;
+		return other.priority - priority;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,436 @@
+package arden.engine;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import arden.runtime.metrics.Counter;
+import arden.runtime.metrics.MetricsRegistry;
+
+/**
+ * The calls which are waiting for execution in the {@link EvokeEngine}.
+ * <p>
+ * Calls with a higher priority are taken first, calls with the same priority
+ * in the order in which they were added. There is one FIFO queue for each
+ * priority and a bitmap of the non-empty queues, so adding and taking a call
+ * take constant time. Adding calls does not lock, only the engine's thread
+ * takes calls.
+ * </p>
+ * <p>
+ * If a capacity is set, calls which are added when the queue is full are
+ * handled by the {@link OverloadPolicy}. Calls dropped to make space for a
+ * new call are marked as cancelled and skipped when they are taken.
+ * </p>
+ * <p>
+ * With {@link Coalescing}, the waiting MLM calls are indexed by their
+ * {@link MlmCall#getKey() key}, so a new call with the same key is merged into
+ * the waiting call instead of being added.
+ * </p>
+ */
+final class CallQueue {
+	// priorities are clamped to the buckets (EventCalls use 100 to 198)
+	private static final int BUCKETS = 256;
+
+	private static final class Node {
+		// null once the call is taken
+		volatile Call call;
+		volatile Node next;
+
+		Node(Call call) {
+			this.call = call;
+		}
+	}
+
+	/**
+	 * Linked FIFO queue for many producers and a single consumer. Producers
+	 * swap their node into the tail and then link it to the previous node.
+	 */
+	private static final class Bucket {
+		private final AtomicReference<Node> tail;
+		// node before the first call, only moved by the consumer
+		private volatile Node head;
+
+		Bucket() {
+			Node node = new Node(null);
+			head = node;
+			tail = new AtomicReference<Node>(node);
+		}
+
+		void offer(Call call) {
+			Node node = new Node(call);
+			Node previous = tail.getAndSet(node);
+			previous.next = node;
+		}
+
+		/** Removes the first call, only called by the consumer. */
+		Call poll() {
+			Node first = head;
+			Node next = first.next;
+			if (next == null) {
+				if (first == tail.get()) {
+					return null;
+				}
+				// a producer has swapped the tail, but not yet linked its node
+				while ((next = first.next) == null) {
+					Thread.yield();
+				}
+			}
+			Call call = next.call;
+			next.call = null;
+			head = next;
+			return call;
+		}
+
+		boolean isEmpty() {
+			return head == tail.get();
+		}
+
+		/** Gets the first node with a call, for iterating over the calls. */
+		Node first() {
+			return head.next;
+		}
+	}
+
+	private final Bucket[] buckets = new Bucket[BUCKETS];
+	// bit i is set if bucket i may contain calls
+	private final AtomicLongArray nonEmpty = new AtomicLongArray(BUCKETS / 64);
+	// calls in the queue, excluding cancelled calls
+	private final AtomicInteger size = new AtomicInteger();
+	private final int capacity;
+	private final OverloadPolicy policy;
+	/*
+	 * Set on the threads which take the calls of any queue. They must not wait
+	 * for space, not even in the queue of another engine (e.g. a shard of a
+	 * PartitionedEngine), as two engines calling each other would deadlock.
+	 */
+	private static final ThreadLocal<Boolean> CONSUMER_THREAD = new ThreadLocal<Boolean>();
+	// set while the consumer waits for calls
+	private volatile Thread waitingConsumer;
+	// producers waiting for space (OverloadPolicy.BLOCK)
+	private final Object notFull = new Object();
+	private final AtomicInteger waitingProducers = new AtomicInteger();
+	// set when the engine stops, producers no longer wait for space
+	private volatile boolean closed = false;
+
+	private volatile Coalescing coalescing = Coalescing.NONE;
+	// waiting MLM calls by their key, while coalescing
+	private final ConcurrentHashMap<MlmCall.Key, MlmCall> waitingMlmCalls = new ConcurrentHashMap<MlmCall.Key, MlmCall>();
+
+	private final Counter rejected;
+	private final Counter shed;
+	private final Counter coalesced;
+	private final Counter merged;
+
+	/**
+	 * @param capacity
+	 *            The maximum number of waiting calls, 0 for no limit.
+	 */
+	CallQueue(int capacity, OverloadPolicy policy, MetricsRegistry metrics) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative");
+		}
+		this.capacity = capacity;
+		this.policy = policy;
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new Bucket();
+		}
+		rejected = metrics.counter("arden_engine_rejected_calls_total", "Calls dropped because the queue was full");
+		shed = metrics.counter("arden_engine_shed_calls_total",
+				"Calls with the lowest priority dropped because the queue was full");
+		coalesced = metrics.counter("arden_engine_coalesced_calls_total",
+				"Calls dropped because the same call was waiting");
+		merged = metrics.counter("arden_engine_merged_calls_total",
+				"MLM calls merged into a waiting call for the same MLM, arguments and event");
+	}
+
+	private static int getBucket(Call call) {
+		return Math.max(0, Math.min(BUCKETS - 1, call.getPriority()));
+	}
+
+	/**
+	 * Adds a call to the queue.
+	 *
+	 * @return Whether the call was added (or replaced a call with a lower
+	 *         priority), <code>false</code> if it was dropped.
+	 */
+	boolean add(Call call) {
+		MlmCall mlmCall = null;
+		if (coalescing != Coalescing.NONE && call instanceof MlmCall) {
+			mlmCall = (MlmCall) call;
+			MlmCall waiting = waitingMlmCalls.get(mlmCall.getKey());
+			if (waiting != null && waiting.merge(mlmCall, coalescing == Coalescing.LATEST)) {
+				merged.increment();
+				return true;
+			}
+		}
+		if (!reserve(call)) {
+			return false;
+		}
+		if (mlmCall != null) {
+			/*
+			 * Only publish the call once its space is reserved, so calls merged
+			 * into it are never dropped with it.
+			 */
+			MlmCall.Key key = mlmCall.getKey();
+			while (true) {
+				MlmCall waiting = waitingMlmCalls.putIfAbsent(key, mlmCall);
+				if (waiting == null) {
+					break;
+				}
+				if (waiting.merge(mlmCall, coalescing == Coalescing.LATEST)) {
+					merged.increment();
+					release();
+					return true;
+				}
+				// the waiting call was taken or cancelled in the meantime
+				waitingMlmCalls.remove(key, waiting);
+			}
+		}
+		call.setQueuedAt(System.nanoTime());
+		call.setQueued();
+		int bucket = getBucket(call);
+		buckets[bucket].offer(call);
+		setNonEmpty(bucket);
+		Thread waiting = waitingConsumer;
+		if (waiting != null) {
+			LockSupport.unpark(waiting);
+		}
+		return true;
+	}
+
+	void addAll(Collection<? extends Call> calls) {
+		for (Call call : calls) {
+			add(call);
+		}
+	}
+
+	/** Reserves space for a call, handles a full queue. */
+	private boolean reserve(Call call) {
+		if (capacity == 0) {
+			size.incrementAndGet();
+			return true;
+		}
+		while (true) {
+			int current = size.get();
+			if (current < capacity) {
+				if (size.compareAndSet(current, current + 1)) {
+					return true;
+				}
+				continue;
+			}
+			switch (policy) {
+			case BLOCK:
+				if (CONSUMER_THREAD.get() != null) {
+					// exceed the capacity instead of waiting for an engine
+					size.incrementAndGet();
+					return true;
+				}
+				if (!awaitSpace()) {
+					rejected.increment();
+					return false;
+				}
+				// try again
+				break;
+			case SHED:
+				shed.increment();
+				// the new call takes the space of the cancelled call
+				return cancelLowerPriority(call.getPriority());
+			case COALESCE:
+				if (containsDuplicate(call)) {
+					coalesced.increment();
+				} else {
+					rejected.increment();
+				}
+				return false;
+			default:
+				rejected.increment();
+				return false;
+			}
+		}
+	}
+
+	/** Frees the space of a call, wakes up producers waiting for space. */
+	private void release() {
+		size.decrementAndGet();
+		if (waitingProducers.get() > 0) {
+			synchronized (notFull) {
+				notFull.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the queue is not full, returns false if interrupted or if
+	 * the queue was closed.
+	 */
+	private boolean awaitSpace() {
+		synchronized (notFull) {
+			waitingProducers.incrementAndGet();
+			try {
+				while (size.get() >= capacity && !closed) {
+					notFull.wait();
+				}
+				return !closed;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				waitingProducers.decrementAndGet();
+			}
+		}
+	}
+
+	/** Cancels the oldest call with the lowest priority below the given one. */
+	private boolean cancelLowerPriority(int priority) {
+		int limit = Math.min(BUCKETS, priority);
+		for (int bucket = 0; bucket < limit; bucket++) {
+			for (Node node = buckets[bucket].first(); node != null; node = node.next) {
+				Call waiting = node.call;
+				if (waiting != null && waiting.getPriority() < priority && waiting.cancel()) {
+					removeWaiting(waiting);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean containsDuplicate(Call call) {
+		for (Bucket bucket : buckets) {
+			for (Node node = bucket.first(); node != null; node = node.next) {
+				Call waiting = node.call;
+				if (waiting != null && waiting.isQueued() && waiting.isDuplicateOf(call)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	void setCoalescing(Coalescing coalescing) {
+		this.coalescing = coalescing;
+		if (coalescing == Coalescing.NONE) {
+			waitingMlmCalls.clear();
+		}
+	}
+
+	/** Removes a call which is no longer waiting from the index. */
+	private void removeWaiting(Call call) {
+		if (call instanceof MlmCall && !waitingMlmCalls.isEmpty()) {
+			MlmCall mlmCall = (MlmCall) call;
+			waitingMlmCalls.remove(mlmCall.getKey(), mlmCall);
+		}
+	}
+
+	/**
+	 * Marks the current thread as the thread which takes the calls, so it
+	 * never waits for space in any queue.
+	 */
+	void startConsumer() {
+		CONSUMER_THREAD.set(Boolean.TRUE);
+	}
+
+	/** Called by the consumer when it stops taking calls. */
+	void stopConsumer() {
+		CONSUMER_THREAD.remove();
+	}
+
+	/**
+	 * Called when the engine stops. Producers which wait for space (and later
+	 * ones when the queue is full) drop their calls instead of waiting for a
+	 * consumer which never comes.
+	 */
+	void close() {
+		synchronized (notFull) {
+			closed = true;
+			notFull.notifyAll();
+		}
+	}
+
+	/** Waits for a call and removes it from the queue. */
+	Call take() throws InterruptedException {
+		while (true) {
+			Call call = poll();
+			if (call != null) {
+				return call;
+			}
+			waitingConsumer = Thread.currentThread();
+			try {
+				// check again, a producer may not have seen the waiting consumer
+				if (findNonEmpty() < 0) {
+					LockSupport.park(this);
+				}
+			} finally {
+				waitingConsumer = null;
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/** Removes the call with the highest priority, only called by the consumer. */
+	private Call poll() {
+		int bucket;
+		while ((bucket = findNonEmpty()) >= 0) {
+			Bucket queue = buckets[bucket];
+			Call call = queue.poll();
+			if (queue.isEmpty()) {
+				clearNonEmpty(bucket);
+				// a producer may have added a call before the bit was cleared
+				if (!queue.isEmpty()) {
+					setNonEmpty(bucket);
+				}
+			}
+			if (call != null && call.claim()) {
+				removeWaiting(call);
+				release();
+				return call;
+			}
+			// cancelled calls were already removed from the size
+		}
+		return null;
+	}
+
+	int size() {
+		return size.get();
+	}
+
+	/** Finds the highest non-empty bucket, or -1. */
+	private int findNonEmpty() {
+		for (int word = nonEmpty.length() - 1; word >= 0; word--) {
+			long bits = nonEmpty.get(word);
+			if (bits != 0) {
+				return word * 64 + 63 - Long.numberOfLeadingZeros(bits);
+			}
+		}
+		return -1;
+	}
+
+	private void setNonEmpty(int bucket) {
+		int word = bucket / 64;
+		long mask = 1L << (bucket % 64);
+		long bits;
+		do {
+			bits = nonEmpty.get(word);
+			if ((bits & mask) != 0) {
+				return;
+			}
+		} while (!nonEmpty.compareAndSet(word, bits, bits | mask));
+	}
+
+	private void clearNonEmpty(int bucket) {
+		int word = bucket / 64;
+		long mask = 1L << (bucket % 64);
+		long bits;
+		do {
+			bits = nonEmpty.get(word);
+			if ((bits & mask) == 0) {
+				return;
+			}
+		} while (!nonEmpty.compareAndSet(word, bits, bits & ~mask));
+	}
+}
@@ -0,0 +1,21 @@
+package arden.engine;
+
+/**
+ * Whether the {@link EvokeEngine} merges a new MLM call into a waiting call
+ * for the same MLM, with the same arguments and a triggering event with the
+ * same name and partition key (e.g. repeated lab results of a patient for the
+ * same MLM). The merged call runs the MLM only once.
+ *
+ * @see EvokeEngine#setCoalescing(Coalescing)
+ */
+public enum Coalescing {
+	/** Every call runs the MLM. */
+	NONE,
+	/** The waiting call runs with the trigger (and event) of the newest call. */
+	LATEST,
+	/**
+	 * The waiting call runs with its own trigger, newer calls are only
+	 * counted.
+	 */
+	COUNT
+}
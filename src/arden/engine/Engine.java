@@ -0,0 +1,53 @@
+package arden.engine;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenRunnable;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.evoke.Trigger;
+
+/**
+ * An engine which runs MLMs when they are triggered or called, e.g. an
+ * {@link EvokeEngine} or a {@link PartitionedEngine}. The engine runs until
+ * the thread which calls {@link #run()} is interrupted.
+ */
+public interface Engine extends Runnable {
+	/**
+	 * Calls an event after a delay.
+	 *
+	 * @see EvokeEngine#call(ArdenEvent, long, int)
+	 */
+	void call(ArdenEvent event, long delay, int urgency);
+
+	/**
+	 * Calls an MLM after a delay.
+	 *
+	 * @see EvokeEngine#call(ArdenRunnable, ArdenValue[], long, Trigger, int)
+	 */
+	void call(ArdenRunnable mlm, ArdenValue[] arguments, long delay, Trigger evokingTrigger, int urgency);
+
+	/** @see {@link ExecutionContext#findModules(ArdenEvent)} */
+	MedicalLogicModule[] findModules(ArdenEvent event) throws InvocationTargetException;
+
+	/**
+	 * Replaces the MLM with the same name and institution by a new version, or
+	 * adds the MLM if there is no such MLM.
+	 *
+	 * @return The replaced MLM or <code>null</code> if the MLM was added.
+	 * @see EvokeEngine#replaceModule(MedicalLogicModule)
+	 */
+	MedicalLogicModule replaceModule(MedicalLogicModule newMlm);
+
+	/** Gets the MLMs which are currently run by the engine. */
+	List<MedicalLogicModule> getModules();
+
+	/** Gets the number of calls which are waiting to be run. */
+	int getQueueSize();
+
+	/** @see EvokeEngine#setCoalescing(Coalescing) */
+	void setCoalescing(Coalescing coalescing);
+}
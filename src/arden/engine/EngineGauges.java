@@ -0,0 +1,41 @@
+package arden.engine;
+
+import arden.runtime.metrics.Gauge;
+import arden.runtime.metrics.MetricsRegistry;
+
+/**
+ * The gauges of a running engine. They are registered when the engine starts
+ * and removed when it stops, so a stopped engine is not kept alive (and
+ * reported) by the registry.
+ */
+final class EngineGauges {
+	private static final String QUEUE_DEPTH = "arden_engine_queue_depth";
+	private static final String DELAYED_PENDING = "arden_engine_delayed_pending";
+	private static final String MLMS = "arden_engine_mlms";
+
+	private final MetricsRegistry metrics;
+	private final Gauge queueDepth;
+	private final Gauge delayedPending;
+	private final Gauge mlms;
+
+	EngineGauges(MetricsRegistry metrics, Gauge queueDepth, Gauge delayedPending, Gauge mlms) {
+		this.metrics = metrics;
+		this.queueDepth = queueDepth;
+		this.delayedPending = delayedPending;
+		this.mlms = mlms;
+	}
+
+	/** Registers the gauges, which replace those of another engine. */
+	void register() {
+		metrics.gauge(QUEUE_DEPTH, "Calls waiting in the queue of the evoke engine", queueDepth);
+		metrics.gauge(DELAYED_PENDING, "Delayed calls which are not yet added to the queue", delayedPending);
+		metrics.gauge(MLMS, "MLMs run by the evoke engine", mlms);
+	}
+
+	/** Removes the gauges, unless they were replaced by another engine. */
+	void unregister() {
+		metrics.removeGauge(QUEUE_DEPTH, queueDepth);
+		metrics.removeGauge(DELAYED_PENDING, delayedPending);
+		metrics.removeGauge(MLMS, mlms);
+	}
+}
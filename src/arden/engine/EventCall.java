@@ -21,6 +21,31 @@ public final class EventCall extends Call {
 		this.event = event;
 	}
 
+	@Override
+	boolean isDuplicateOf(Call other) {
+		return other instanceof EventCall && getPriority() == other.getPriority()
+				&& isSameEvent(event, ((EventCall) other).event);
+	}
+
+	/** Compares the name and times of two events, which may be <code>null</code>. */
+	static boolean isSameEvent(ArdenEvent e1, ArdenEvent e2) {
+		if (e1 == null || e2 == null) {
+			return e1 == e2;
+		}
+		return e1.equals(e2) && e1.eventTime == e2.eventTime && e1.primaryTime == e2.primaryTime
+				&& (e1.partitionKey == null ? e2.partitionKey == null : e1.partitionKey.equals(e2.partitionKey));
+	}
+
+	@Override
+	String getName() {
+		return event.name;
+	}
+
+	@Override
+	String getPartitionKey() {
+		return event.partitionKey;
+	}
+
 	@Override
 	public void run() {
 		// schedule event for all triggers and call directly triggered MLMs
@@ -30,6 +55,7 @@ public final class EventCall extends Call {
 				triggers = mlm.getTriggers(context);
 			} catch (InvocationTargetException e) {
 				// print error and skip this MLM
+				MlmCall.countError(mlm);
 				e.printStackTrace();
 				continue;
 			}
@@ -2,12 +2,15 @@ package arden.engine;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import arden.runtime.ArdenEvent;
@@ -17,6 +20,11 @@ import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
 import arden.runtime.MedicalLogicModule;
 import arden.runtime.evoke.Trigger;
+import arden.runtime.metrics.Counter;
+import arden.runtime.metrics.Gauge;
+import arden.runtime.metrics.MetricsRegistry;
+import arden.runtime.profiler.JfrEvents;
+import arden.runtime.profiler.LatencyHistogram;
 
 /**
  * <p>
@@ -38,20 +46,190 @@ import arden.runtime.evoke.Trigger;
  * should run next. Delayed calls are added to the the queue after their delay
  * has passed, via a {@link ScheduledExecutorService}.
  * </p>
+ * <p>
+ * MLMs can be replaced by a new version while the engine is running, see
+ * {@link #replaceModule(MedicalLogicModule)}.
+ * </p>
+ * <p>
+ * While a flight recording is running, each call and each delayed scheduling
+ * is recorded as JFR event (see {@link JfrEvents}), including the time the
+ * call waited in the queue.
+ * </p>
+ * <p>
+ * The queue can be bounded, see {@link OverloadPolicy} for what happens when
+ * it is full. Duplicate MLM calls can be merged while they wait, see
+ * {@link #setCoalescing(Coalescing)}.
+ * </p>
+ * <p>
+ * The queue depth, the number of pending delayed calls, the number of events
+ * and the duration and queue wait time of the calls are available as metrics
+ * (see {@link MetricsRegistry}). The gauges are only registered while the
+ * engine runs.
+ * </p>
  */
-public class EvokeEngine implements Runnable {
+public class EvokeEngine implements Engine {
 	// thread-safe queue of calls which are waiting for execution
-	private final PriorityBlockingQueue<Call> calls = new PriorityBlockingQueue<>(11);
-	private final ScheduledExecutorService delayer = Executors.newScheduledThreadPool(1);
+	private final CallQueue calls;
+	private final ScheduledThreadPoolExecutor delayer = new ScheduledThreadPoolExecutor(1);
 	private final ExecutionContext context;
 	private final List<MedicalLogicModule> mlms;
+	// replaced MLMs, mapped to their new version (while calls to them are pending)
+	private final Map<ArdenRunnable, ArdenRunnable> replacements = Collections
+			.synchronizedMap(new WeakHashMap<ArdenRunnable, ArdenRunnable>());
+	// the thread running the engine, and the partition key of its current call
+	private volatile Thread engineThread;
+	private String runningPartitionKey;
+
+	// metrics of this engine
+	private final EngineGauges gauges;
+	private final Counter eventsReceived;
+	private final Counter delayedCalls;
+	private final LatencyHistogram eventCallDuration;
+	private final LatencyHistogram mlmCallDuration;
+	private final LatencyHistogram eventQueueWait;
+	private final LatencyHistogram mlmQueueWait;
 
 	public EvokeEngine(ExecutionContext context, List<MedicalLogicModule> mlms) {
-		this.mlms = mlms;
+		this(context, mlms, 0, OverloadPolicy.BLOCK);
+	}
+
+	/**
+	 * Creates an engine whose queue holds at most <code>capacity</code> calls.
+	 * When the queue is full, new calls are handled by the policy. The number
+	 * of dropped calls is available as metrics.
+	 * 
+	 * @param capacity
+	 *            The maximum number of waiting calls, 0 for no limit.
+	 */
+	public EvokeEngine(ExecutionContext context, List<MedicalLogicModule> mlms, int capacity, OverloadPolicy policy) {
+		this(context, mlms, capacity, policy, MetricsRegistry.getDefault());
+	}
+
+	/**
+	 * @param metrics
+	 *            The registry of the metrics of this engine. Its gauges are
+	 *            registered while the engine runs and replace those of another
+	 *            engine in the same registry.
+	 */
+	public EvokeEngine(ExecutionContext context, List<MedicalLogicModule> mlms, int capacity, OverloadPolicy policy,
+			MetricsRegistry metrics) {
+		this(context, mlms, capacity, policy, metrics, true);
+	}
+
+	/**
+	 * @param registerGauges
+	 *            Whether to register the gauges of this engine. The shards of
+	 *            a {@link PartitionedEngine} do not, it registers the sum of
+	 *            all shards instead.
+	 */
+	EvokeEngine(ExecutionContext context, List<MedicalLogicModule> mlms, int capacity, OverloadPolicy policy,
+			MetricsRegistry metrics, boolean registerGauges) {
+		// copy on write, so MLMs can be replaced while they are iterated
+		this.mlms = new CopyOnWriteArrayList<>(mlms);
 		this.context = context;
+
+		calls = new CallQueue(capacity, policy, metrics);
+
+		eventsReceived = metrics.counter("arden_engine_events_total", "Events sent to the evoke engine");
+		delayedCalls = metrics.counter("arden_engine_delayed_calls_total",
+				"Event and MLM calls added to the queue after a delay");
+		String durationHelp = "Time to run a call, including the MLMs it runs directly";
+		eventCallDuration = metrics.histogram("arden_engine_call_duration_seconds", durationHelp, "kind", "event");
+		mlmCallDuration = metrics.histogram("arden_engine_call_duration_seconds", durationHelp, "kind", "mlm");
+		String waitHelp = "Time between adding a call to the queue and running it";
+		eventQueueWait = metrics.histogram("arden_engine_queue_wait_seconds", waitHelp, "kind", "event");
+		mlmQueueWait = metrics.histogram("arden_engine_queue_wait_seconds", waitHelp, "kind", "mlm");
+		if (!registerGauges) {
+			gauges = null;
+			return;
+		}
+		gauges = new EngineGauges(metrics, new Gauge() {
+			@Override
+			public double getValue() {
+				return calls.size();
+			}
+		}, new Gauge() {
+			@Override
+			public double getValue() {
+				return delayer.getQueue().size();
+			}
+		}, new Gauge() {
+			@Override
+			public double getValue() {
+				return EvokeEngine.this.mlms.size();
+			}
+		});
+	}
+
+	/**
+	 * Replaces the MLM with the same name and institution by a new version, or
+	 * adds the MLM if there is no such MLM. May be called from any thread
+	 * while the engine is running, e.g. after compiling the new version.
+	 * <p>
+	 * Calls to the old version which are still waiting (delayed or in the
+	 * queue) run the new version instead. The triggers of the new version are
+	 * scheduled on the engine's thread.
+	 * </p>
+	 * 
+	 * @return The replaced MLM or <code>null</code> if the MLM was added.
+	 */
+	@Override
+	public synchronized MedicalLogicModule replaceModule(MedicalLogicModule newMlm) {
+		String name = newMlm.getName().toLowerCase().trim();
+		String institution = newMlm.getMaintenance().getInstitution().toLowerCase().trim();
+		MedicalLogicModule oldMlm = null;
+		for (int i = 0; i < mlms.size(); i++) {
+			MedicalLogicModule mlm = mlms.get(i);
+			if (mlm.getName().toLowerCase().trim().equals(name)
+					&& mlm.getMaintenance().getInstitution().toLowerCase().trim().equals(institution)) {
+				oldMlm = mlm;
+				replacements.put(oldMlm, newMlm);
+				mlms.set(i, newMlm);
+				break;
+			}
+		}
+		if (oldMlm == null) {
+			mlms.add(newMlm);
+		}
+
+		// wake up the scheduling loop, so the new triggers are scheduled
+		calls.add(new Call(0) {
+			@Override
+			public void run() {
+			}
+		});
+		return oldMlm;
+	}
+
+	/**
+	 * Sets whether new MLM calls are merged into a waiting call for the same
+	 * MLM, with the same arguments and a triggering event with the same name
+	 * and partition key. The number of merged calls is available as metric.
+	 */
+	@Override
+	public void setCoalescing(Coalescing coalescing) {
+		calls.setCoalescing(coalescing);
+	}
+
+	/** Gets the number of calls which are waiting to be run. */
+	@Override
+	public int getQueueSize() {
+		return calls.size();
+	}
+
+	/** Gets the number of delayed calls which are not yet added to the queue. */
+	int getDelayedCount() {
+		return delayer.getQueue().size();
+	}
+
+	/** Gets the MLMs which are currently run by the engine. */
+	@Override
+	public List<MedicalLogicModule> getModules() {
+		return Collections.unmodifiableList(mlms);
 	}
 
 	/** @see {@link ExecutionContext#findModules(ArdenEvent)} */
+	@Override
 	public MedicalLogicModule[] findModules(ArdenEvent event) throws InvocationTargetException {
 		List<MedicalLogicModule> foundModules = new ArrayList<>();
 		for (MedicalLogicModule mlm : mlms) {
@@ -76,7 +254,9 @@ public class EvokeEngine implements Runnable {
 	 *            a number from 1 (low urgency) to 99 (high urgency), which is
 	 *            used to decide in which order to evaluate events
 	 */
+	@Override
 	public void call(ArdenEvent event, long delay, int urgency) {
+		event = fillPartitionKey(event);
 		/*
 		 * Checking the evoke statements may require running the data slot,
 		 * which should not run concurrent to other (possibly data changing)
@@ -84,11 +264,14 @@ public class EvokeEngine implements Runnable {
 		 * engines thread.
 		 */
 		final EventCall call = new EventCall(context, mlms, event, urgency);
+		eventsReceived.increment();
 		if (delay <= 0) {
 			// run event as soon as possible
 			calls.add(call);
 		} else {
 			// add the event call after the delay has passed
+			JfrEvents.schedule("event", event.name, delay);
+			delayedCalls.increment();
 			delayer.schedule(new Runnable() {
 				@Override
 				public void run() {
@@ -114,6 +297,7 @@ public class EvokeEngine implements Runnable {
 	 *            a number from 1 (low urgency) to 99 (high urgency), which is
 	 *            used to decide in which order to evaluate MLMs.
 	 */
+	@Override
 	public void call(ArdenRunnable mlm, ArdenValue[] arguments, long delay, Trigger evokingTrigger, int urgency) {
 		final MlmCall call = new MlmCall(context, mlm, arguments, evokingTrigger, urgency);
 		if (delay <= 0) {
@@ -121,6 +305,8 @@ public class EvokeEngine implements Runnable {
 			calls.add(call);
 		} else {
 			// add the call after the delay has passed
+			JfrEvents.schedule("mlm", MlmCall.getName(mlm), delay);
+			delayedCalls.increment();
 			delayer.schedule(new Runnable() {
 				@Override
 				public void run() {
@@ -130,8 +316,25 @@ public class EvokeEngine implements Runnable {
 		}
 	}
 
+	/**
+	 * Gives an event sent by an MLM the partition key (e.g. the patient) of
+	 * the call which runs the MLM, so the event stays in the partition.
+	 */
+	ArdenEvent fillPartitionKey(ArdenEvent event) {
+		if (event.partitionKey == null && Thread.currentThread() == engineThread && runningPartitionKey != null) {
+			return event.setPartitionKey(runningPartitionKey);
+		}
+		return event;
+	}
+
 	@Override
 	public void run() {
+		engineThread = Thread.currentThread();
+		calls.startConsumer();
+		if (gauges != null) {
+			gauges.register();
+		}
+
 		// initialize schedule for fixed time triggers
 		scheduleTriggers();
 
@@ -147,16 +350,58 @@ public class EvokeEngine implements Runnable {
 			}
 
 			// execute MlmCall or EventCall on this thread
+			call = getCurrentVersion(call);
+			long start = System.nanoTime();
+			long queueWait = start - call.getQueuedAt();
+			Object event = JfrEvents.beginEngineCall();
+			runningPartitionKey = call.getPartitionKey();
 			call.run();
+			runningPartitionKey = null;
+			if (call instanceof EventCall) {
+				eventCallDuration.record(System.nanoTime() - start);
+				eventQueueWait.record(queueWait);
+			} else if (call instanceof MlmCall) {
+				mlmCallDuration.record(System.nanoTime() - start);
+				mlmQueueWait.record(queueWait);
+			}
+			if (event != null) {
+				JfrEvents.endEngineCall(event, call instanceof EventCall ? "event" : "mlm", call.getName(),
+						call.getPriority(), queueWait);
+			}
 
 			// check for MLMs which may now be triggered
 			scheduleTriggers();
 		}
+		calls.stopConsumer();
+		calls.close();
+		engineThread = null;
+		if (gauges != null) {
+			gauges.unregister();
+		}
 
 		// cancel all delayed tasks
 		delayer.shutdownNow();
 	}
 
+	/** Redirects a call of a replaced MLM to its newest version. */
+	private Call getCurrentVersion(Call call) {
+		if (!(call instanceof MlmCall) || replacements.isEmpty()) {
+			return call;
+		}
+		MlmCall mlmCall = (MlmCall) call;
+		ArdenRunnable runnable = mlmCall.getRunnable();
+		ArdenRunnable replacement;
+		while ((replacement = replacements.get(runnable)) != null) {
+			runnable = replacement;
+		}
+		if (runnable == mlmCall.getRunnable()) {
+			return call;
+		}
+		MlmCall newCall = mlmCall.withRunnable(runnable);
+		newCall.setQueuedAt(call.getQueuedAt());
+		return newCall;
+	}
+
 	private void scheduleTriggers() {
 		// schedule MLMs by looking at their triggers getNextRunTime() method
 		Schedule schedule = Schedule.create(context, mlms);
@@ -172,11 +417,17 @@ public class EvokeEngine implements Runnable {
 				calls.addAll(triggeredMlms);
 			} else {
 				// add the calls after the delay has passed
+				delayedCalls.add(triggeredMlms.size());
+				if (JfrEvents.isRecording()) {
+					for (Call call : triggeredMlms) {
+						JfrEvents.schedule("mlm", call.getName(), delay);
+					}
+				}
 				delayer.schedule(new Runnable() {
 					@Override
 					public void run() {
 						/*
-						 * PriorityBlockingQueue.addAll() is not atomic, i.e.
+						 * CallQueue.addAll() is not atomic, i.e.
 						 * the first MLM has a high chance to run before all
 						 * other MLMs are added. The MLMs are already sorted by
 						 * their priority, so this is not a problem.
@@ -1,24 +1,150 @@
 package arden.engine;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 
+import arden.runtime.ArdenEvent;
 import arden.runtime.ArdenRunnable;
 import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.evoke.CallTrigger;
 import arden.runtime.evoke.Trigger;
+import arden.runtime.metrics.MetricsRegistry;
 
 public final class MlmCall extends Call {
 	private final ArdenRunnable runnable;
 	private final ArdenValue[] args;
-	private final Trigger trigger;
+	// replaced when a newer call is merged into this call
+	private volatile Trigger trigger;
 	private final ExecutionContext context;
+	private Key key;
 
 	public MlmCall(ExecutionContext context, ArdenRunnable runnable, ArdenValue[] args, Trigger trigger, int priority) {
 		super(priority);
 		this.context = context;
 		this.runnable = runnable;
 		this.args = args;
-		this.trigger = trigger;
+		this.trigger = snapshot(trigger);
+	}
+
+	/** Keeps the current event of a trigger which changes with later events. */
+	private static Trigger snapshot(Trigger trigger) {
+		if (trigger == null || trigger instanceof CallTrigger || trigger instanceof TriggerSnapshot) {
+			return trigger;
+		}
+		return new TriggerSnapshot(trigger);
+	}
+
+	ArdenRunnable getRunnable() {
+		return runnable;
+	}
+
+	/** Creates the same call for another version of the MLM. */
+	MlmCall withRunnable(ArdenRunnable newRunnable) {
+		return new MlmCall(context, newRunnable, args, trigger, getPriority());
+	}
+
+	/**
+	 * Gets the key of waiting calls into which this call can be merged: the
+	 * MLM, the arguments and the name and partition key of the triggering
+	 * event.
+	 */
+	Key getKey() {
+		if (key == null) {
+			ArdenEvent event = trigger.getTriggeringEvent();
+			key = new Key(runnable, args, event != null ? event.name.toLowerCase() : null,
+					event != null ? event.partitionKey : null);
+		}
+		return key;
+	}
+
+	/**
+	 * Merges a newer call with the same key into this call.
+	 * 
+	 * @param latest
+	 *            Whether this call runs with the trigger of the newer call.
+	 * @return Whether this call is still waiting and the newer call can be
+	 *         dropped.
+	 */
+	boolean merge(MlmCall newer, boolean latest) {
+		// the call cannot be taken while the trigger is replaced
+		if (!beginMerge()) {
+			return false;
+		}
+		if (latest) {
+			trigger = newer.trigger;
+		}
+		endMerge();
+		return true;
+	}
+
+	@Override
+	boolean isDuplicateOf(Call other) {
+		if (!(other instanceof MlmCall)) {
+			return false;
+		}
+		MlmCall call = (MlmCall) other;
+		return runnable == call.runnable && Arrays.equals(args, call.args)
+				&& EventCall.isSameEvent(trigger.getTriggeringEvent(), call.trigger.getTriggeringEvent());
+	}
+
+	static final class Key {
+		private final ArdenRunnable runnable;
+		private final ArdenValue[] args;
+		private final String eventName;
+		private final String partitionKey;
+
+		Key(ArdenRunnable runnable, ArdenValue[] args, String eventName, String partitionKey) {
+			this.runnable = runnable;
+			this.args = args;
+			this.eventName = eventName;
+			this.partitionKey = partitionKey;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return runnable == other.runnable && Arrays.equals(args, other.args)
+					&& (eventName == null ? other.eventName == null : eventName.equals(other.eventName))
+					&& (partitionKey == null ? other.partitionKey == null : partitionKey.equals(other.partitionKey));
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = System.identityHashCode(runnable) * 31 + Arrays.hashCode(args);
+			hash = hash * 31 + (eventName != null ? eventName.hashCode() : 0);
+			return hash * 31 + (partitionKey != null ? partitionKey.hashCode() : 0);
+		}
+	}
+
+	@Override
+	String getName() {
+		return getName(runnable);
+	}
+
+	@Override
+	String getPartitionKey() {
+		ArdenEvent event = trigger != null ? trigger.getTriggeringEvent() : null;
+		return event != null ? event.partitionKey : null;
+	}
+
+	/** Counts a failed run or trigger evaluation of an MLM in its metrics. */
+	static void countError(ArdenRunnable runnable) {
+		MetricsRegistry.getDefault()
+				.counter("arden_mlm_errors_total", "Failed runs and trigger evaluations of MLMs", "mlm",
+						getName(runnable))
+				.increment();
+	}
+
+	static String getName(ArdenRunnable runnable) {
+		if (runnable instanceof MedicalLogicModule) {
+			return ((MedicalLogicModule) runnable).getName();
+		}
+		return runnable.toString();
 	}
 
 	@Override
@@ -28,6 +154,7 @@ public final class MlmCall extends Call {
 			runnable.run(context, args, trigger);
 		} catch (InvocationTargetException e) {
 			// print error and skip this MLM
+			countError(runnable);
 			e.printStackTrace();
 		}
 	}
@@ -0,0 +1,30 @@
+package arden.engine;
+
+/**
+ * What the {@link EvokeEngine} does with a new call when its queue is full.
+ * 
+ * @see EvokeEngine#EvokeEngine(arden.runtime.ExecutionContext, java.util.List,
+ *      int, OverloadPolicy)
+ */
+public enum OverloadPolicy {
+	/**
+	 * The thread adding the call waits until there is space in the queue, so
+	 * e.g. the event server stops reading events. Calls added by the thread of
+	 * an engine (or of any shard of a {@link PartitionedEngine}) are always
+	 * added, as it would otherwise wait for itself or for another engine that
+	 * waits for it.
+	 */
+	BLOCK,
+	/** The new call is dropped. */
+	REJECT,
+	/**
+	 * The call with the lowest priority/urgency (the new one or a waiting one)
+	 * is dropped.
+	 */
+	SHED,
+	/**
+	 * The new call is dropped if the same call is already waiting, otherwise
+	 * it is rejected.
+	 */
+	COALESCE
+}
@@ -0,0 +1,235 @@
+package arden.engine;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenRunnable;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.evoke.Trigger;
+import arden.runtime.metrics.Gauge;
+import arden.runtime.metrics.MetricsRegistry;
+
+/**
+ * <p>
+ * An evoke engine which is split into shards, e.g. one per core. Each shard is
+ * an {@link EvokeEngine} with its own queue, scheduler, thread and trigger
+ * state. A {@link Partitioner} extracts a key (e.g. the patient id) from each
+ * event, the key decides which shard handles the event. So events with the
+ * same key are handled in order, while a burst of events for one key only
+ * delays the other keys on the same shard.
+ * </p>
+ * <p>
+ * MLM calls are handled on the shard of their triggering event. Calls and
+ * events without a key stay on the shard of the calling thread, or go to the
+ * first shard if they are not called from a shard. Events sent by an MLM get
+ * the {@link ArdenEvent#partitionKey} of the call which runs the MLM.
+ * </p>
+ * <p>
+ * The MLMs are shared between the shards, but each shard has its own
+ * triggers. Triggers which do not depend on an event (e.g. fixed times) only
+ * run on the first shard.
+ * </p>
+ * <p>
+ * The engine gauges (see {@link MetricsRegistry}) report the sum of all
+ * shards.
+ * </p>
+ */
+public class PartitionedEngine implements Engine {
+	private final EvokeEngine[] shards;
+	private final Partitioner partitioner;
+	// the shard whose thread is the current thread
+	private final ThreadLocal<EvokeEngine> currentShard = new ThreadLocal<EvokeEngine>();
+	private final EngineGauges gauges;
+
+	public PartitionedEngine(ExecutionContext context, List<MedicalLogicModule> mlms, int shardCount,
+			Partitioner partitioner) {
+		this(context, mlms, shardCount, partitioner, 0, OverloadPolicy.BLOCK);
+	}
+
+	/**
+	 * @param capacity
+	 *            The maximum number of waiting calls of each shard, 0 for no
+	 *            limit.
+	 */
+	public PartitionedEngine(ExecutionContext context, List<MedicalLogicModule> mlms, int shardCount,
+			Partitioner partitioner, int capacity, OverloadPolicy policy) {
+		this(context, mlms, shardCount, partitioner, capacity, policy, MetricsRegistry.getDefault());
+	}
+
+	/**
+	 * @param metrics
+	 *            The registry of the metrics of all shards. The gauges are
+	 *            registered while the engine runs and replace those of another
+	 *            engine in the same registry.
+	 */
+	public PartitionedEngine(ExecutionContext context, List<MedicalLogicModule> mlms, int shardCount,
+			Partitioner partitioner, int capacity, OverloadPolicy policy, MetricsRegistry metrics) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("shardCount must be positive");
+		}
+		this.partitioner = partitioner;
+		shards = new EvokeEngine[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			List<MedicalLogicModule> shardMlms = new ArrayList<MedicalLogicModule>();
+			for (MedicalLogicModule mlm : mlms) {
+				shardMlms.add(new ShardModule(mlm, i == 0));
+			}
+			shards[i] = new EvokeEngine(context, shardMlms, capacity, policy, metrics, false);
+		}
+		gauges = new EngineGauges(metrics, new Gauge() {
+			@Override
+			public double getValue() {
+				return getQueueSize();
+			}
+		}, new Gauge() {
+			@Override
+			public double getValue() {
+				return getDelayedCount();
+			}
+		}, new Gauge() {
+			@Override
+			public double getValue() {
+				return shards[0].getModules().size();
+			}
+		});
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/** Gets the index of the shard which handles the event. */
+	public int getShardIndex(ArdenEvent event) {
+		Object key = event != null ? partitioner.getPartitionKey(event) : null;
+		if (key == null) {
+			EvokeEngine current = currentShard.get();
+			for (int i = 0; i < shards.length; i++) {
+				if (shards[i] == current) {
+					return i;
+				}
+			}
+			return 0;
+		}
+		int hash = key.hashCode();
+		// spread the high bits, like HashMap
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % shards.length;
+	}
+
+	private EvokeEngine getShard(ArdenEvent event) {
+		return shards[getShardIndex(event)];
+	}
+
+	@Override
+	public void call(ArdenEvent event, long delay, int urgency) {
+		EvokeEngine current = currentShard.get();
+		if (current != null) {
+			// an event sent by an MLM stays in the partition of the MLM's call
+			event = current.fillPartitionKey(event);
+		}
+		getShard(event).call(event, delay, urgency);
+	}
+
+	@Override
+	public void call(ArdenRunnable mlm, ArdenValue[] arguments, long delay, Trigger evokingTrigger, int urgency) {
+		ArdenEvent event = evokingTrigger != null ? evokingTrigger.getTriggeringEvent() : null;
+		getShard(event).call(mlm, arguments, delay, evokingTrigger, urgency);
+	}
+
+	@Override
+	public MedicalLogicModule[] findModules(ArdenEvent event) throws InvocationTargetException {
+		MedicalLogicModule[] found = getShard(event).findModules(event);
+		for (int i = 0; i < found.length; i++) {
+			found[i] = ShardModule.unwrap(found[i]);
+		}
+		return found;
+	}
+
+	@Override
+	public synchronized MedicalLogicModule replaceModule(MedicalLogicModule newMlm) {
+		MedicalLogicModule oldMlm = null;
+		for (int i = 0; i < shards.length; i++) {
+			MedicalLogicModule replaced = shards[i].replaceModule(new ShardModule(newMlm, i == 0));
+			if (i == 0 && replaced != null) {
+				oldMlm = ShardModule.unwrap(replaced);
+			}
+		}
+		return oldMlm;
+	}
+
+	@Override
+	public void setCoalescing(Coalescing coalescing) {
+		for (EvokeEngine shard : shards) {
+			shard.setCoalescing(coalescing);
+		}
+	}
+
+	@Override
+	public int getQueueSize() {
+		int size = 0;
+		for (EvokeEngine shard : shards) {
+			size += shard.getQueueSize();
+		}
+		return size;
+	}
+
+	private int getDelayedCount() {
+		int count = 0;
+		for (EvokeEngine shard : shards) {
+			count += shard.getDelayedCount();
+		}
+		return count;
+	}
+
+	@Override
+	public List<MedicalLogicModule> getModules() {
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		for (MedicalLogicModule mlm : shards[0].getModules()) {
+			mlms.add(ShardModule.unwrap(mlm));
+		}
+		return Collections.unmodifiableList(mlms);
+	}
+
+	/** Runs each shard on its own thread, until this thread is interrupted. */
+	@Override
+	public void run() {
+		gauges.register();
+		Thread[] threads = new Thread[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			final EvokeEngine shard = shards[i];
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					currentShard.set(shard);
+					shard.run();
+				}
+			}, "Arden engine shard " + i);
+			threads[i].start();
+		}
+
+		try {
+			// the shards only stop when they are interrupted
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			// shutting down
+		}
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		gauges.unregister();
+	}
+}
@@ -0,0 +1,40 @@
+package arden.engine;
+
+import arden.runtime.ArdenEvent;
+
+/**
+ * Extracts the partition key (e.g. the patient id) from an event, which
+ * decides on which shard of a {@link PartitionedEngine} the event is handled.
+ * Events with equal keys are handled on the same shard, in order.
+ * <p>
+ * Implementations must be thread-safe. To be used with the
+ * <code>--partition-key</code> option, they need a public constructor without
+ * arguments.
+ * </p>
+ */
+public interface Partitioner {
+	/**
+	 * Partitions events by their {@link ArdenEvent#partitionKey} (e.g. the
+	 * patient). Events without one are partitioned by their name.
+	 */
+	Partitioner PARTITION_KEY = new Partitioner() {
+		@Override
+		public Object getPartitionKey(ArdenEvent event) {
+			return event.partitionKey != null ? event.partitionKey : EVENT_NAME.getPartitionKey(event);
+		}
+	};
+
+	/** Partitions events by their name (ignoring the case). */
+	Partitioner EVENT_NAME = new Partitioner() {
+		@Override
+		public Object getPartitionKey(ArdenEvent event) {
+			return event.name.toLowerCase();
+		}
+	};
+
+	/**
+	 * @return The key of the event, or <code>null</code> if the event does not
+	 *         belong to a partition.
+	 */
+	Object getPartitionKey(ArdenEvent event);
+}
@@ -28,6 +28,7 @@ public class Schedule extends TreeMap<ArdenTime, Queue<Call>> {
 				triggers = mlm.getTriggers(context);
 			} catch (InvocationTargetException e) {
 				// print error and skip this MLM
+				MlmCall.countError(mlm);
 				e.printStackTrace();
 				continue;
 			}
@@ -0,0 +1,102 @@
+package arden.engine;
+
+import java.lang.reflect.InvocationTargetException;
+
+import arden.compiler.CompiledMlm;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.LibraryMetadata;
+import arden.runtime.MaintenanceMetadata;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.MedicalLogicModuleImplementation;
+import arden.runtime.evoke.Trigger;
+
+/**
+ * An MLM on a shard of a {@link PartitionedEngine}. It runs the shared MLM,
+ * but has its own triggers, so the trigger state is not shared between the
+ * shards.
+ */
+final class ShardModule implements MedicalLogicModule {
+	private final MedicalLogicModule mlm;
+	private final boolean firstShard;
+	private Trigger[] triggers = null;
+
+	ShardModule(MedicalLogicModule mlm, boolean firstShard) {
+		this.mlm = mlm;
+		this.firstShard = firstShard;
+	}
+
+	/** Gets the shared MLM of an MLM on a shard. */
+	static MedicalLogicModule unwrap(MedicalLogicModule mlm) {
+		if (mlm instanceof ShardModule) {
+			return ((ShardModule) mlm).mlm;
+		}
+		return mlm;
+	}
+
+	@Override
+	public synchronized Trigger[] getTriggers(ExecutionContext context) throws InvocationTargetException {
+		if (triggers == null) {
+			Trigger[] created;
+			if (mlm instanceof CompiledMlm) {
+				created = ((CompiledMlm) mlm).createTriggers(context);
+			} else {
+				created = mlm.createInstance(context, null, null).getTriggers(context);
+			}
+			if (!firstShard) {
+				for (int i = 0; i < created.length; i++) {
+					created[i] = new ShardTrigger(created[i]);
+				}
+			}
+			triggers = created;
+		}
+		return triggers;
+	}
+
+	@Override
+	public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments, Trigger evokingTrigger)
+			throws InvocationTargetException {
+		return mlm.run(context, arguments, evokingTrigger);
+	}
+
+	@Override
+	public MedicalLogicModuleImplementation createInstance(ExecutionContext context, ArdenValue[] arguments,
+			Trigger evokingTrigger) throws InvocationTargetException {
+		return mlm.createInstance(context, arguments, evokingTrigger);
+	}
+
+	@Override
+	public String getName() {
+		return mlm.getName();
+	}
+
+	@Override
+	public MaintenanceMetadata getMaintenance() {
+		return mlm.getMaintenance();
+	}
+
+	@Override
+	public LibraryMetadata getLibrary() {
+		return mlm.getLibrary();
+	}
+
+	@Override
+	public double getPriority() {
+		return mlm.getPriority();
+	}
+
+	@Override
+	public double getUrgency() {
+		return mlm.getUrgency();
+	}
+
+	@Override
+	public ArdenValue getValue(String name) {
+		return mlm.getValue(name);
+	}
+
+	@Override
+	public String toString() {
+		return mlm.toString();
+	}
+}
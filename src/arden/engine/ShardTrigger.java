@@ -0,0 +1,50 @@
+package arden.engine;
+
+import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenTime;
+import arden.runtime.evoke.Trigger;
+
+/**
+ * Trigger of an MLM on every shard but the first of a
+ * {@link PartitionedEngine}. It is only scheduled after an event on its shard
+ * started it, so MLMs which run at fixed times do not run once per shard.
+ */
+final class ShardTrigger implements Trigger {
+	private final Trigger trigger;
+	private boolean started = false;
+
+	ShardTrigger(Trigger trigger) {
+		this.trigger = trigger;
+	}
+
+	@Override
+	public ArdenTime getNextRunTime() {
+		if (!started) {
+			return null;
+		}
+		return trigger.getNextRunTime();
+	}
+
+	@Override
+	public boolean runOnEvent(ArdenEvent event) {
+		return trigger.runOnEvent(event);
+	}
+
+	@Override
+	public void scheduleEvent(ArdenEvent event) {
+		trigger.scheduleEvent(event);
+		if (trigger.getTriggeringEvent() != null) {
+			started = true;
+		}
+	}
+
+	@Override
+	public ArdenEvent getTriggeringEvent() {
+		return trigger.getTriggeringEvent();
+	}
+
+	@Override
+	public long getDelay() {
+		return trigger.getDelay();
+	}
+}
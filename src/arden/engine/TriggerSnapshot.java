@@ -0,0 +1,45 @@
+package arden.engine;
+
+import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenTime;
+import arden.runtime.evoke.Trigger;
+
+/**
+ * The triggering event and delay of a trigger when an {@link MlmCall} was
+ * created. The triggers of an MLM are shared by all its calls and change with
+ * every event, so a waiting call keeps its own event (e.g. for
+ * {@link Coalescing#COUNT}).
+ */
+final class TriggerSnapshot implements Trigger {
+	private final ArdenEvent event;
+	private final long delay;
+
+	TriggerSnapshot(Trigger trigger) {
+		this.event = trigger.getTriggeringEvent();
+		this.delay = trigger.getDelay();
+	}
+
+	@Override
+	public ArdenTime getNextRunTime() {
+		return null;
+	}
+
+	@Override
+	public boolean runOnEvent(ArdenEvent event) {
+		return false;
+	}
+
+	@Override
+	public void scheduleEvent(ArdenEvent event) {
+	}
+
+	@Override
+	public ArdenEvent getTriggeringEvent() {
+		return event;
+	}
+
+	@Override
+	public long getDelay() {
+		return delay;
+	}
+}
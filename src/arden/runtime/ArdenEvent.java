@@ -6,9 +6,9 @@ package arden.runtime;
  * Subclasses can customize the default behavior, by overriding
  * {@link #equals(Object)}, e.g. if this event definition encompasses multiple
  * other events.<br>
- * Subclasses must also override {@link #setTime(long)} and
- * {@link #setEvokingEvent(boolean)}, so the comparison behavior is correctly
- * propagated.
+ * Subclasses must also override {@link #setTime(long)},
+ * {@link #setEvokingEvent(boolean)} and {@link #setPartitionKey(String)}, so
+ * the comparison behavior is correctly propagated.
  * </p>
  */
 public class ArdenEvent extends ArdenValue {
@@ -24,33 +24,43 @@ public class ArdenEvent extends ArdenValue {
 	 * calculation.
 	 */
 	public final long eventTime;
+	/**
+	 * The partition (e.g. the patient) the event belongs to, or
+	 * <code>null</code>. Events of the same partition are handled in order,
+	 * see arden.engine.PartitionedEngine.
+	 */
+	public final String partitionKey;
 
 	public ArdenEvent(String name) {
 		super();
 		this.name = name;
 		this.eventTime = NOPRIMARYTIME;
 		this.isEvokingEvent = false;
+		this.partitionKey = null;
 	}
 
 	public ArdenEvent(String name, long primaryTime) {
-		super(primaryTime);
-		this.name = name;
-		this.eventTime = primaryTime;
-		this.isEvokingEvent = false;
+		this(name, primaryTime, primaryTime);
 	}
 
 	public ArdenEvent(String name, long primaryTime, long eventTime) {
+		this(name, primaryTime, eventTime, null);
+	}
+
+	public ArdenEvent(String name, long primaryTime, long eventTime, String partitionKey) {
 		super(primaryTime);
 		this.name = name;
 		this.eventTime = eventTime;
 		this.isEvokingEvent = false;
+		this.partitionKey = partitionKey;
 	}
 
-	private ArdenEvent(String name, long primaryTime, long eventTime, boolean isEvokingEvent) {
+	private ArdenEvent(String name, long primaryTime, long eventTime, boolean isEvokingEvent, String partitionKey) {
 		super(primaryTime);
 		this.name = name;
 		this.eventTime = eventTime;
 		this.isEvokingEvent = true;
+		this.partitionKey = partitionKey;
 	}
 
 	@Override
@@ -60,11 +70,16 @@ public class ArdenEvent extends ArdenValue {
 		 * called in the action slot, it should be possible to change the time
 		 * of an event.
 		 */
-		return new ArdenEvent(name, newPrimaryTime);
+		return new ArdenEvent(name, newPrimaryTime, newPrimaryTime, partitionKey);
 	}
 
 	public ArdenEvent setEvokingEvent(boolean isEvokingEvent) {
-		return new ArdenEvent(name, primaryTime, eventTime, isEvokingEvent);
+		return new ArdenEvent(name, primaryTime, eventTime, isEvokingEvent, partitionKey);
+	}
+
+	/** Returns the same event for another partition (e.g. patient). */
+	public ArdenEvent setPartitionKey(String partitionKey) {
+		return new ArdenEvent(name, primaryTime, eventTime, partitionKey);
 	}
 
 	@Override
@@ -63,10 +63,10 @@ public final class ArdenTime extends ArdenValue {
 
 	@Override
 	public String toString() {
-		if (value % 1000 != 0) {
-			return isoDateTimeFormatWithMillis.format(new Date(value));
-		} else {
-			return isoDateTimeFormat.format(new Date(value));
+		// the formats are shared by all threads, e.g. the shards of an engine
+		DateFormat format = value % 1000 != 0 ? isoDateTimeFormatWithMillis : isoDateTimeFormat;
+		synchronized (format) {
+			return format.format(new Date(value));
 		}
 	}
 
@@ -1,29 +1,20 @@
 package arden.runtime;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.Arrays;
-import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import arden.CommandLineOptions;
-import arden.MainClass;
-import arden.compiler.CompiledMlm;
-import arden.compiler.Compiler;
-import arden.compiler.CompilerException;
-import arden.engine.EvokeEngine;
-import arden.runtime.MaintenanceMetadata.Validation;
+import arden.compiler.CompilationCache;
+import arden.engine.Engine;
 import arden.runtime.evoke.CallTrigger;
 import arden.runtime.evoke.Trigger;
+import arden.runtime.metrics.Counter;
+import arden.runtime.metrics.MetricsRegistry;
 
 /**
  * <p>
@@ -32,14 +23,21 @@ import arden.runtime.evoke.Trigger;
  * </p>
  * <p>
  * Also allows calling other MLMs in the action slot (directly or via event). If
- * an {@link EvokeEngine} is not set, cyclic or delayed triggers are not run and
+ * an {@link Engine} is not set, cyclic or delayed triggers are not run and
  * delayed calls are run immediately.
  * </p>
  */
 public class BaseExecutionContext extends ExecutionContext {
+	private static final String CALLS_HELP = "MLM and event calls of MLMs and the event server";
+	private static final Counter MLM_CALLS = MetricsRegistry.getDefault().counter("arden_context_calls_total",
+			CALLS_HELP, "type", "mlm");
+	private static final Counter EVENT_CALLS = MetricsRegistry.getDefault().counter("arden_context_calls_total",
+			CALLS_HELP, "type", "event");
+
 	private List<URL> mlmSearchPath = new LinkedList<URL>();
-	private Map<URL, MedicalLogicModule> initializedMlms = new HashMap<URL, MedicalLogicModule>();
-	private EvokeEngine engine;
+	private volatile ModuleRegistry registry;
+	private CompilationCache compilationCache;
+	private volatile Engine engine;
 
 	public BaseExecutionContext(URL[] mlmSearchPath) {
 		setURLs(mlmSearchPath);
@@ -56,80 +54,63 @@ public class BaseExecutionContext extends ExecutionContext {
 					addURL(url);
 				}
 			}
+			if (options.isCache()) {
+				setCompilationCache(new CompilationCache(options.getCache()));
+			}
 		} catch (MalformedURLException e) {
 			e.printStackTrace();
 		}
 	}
 
-	public void addURL(URL url) {
+	public synchronized void addURL(URL url) {
+		resetRegistry();
 		mlmSearchPath.add(url);
 	}
 
-	public void setURLs(URL[] urls) {
+	public synchronized void setURLs(URL[] urls) {
+		resetRegistry();
 		mlmSearchPath.clear();
 		if (urls != null) {
 			mlmSearchPath.addAll(Arrays.asList(urls));
 		}
 	}
 
+	/** Sets the cache for MLMs that are compiled from .mlm files on the searchpath. */
+	public synchronized void setCompilationCache(CompilationCache compilationCache) {
+		resetRegistry();
+		this.compilationCache = compilationCache;
+	}
+
 	@Override
 	public MedicalLogicModule findModule(String name, String institution) {
-		if (!name.matches("[a-zA-Z0-9\\-_]+")) {
-			throw new RuntimeException("Malformed module name: " + name);
+		MedicalLogicModule foundMlm = getRegistry().findModule(name, institution);
+		if (foundMlm == null) {
+			throw new RuntimeException("MLM not found");
 		}
+		return foundMlm;
+	}
 
-		name = name.toLowerCase().trim();
-		URLClassLoader loader = new URLClassLoader(mlmSearchPath.toArray(new URL[] {}));
-
-		try {
-			// look for matching .class files
-			Enumeration<URL> mlmClassUrls = loader.getResources(name + ".class");
-			while (mlmClassUrls.hasMoreElements()) {
-				URL url = mlmClassUrls.nextElement();
-				if (initializedMlms.containsKey(url)) {
-					// already loaded
-					continue;
-				}
-
-				InputStream in = url.openStream();
-				if (in != null) {
-					MedicalLogicModule module = new CompiledMlm(in, name);
-					cacheModule(url, module);
-				}
-			}
-
-			// look for matching .mlm files
-			Enumeration<URL> mlmUrls = loader.getResources(name + MainClass.MLM_FILE_EXTENSION);
-			while (mlmUrls.hasMoreElements()) {
-				URL url = mlmUrls.nextElement();
-				if (initializedMlms.containsKey(url)) {
-					// already loaded
-					continue;
+	private ModuleRegistry getRegistry() {
+		ModuleRegistry registry = this.registry;
+		if (registry == null) {
+			synchronized (this) {
+				registry = this.registry;
+				if (registry == null) {
+					registry = new ModuleRegistry(mlmSearchPath.toArray(new URL[mlmSearchPath.size()]),
+							compilationCache);
+					this.registry = registry;
 				}
-
-				InputStream in = url.openStream();
-
-				Compiler compiler = new Compiler();
-				MedicalLogicModule mlm;
-				mlm = compiler.compile(new InputStreamReader(in, "UTF-8")).get(0);
-				cacheModule(url, mlm);
-			}
-		} catch (CompilerException | IOException e) {
-			throw new RuntimeException(e);
-		} finally {
-			try {
-				loader.close();
-			} catch (IOException e) {
-				throw new RuntimeException(e);
 			}
 		}
+		return registry;
+	}
 
-		MedicalLogicModule[] mlms = initializedMlms.values().toArray(new MedicalLogicModule[initializedMlms.size()]);
-		MedicalLogicModule foundMlm = ExecutionContextHelpers.findModule(name, institution, mlms, null);
-		if (foundMlm == null) {
-			throw new RuntimeException("MLM not found");
+	/** Drops the module registry, so it is rebuilt for the new searchpath. */
+	private synchronized void resetRegistry() {
+		if (registry != null) {
+			registry.close();
+			registry = null;
 		}
-		return foundMlm;
 	}
 
 	@Override
@@ -146,37 +127,13 @@ public class BaseExecutionContext extends ExecutionContext {
 		}
 	}
 
-	private void cacheModule(URL url, MedicalLogicModule mlm) {
-		/*
-		 * Reuse already initialized MLM (e.g. already loaded from .class file
-		 * instead of .mlm file).
-		 */
-		for (MedicalLogicModule initializedMlm : initializedMlms.values()) {
-			MaintenanceMetadata m1 = initializedMlm.getMaintenance();
-			String m1Name = m1.getMlmName().toLowerCase().trim();
-			String m1Institution = m1.getInstitution().toLowerCase().trim();
-			Validation m1Validation = m1.getValidation();
-			String m1Version = m1.getVersion();
-			MaintenanceMetadata m2 = mlm.getMaintenance();
-			String m2Name = m2.getMlmName().toLowerCase().trim();
-			String m2Institution = m2.getInstitution().toLowerCase().trim();
-			Validation m2Validation = m2.getValidation();
-			String m2Version = m2.getVersion();
-			if (m1Name.equals(m2Name) && m1Institution.equals(m2Institution) && m1Validation == m2Validation
-					&& m1Version.equals(m2Version)) {
-				initializedMlms.put(url, initializedMlm);
-				return;
-			}
-		}
-		initializedMlms.put(url, mlm);
-	}
-
-	public void setEngine(EvokeEngine engine) {
+	public void setEngine(Engine engine) {
 		this.engine = engine;
 	}
 
 	@Override
 	public void call(ArdenRunnable mlm, ArdenValue[] arguments, ArdenValue delay, Trigger callerTrigger, double urgency) {
+		MLM_CALLS.increment();
 		long delayMillis = ExecutionContextHelpers.delayToMillis(delay);
 		Trigger calleeTrigger = ExecutionContextHelpers.combine(callerTrigger, delayMillis);
 		if (engine != null) {
@@ -196,6 +153,7 @@ public class BaseExecutionContext extends ExecutionContext {
 
 	@Override
 	public void call(ArdenEvent event, ArdenValue delay, double urgency) {
+		EVENT_CALLS.increment();
 		long delayMillis = ExecutionContextHelpers.delayToMillis(delay);
 		ArdenEvent eventAfterDelay = ExecutionContextHelpers.combine(event, delayMillis);
 		if (engine != null) {
@@ -83,7 +83,7 @@ public class ExecutionContextHelpers {
 		if (event.eventTime == ArdenValue.NOPRIMARYTIME) {
 			throw new IllegalArgumentException("Event must have a valid EVENTTIME");
 		}
-		return new ArdenEvent(event.name, event.primaryTime, event.eventTime + delay);
+		return new ArdenEvent(event.name, event.primaryTime, event.eventTime + delay, event.partitionKey);
 	}
 
 	public static long delayToMillis(ArdenValue delay) {
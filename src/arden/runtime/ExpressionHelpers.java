@@ -30,9 +30,11 @@ package arden.runtime;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.PriorityQueue;
 import java.util.regex.Pattern;
 
 import arden.runtime.evoke.AfterTrigger;
@@ -206,18 +208,57 @@ public final class ExpressionHelpers {
 		}
 	}
 
+	/**
+	 * Gets the condition values for an aggregation fused with WHERE, or null
+	 * if the WHERE operator does not select elements from the sequence one by
+	 * one (and thus does not create a list of the sequence's length).
+	 */
+	private static ArdenValue[] getWhereConditions(ArdenValue sequence, ArdenValue condition) {
+		if (sequence instanceof ArdenList && condition instanceof ArdenList
+				&& ((ArdenList) sequence).values.length == ((ArdenList) condition).values.length)
+			return ((ArdenList) condition).values;
+		return null;
+	}
+
+	/** whether the element at the index is selected (conditions == null selects all elements) */
+	private static boolean isSelected(ArdenValue[] conditions, int index) {
+		return conditions == null || conditions[index].isTrue();
+	}
+
 	/** implements the COUNT OF operator */
 	public static ArdenValue count(ArdenValue sequence) {
 		return new ArdenNumber(unaryComma(sequence).values.length);
 	}
 
+	/** implements COUNT (x WHERE y) without creating the filtered list */
+	public static ArdenValue countWhere(ArdenValue sequence, ArdenValue condition) {
+		ArdenValue[] conditions = getWhereConditions(sequence, condition);
+		if (conditions == null)
+			return count(where(sequence, condition));
+		int count = 0;
+		for (ArdenValue cond : conditions) {
+			if (cond.isTrue())
+				count++;
+		}
+		return new ArdenNumber(count);
+	}
+
 	static long getCommonTime(ArdenValue[] items) {
-		if (items.length == 0)
-			return ArdenValue.NOPRIMARYTIME;
-		long time = items[0].primaryTime;
-		for (int i = 1; i < items.length; i++) {
-			if (items[i].primaryTime != time)
+		return getCommonTime(items, null);
+	}
+
+	private static long getCommonTime(ArdenValue[] items, ArdenValue[] conditions) {
+		long time = ArdenValue.NOPRIMARYTIME;
+		boolean first = true;
+		for (int i = 0; i < items.length; i++) {
+			if (!isSelected(conditions, i))
+				continue;
+			if (first) {
+				time = items[i].primaryTime;
+				first = false;
+			} else if (items[i].primaryTime != time) {
 				return ArdenValue.NOPRIMARYTIME;
+			}
 		}
 		return time;
 	}
@@ -235,14 +276,28 @@ public final class ExpressionHelpers {
 
 	/** implements the SUM operator */
 	public static ArdenValue sum(ArdenValue sequence) {
-		ArdenList input = unaryComma(sequence);
-		if (input.values.length == 0)
-			return ArdenNumber.ZERO;
-		ArdenValue val = input.values[0];
-		for (int i = 1; i < input.values.length; i++) {
-			val = BinaryOperator.ADD.runElement(val, input.values[i]);
+		return sum(unaryComma(sequence).values, null);
+	}
+
+	/** implements SUM (x WHERE y) without creating the filtered list */
+	public static ArdenValue sumWhere(ArdenValue sequence, ArdenValue condition) {
+		ArdenValue[] conditions = getWhereConditions(sequence, condition);
+		if (conditions == null)
+			return sum(where(sequence, condition));
+		return sum(((ArdenList) sequence).values, conditions);
+	}
+
+	private static ArdenValue sum(ArdenValue[] values, ArdenValue[] conditions) {
+		ArdenValue val = null;
+		for (int i = 0; i < values.length; i++) {
+			if (!isSelected(conditions, i))
+				continue;
+			if (val == null)
+				val = values[i];
+			else
+				val = BinaryOperator.ADD.runElement(val, values[i]);
 		}
-		return val;
+		return val == null ? ArdenNumber.ZERO : val;
 	}
 
 	/** implements the MEDIAN operator */
@@ -282,30 +337,56 @@ public final class ExpressionHelpers {
 
 	/** implements the AVERAGE operator */
 	public static ArdenValue average(ArdenValue sequence) {
-		ArdenValue[] values = unaryComma(sequence).values;
-		if (values.length == 0)
+		return average(unaryComma(sequence).values, null);
+	}
+
+	/** implements AVERAGE (x WHERE y) without creating the filtered list */
+	public static ArdenValue averageWhere(ArdenValue sequence, ArdenValue condition) {
+		ArdenValue[] conditions = getWhereConditions(sequence, condition);
+		if (conditions == null)
+			return average(where(sequence, condition));
+		return average(((ArdenList) sequence).values, conditions);
+	}
+
+	private static ArdenValue average(ArdenValue[] values, ArdenValue[] conditions) {
+		int first = -1;
+		int count = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (isSelected(conditions, i)) {
+				if (first < 0)
+					first = i;
+				count++;
+			}
+		}
+		if (count == 0)
 			return ArdenNull.INSTANCE;
-		if (values[0] instanceof ArdenNumber) {
+		if (values[first] instanceof ArdenNumber) {
 			double sum = 0;
-			for (ArdenValue element : values) {
-				if (!(element instanceof ArdenNumber))
+			for (int i = first; i < values.length; i++) {
+				if (!isSelected(conditions, i))
+					continue;
+				if (!(values[i] instanceof ArdenNumber))
 					return ArdenNull.INSTANCE;
-				sum += ((ArdenNumber) element).value;
+				sum += ((ArdenNumber) values[i]).value;
 			}
-			return ArdenNumber.create(sum / values.length, getCommonTime(values));
-		} else if (values[0] instanceof ArdenTime) {
+			return ArdenNumber.create(sum / count, getCommonTime(values, conditions));
+		} else if (values[first] instanceof ArdenTime) {
 			BigInteger sum = BigInteger.ZERO;
-			for (ArdenValue element : values) {
-				if (!(element instanceof ArdenTime))
+			for (int i = first; i < values.length; i++) {
+				if (!isSelected(conditions, i))
+					continue;
+				if (!(values[i] instanceof ArdenTime))
 					return ArdenNull.INSTANCE;
-				sum = sum.add(BigInteger.valueOf(((ArdenTime) element).value));
+				sum = sum.add(BigInteger.valueOf(((ArdenTime) values[i]).value));
 			}
-			sum = sum.divide(BigInteger.valueOf(values.length));
-			return new ArdenTime(sum.longValue(), getCommonTime(values));
-		} else if (values[0] instanceof ArdenDuration) {
-			double sum = ((ArdenDuration) values[0]).value;
-			boolean isMonths = ((ArdenDuration) values[0]).isMonths;
-			for (int i = 1; i < values.length; i++) {
+			sum = sum.divide(BigInteger.valueOf(count));
+			return new ArdenTime(sum.longValue(), getCommonTime(values, conditions));
+		} else if (values[first] instanceof ArdenDuration) {
+			double sum = ((ArdenDuration) values[first]).value;
+			boolean isMonths = ((ArdenDuration) values[first]).isMonths;
+			for (int i = first + 1; i < values.length; i++) {
+				if (!isSelected(conditions, i))
+					continue;
 				if (!(values[i] instanceof ArdenDuration))
 					return ArdenNull.INSTANCE;
 				ArdenDuration d = (ArdenDuration) values[i];
@@ -318,7 +399,7 @@ public final class ExpressionHelpers {
 				else
 					sum += d.toSeconds();
 			}
-			return ArdenDuration.create(sum / values.length, isMonths, getCommonTime(values));
+			return ArdenDuration.create(sum / count, isMonths, getCommonTime(values, conditions));
 		} else {
 			return ArdenNull.INSTANCE;
 		}
@@ -346,11 +427,19 @@ public final class ExpressionHelpers {
 		return ArdenNumber.create(variance, getCommonTime(values));
 	}
 
+	/**
+	 * Minimum length of the right-hand list for which IS IN builds a hash
+	 * index instead of scanning the list for every left-hand element.
+	 */
+	static final int IS_IN_INDEX_THRESHOLD = 8;
+
 	/** implements the IS IN operator */
 	public static ArdenValue isIn(ArdenValue lhs, ArdenValue rhs) {
 		ArdenValue[] list = unaryComma(rhs).values;
 		if (lhs instanceof ArdenList) {
 			ArdenValue[] left = ((ArdenList) lhs).values;
+			if (left.length > 1 && list.length >= IS_IN_INDEX_THRESHOLD)
+				return isIn(lhs, new ListIndex(rhs));
 			ArdenValue[] result = new ArdenValue[left.length];
 			for (int i = 0; i < left.length; i++)
 				result[i] = isIn(left[i], list);
@@ -360,37 +449,83 @@ public final class ExpressionHelpers {
 		}
 	}
 
+	/**
+	 * implements the IS IN operator for a right-hand list that was indexed in
+	 * advance (used by the compiler for constant lists)
+	 */
+	public static ArdenValue isIn(ArdenValue lhs, ListIndex index) {
+		if (lhs instanceof ArdenList) {
+			ArdenValue[] left = ((ArdenList) lhs).values;
+			ArdenValue[] result = new ArdenValue[left.length];
+			for (int i = 0; i < left.length; i++)
+				result[i] = isInResult(left[i], index.find(left[i]));
+			return new ArdenList(result);
+		} else {
+			return isInResult(lhs, index.find(lhs));
+		}
+	}
+
 	private static ArdenBoolean isIn(ArdenValue lhs, ArdenValue[] list) {
 		for (ArdenValue val : list) {
-			if (lhs.equals(val)) {
-				if (val.primaryTime == lhs.primaryTime)
-					return ArdenBoolean.create(true, val.primaryTime);
-				else
-					return ArdenBoolean.TRUE;
-			}
+			if (lhs.equals(val))
+				return isInResult(lhs, val);
 		}
 		return ArdenBoolean.FALSE;
 	}
 
+	/** Creates the result of IS IN given the matching list element (or null) */
+	private static ArdenBoolean isInResult(ArdenValue lhs, ArdenValue match) {
+		if (match == null)
+			return ArdenBoolean.FALSE;
+		if (match.primaryTime == lhs.primaryTime)
+			return ArdenBoolean.create(true, match.primaryTime);
+		else
+			return ArdenBoolean.TRUE;
+	}
+
 	/** implements the SEQTO operator */
 	public static ArdenValue seqto(ArdenValue lhs, ArdenValue rhs) {
-		if (!(lhs instanceof ArdenNumber) || !(rhs instanceof ArdenNumber))
+		if (!isValidSeqto(lhs, rhs))
 			return ArdenNull.INSTANCE;
 		// primary times are lost (as specified)
-		double lower = ((ArdenNumber) lhs).value;
-		double upper = ((ArdenNumber) rhs).value;
-		int lowerInt = (int) lower;
-		int upperInt = (int) upper;
-		if (lowerInt != lower || upperInt != upper)
-			return ArdenNull.INSTANCE;
+		int lowerInt = (int) ((ArdenNumber) lhs).value;
+		int upperInt = (int) ((ArdenNumber) rhs).value;
 		if (lowerInt > upperInt)
 			return ArdenList.EMPTY;
 		ArdenValue[] result = new ArdenValue[upperInt - lowerInt + 1];
 		for (int i = 0; i < result.length; i++)
-			result[i] = new ArdenNumber(lowerInt + i);
+			result[i] = seqtoElement(lowerInt + i);
 		return new ArdenList(result);
 	}
 
+	private static boolean isValidSeqto(ArdenValue lhs, ArdenValue rhs) {
+		if (!(lhs instanceof ArdenNumber) || !(rhs instanceof ArdenNumber))
+			return false;
+		double lower = ((ArdenNumber) lhs).value;
+		double upper = ((ArdenNumber) rhs).value;
+		return (int) lower == lower && (int) upper == upper;
+	}
+
+	/**
+	 * Gets the first number of "lhs SEQTO rhs" for FOR loops that count
+	 * through the range instead of creating it. If SEQTO returns NULL, the
+	 * lower bound is greater than the upper bound so that the loop body is
+	 * not executed.
+	 */
+	public static int seqtoLowerBound(ArdenValue lhs, ArdenValue rhs) {
+		return isValidSeqto(lhs, rhs) ? (int) ((ArdenNumber) lhs).value : 1;
+	}
+
+	/** Gets the last number of "lhs SEQTO rhs", see seqtoLowerBound() */
+	public static int seqtoUpperBound(ArdenValue lhs, ArdenValue rhs) {
+		return isValidSeqto(lhs, rhs) ? (int) ((ArdenNumber) rhs).value : 0;
+	}
+
+	/** Creates an element of a SEQTO range */
+	public static ArdenValue seqtoElement(int value) {
+		return new ArdenNumber(value);
+	}
+
 	/** implements the REVERSE operator */
 	public static ArdenValue reverse(ArdenValue input) {
 		ArdenValue[] inputs = unaryComma(input).values;
@@ -524,6 +659,57 @@ public final class ExpressionHelpers {
 		return new ArdenList(result);
 	}
 
+	/** Implements FIRST n FROM (SORT x) without sorting the whole list. */
+	public static ArdenValue firstOfSorted(ArdenValue input, int numberOfElements) {
+		return selectSorted(input, numberOfElements, false);
+	}
+
+	/** Implements LAST n FROM (SORT x) without sorting the whole list. */
+	public static ArdenValue lastOfSorted(ArdenValue input, int numberOfElements) {
+		return selectSorted(input, numberOfElements, true);
+	}
+
+	/**
+	 * Selects the n smallest or largest elements in the order in which a
+	 * (stable) sort by data would return them, using a heap of size n.
+	 */
+	private static ArdenValue selectSorted(ArdenValue input, int numberOfElements, boolean largest) {
+		final ArdenValue[] values = unaryComma(input).values;
+		if (numberOfElements >= values.length) {
+			ArdenValue sorted = sortByData(input);
+			return largest ? last(sorted, numberOfElements) : first(sorted, numberOfElements);
+		}
+		for (int i = 1; i < values.length; i++) {
+			if (dataComparator.compare(values[i - 1], values[i]) == Integer.MIN_VALUE) {
+				// SORT returns null if elements are not comparable
+				return largest ? last(ArdenNull.INSTANCE, numberOfElements) : first(ArdenNull.INSTANCE,
+						numberOfElements);
+			}
+		}
+		// order of the sorted list: by data, equal elements keep their position
+		Comparator<Integer> order = new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				int r = values[o1].compareTo(values[o2]);
+				return r != 0 ? r : o1 - o2;
+			}
+		};
+		// the head of the heap is the selected element that is dropped next
+		PriorityQueue<Integer> heap = new PriorityQueue<Integer>(numberOfElements + 1, largest ? order
+				: Collections.reverseOrder(order));
+		for (int i = 0; i < values.length; i++) {
+			heap.add(i);
+			if (heap.size() > numberOfElements)
+				heap.poll();
+		}
+		Integer[] selected = heap.toArray(new Integer[heap.size()]);
+		Arrays.sort(selected, order);
+		ArdenValue[] result = new ArdenValue[selected.length];
+		for (int i = 0; i < selected.length; i++)
+			result[i] = values[selected[i]];
+		return new ArdenList(result);
+	}
+
 	/** Implements the INDEX MINIMUM aggregation operator. */
 	public static ArdenValue indexMinimum(ArdenValue input) {
 		ArdenValue[] arr = unaryComma(input).values;
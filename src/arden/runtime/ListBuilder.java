@@ -0,0 +1,71 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the elements of a variable that a loop only extends using
+ * "x := x, e;". The compiler keeps the builder in a local variable while the
+ * loop runs and stores the result back into the variable after the loop, so
+ * that building a list element by element takes linear instead of quadratic
+ * time.
+ */
+public final class ListBuilder {
+	private final ArdenValue initialValue;
+	private ArdenValue[] elements;
+	private int count;
+
+	public ListBuilder(ArdenValue initialValue) {
+		this.initialValue = initialValue;
+	}
+
+	/** Appends the value like the "x,y" operator (lists are flattened) */
+	public void append(ArdenValue value) {
+		if (elements == null) {
+			ArdenValue[] initial = ExpressionHelpers.unaryComma(initialValue).values;
+			elements = Arrays.copyOf(initial, Math.max(8, initial.length * 2));
+			count = initial.length;
+		}
+		ArdenValue[] right = ExpressionHelpers.unaryComma(value).values;
+		if (count + right.length > elements.length)
+			elements = Arrays.copyOf(elements, Math.max(count + right.length, elements.length * 2));
+		System.arraycopy(right, 0, elements, count, right.length);
+		count += right.length;
+	}
+
+	/**
+	 * Gets the current value of the variable: the initial value if nothing
+	 * was appended, otherwise the list of all elements.
+	 */
+	public ArdenValue toValue() {
+		if (elements == null)
+			return initialValue;
+		return new ArdenList(Arrays.copyOf(elements, count));
+	}
+}
@@ -0,0 +1,87 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Hash index over the elements of a list, used by the IS IN operator.
+ * 
+ * Only values of the final types with a value-based hashCode() are hashed;
+ * objects, events and other values are compared linearly.
+ */
+public final class ListIndex {
+	/** Maps each hashable value to the first element of the list equal to it */
+	private final HashMap<ArdenValue, ArdenValue> hashedElements;
+	private final ArdenValue[] otherElements;
+
+	public ListIndex(ArdenValue list) {
+		ArdenValue[] values = ExpressionHelpers.unaryComma(list).values;
+		hashedElements = new HashMap<ArdenValue, ArdenValue>(values.length * 2);
+		ArrayList<ArdenValue> others = new ArrayList<ArdenValue>();
+		for (ArdenValue val : values) {
+			if (isHashable(val)) {
+				ArdenValue key = getKey(val);
+				if (!hashedElements.containsKey(key))
+					hashedElements.put(key, val);
+			} else {
+				others.add(val);
+			}
+		}
+		otherElements = others.toArray(new ArdenValue[others.size()]);
+	}
+
+	/**
+	 * Gets the first element of the list that is equal to the specified
+	 * value, or null if there is no such element.
+	 */
+	public ArdenValue find(ArdenValue value) {
+		if (isHashable(value))
+			return hashedElements.get(getKey(value));
+		for (ArdenValue val : otherElements) {
+			if (value.equals(val))
+				return val;
+		}
+		return null;
+	}
+
+	private static boolean isHashable(ArdenValue val) {
+		return val instanceof ArdenNumber || val instanceof ArdenString || val instanceof ArdenTime
+				|| val instanceof ArdenDuration || val instanceof ArdenBoolean || val instanceof ArdenNull;
+	}
+
+	/** 0 and -0 are equal but have different hash codes, so map both to ZERO */
+	private static ArdenValue getKey(ArdenValue val) {
+		if (val instanceof ArdenNumber && ((ArdenNumber) val).value == 0)
+			return ArdenNumber.ZERO;
+		if (val instanceof ArdenDuration && ((ArdenDuration) val).toSeconds() == 0)
+			return ArdenDuration.ZERO;
+		return val;
+	}
+}
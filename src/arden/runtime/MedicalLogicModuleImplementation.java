@@ -84,6 +84,17 @@ public abstract class MedicalLogicModuleImplementation {
 		return new Trigger[]{};
 	}
 	
+	/**
+	 * Gets the triggers without running the data slot. This may be called on
+	 * an instance created by the parameterless constructor.
+	 * 
+	 * @return The triggers or <code>null</code> if they depend on the data
+	 *         slot, then {@link #getTriggers(ExecutionContext)} must be used.
+	 */
+	public Trigger[] getStaticTriggers(ExecutionContext context, MedicalLogicModule self) {
+		return null;
+	}
+	
 	/**
 	 * Gets a Variable that is declared in the Medical Logic Module.
 	 * This method should be overridden by the MLMs ByteCode.
@@ -0,0 +1,192 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import arden.codegenerator.ClassFileReader;
+import arden.runtime.MaintenanceMetadata.ArdenVersion;
+import arden.runtime.MaintenanceMetadata.Validation;
+
+/**
+ * The static metadata of a compiled MLM: maintenance and library categories,
+ * priority and the event mappings used in the evoke slot.
+ * <p>
+ * The compiler stores it in a custom class file attribute, so it can be read
+ * from the bytes of a .class file without defining or initializing the class.
+ * </p>
+ */
+public final class ModuleMetadata {
+	/** Name of the class file attribute holding the metadata. */
+	public static final String ATTRIBUTE_NAME = "ArdenMetadata";
+
+	private static final int FORMAT_VERSION = 1;
+
+	private final MaintenanceMetadata maintenance;
+	private final LibraryMetadata library;
+	private final double priority;
+	private final List<String> evokeEvents;
+
+	public ModuleMetadata(MaintenanceMetadata maintenance, LibraryMetadata library, double priority,
+			List<String> evokeEvents) {
+		this.maintenance = maintenance;
+		this.library = library;
+		this.priority = priority;
+		this.evokeEvents = Collections.unmodifiableList(new ArrayList<String>(evokeEvents));
+	}
+
+	public MaintenanceMetadata getMaintenance() {
+		return maintenance;
+	}
+
+	public LibraryMetadata getLibrary() {
+		return library;
+	}
+
+	public double getPriority() {
+		return priority;
+	}
+
+	/** Returns the mappings of all events which are referenced in the evoke slot. */
+	public List<String> getEvokeEvents() {
+		return evokeEvents;
+	}
+
+	/** Serializes the metadata as content of the class file attribute. */
+	public byte[] toAttributeData() {
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(bos);
+			output.writeByte(FORMAT_VERSION);
+
+			writeString(output, maintenance.getTitle());
+			writeString(output, maintenance.getMlmName());
+			writeString(output, maintenance.getArdenVersion().name());
+			writeString(output, maintenance.getVersion());
+			writeString(output, maintenance.getInstitution());
+			writeString(output, maintenance.getAuthor());
+			writeString(output, maintenance.getSpecialist());
+			output.writeLong(maintenance.getDate().getTime());
+			writeString(output, maintenance.getValidation().name());
+
+			writeString(output, library.getPurpose());
+			writeString(output, library.getExplanation());
+			output.writeShort(library.getKeywords().size());
+			for (String keyword : library.getKeywords()) {
+				writeString(output, keyword);
+			}
+			writeString(output, library.getCitations());
+			writeString(output, library.getLinks());
+
+			output.writeDouble(priority);
+
+			output.writeShort(evokeEvents.size());
+			for (String event : evokeEvents) {
+				writeString(output, event);
+			}
+			output.close();
+			return bos.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Deserializes the content of the class file attribute. */
+	public static ModuleMetadata fromAttributeData(byte[] data) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+		int formatVersion = input.readUnsignedByte();
+		if (formatVersion != FORMAT_VERSION)
+			throw new IOException("Unsupported metadata version " + formatVersion);
+
+		String title = readString(input);
+		String mlmName = readString(input);
+		ArdenVersion ardenVersion = ArdenVersion.valueOf(readString(input));
+		String version = readString(input);
+		String institution = readString(input);
+		String author = readString(input);
+		String specialist = readString(input);
+		Date date = new Date(input.readLong());
+		Validation validation = Validation.valueOf(readString(input));
+		MaintenanceMetadata maintenance = new MaintenanceMetadata(title, mlmName, ardenVersion, version,
+				institution, author, specialist, date, validation);
+
+		String purpose = readString(input);
+		String explanation = readString(input);
+		String[] keywords = new String[input.readUnsignedShort()];
+		for (int i = 0; i < keywords.length; i++) {
+			keywords[i] = readString(input);
+		}
+		String citations = readString(input);
+		String links = readString(input);
+		LibraryMetadata library = new LibraryMetadata(purpose, explanation, keywords, citations, links);
+
+		double priority = input.readDouble();
+
+		int eventCount = input.readUnsignedShort();
+		List<String> evokeEvents = new ArrayList<String>(eventCount);
+		for (int i = 0; i < eventCount; i++) {
+			evokeEvents.add(readString(input));
+		}
+		return new ModuleMetadata(maintenance, library, priority, evokeEvents);
+	}
+
+	/**
+	 * Reads the metadata from a compiled MLM.
+	 * 
+	 * @param classFile
+	 *            The contents of the .class file.
+	 * @return The metadata or <code>null</code> if the class file has none
+	 *         (e.g. it was compiled by an older version).
+	 */
+	public static ModuleMetadata fromClassFile(byte[] classFile) throws IOException {
+		byte[] data = ClassFileReader.getAttribute(classFile, ATTRIBUTE_NAME);
+		if (data == null)
+			return null;
+		return fromAttributeData(data);
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		output.writeBoolean(value != null);
+		if (value != null)
+			output.writeUTF(value);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		if (input.readBoolean())
+			return input.readUTF();
+		return null;
+	}
+}
@@ -0,0 +1,290 @@
+package arden.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import arden.MainClass;
+import arden.compiler.CompilationCache;
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.compiler.CompilerException;
+import arden.runtime.MaintenanceMetadata.Validation;
+
+/**
+ * Index of the MLMs on a searchpath, keyed by name and institution.
+ * <p>
+ * The first lookup for a name and institution loads all matching
+ * <code>.class</code> and <code>.mlm</code> files on the searchpath and stores
+ * the best match (highest validation, then version). Later lookups are a
+ * single hash lookup which does not need any locks.
+ * </p>
+ * <p>
+ * The directories of the searchpath are watched for changes. Any created,
+ * modified or deleted MLM file (or jar on the searchpath) clears the index and
+ * replaces the class loader (which keeps opened jars cached), so the next
+ * lookup sees the current files.
+ * </p>
+ */
+public class ModuleRegistry {
+	private final URL[] searchPath;
+	// only used and replaced while holding the lock
+	private URLClassLoader loader;
+	private final Map<String, MedicalLogicModule> modules = new ConcurrentHashMap<String, MedicalLogicModule>();
+	private final Map<URL, MedicalLogicModule> initializedMlms = new HashMap<URL, MedicalLogicModule>();
+	private final Set<String> watchedJars = new HashSet<String>();
+	private volatile WatchService watcher;
+
+	private final CompilationCache cache;
+
+	public ModuleRegistry(URL[] searchPath) {
+		this(searchPath, null);
+	}
+
+	/**
+	 * @param cache
+	 *            Cache for MLMs compiled from .mlm files. May be
+	 *            <code>null</code>.
+	 */
+	public ModuleRegistry(URL[] searchPath, CompilationCache cache) {
+		this.searchPath = searchPath.clone();
+		this.loader = new URLClassLoader(this.searchPath);
+		this.cache = cache;
+		watch();
+	}
+
+	/**
+	 * Returns the best matching MLM.
+	 *
+	 * @param name
+	 *            Name of the MLM to find.
+	 * @param institution
+	 *            Institution of the MLM to find.
+	 * @return The best matching MLM or <code>null</code> if none is found.
+	 */
+	public MedicalLogicModule findModule(String name, String institution) {
+		checkForChanges();
+		MedicalLogicModule mlm = modules.get(getKey(name, institution));
+		if (mlm == null) {
+			mlm = loadModule(name, institution);
+		}
+		return mlm;
+	}
+
+	/** Forgets all loaded MLMs, so they are loaded again on the next lookup. */
+	public synchronized void invalidate() {
+		modules.clear();
+		initializedMlms.clear();
+		// loaded MLMs were read into memory and do not need the old loader
+		closeLoader();
+		loader = new URLClassLoader(searchPath);
+	}
+
+	private void closeLoader() {
+		try {
+			loader.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Stops watching the searchpath and releases the class loader. */
+	public synchronized void close() {
+		try {
+			if (watcher != null) {
+				watcher.close();
+				watcher = null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		closeLoader();
+	}
+
+	private static String getKey(String name, String institution) {
+		return name.toLowerCase().trim() + '\n' + institution.toLowerCase().trim();
+	}
+
+	private synchronized MedicalLogicModule loadModule(String name, String institution) {
+		if (!name.matches("[a-zA-Z0-9\\-_]+")) {
+			throw new RuntimeException("Malformed module name: " + name);
+		}
+		String key = getKey(name, institution);
+		MedicalLogicModule found = modules.get(key);
+		if (found != null) {
+			// loaded by another thread in the meantime
+			return found;
+		}
+
+		name = name.toLowerCase().trim();
+		try {
+			// look for matching .class files
+			Enumeration<URL> mlmClassUrls = loader.getResources(name + ".class");
+			while (mlmClassUrls.hasMoreElements()) {
+				URL url = mlmClassUrls.nextElement();
+				if (initializedMlms.containsKey(url)) {
+					// already loaded
+					continue;
+				}
+				InputStream in = openStream(url);
+				try {
+					cacheModule(url, new CompiledMlm(in, name));
+				} finally {
+					in.close();
+				}
+			}
+
+			// look for matching .mlm files
+			Enumeration<URL> mlmUrls = loader.getResources(name + MainClass.MLM_FILE_EXTENSION);
+			while (mlmUrls.hasMoreElements()) {
+				URL url = mlmUrls.nextElement();
+				if (initializedMlms.containsKey(url)) {
+					// already loaded
+					continue;
+				}
+				InputStream in = openStream(url);
+				try {
+					Reader reader = new InputStreamReader(in, "UTF-8");
+					List<CompiledMlm> compiled;
+					if (cache != null) {
+						compiled = cache.compile(reader, null);
+					} else {
+						compiled = new Compiler().compile(reader);
+					}
+					cacheModule(url, compiled.get(0));
+				} finally {
+					in.close();
+				}
+			}
+		} catch (CompilerException | IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		// the MLM name in the maintenance slot may differ from the file name
+		MedicalLogicModule[] mlms = initializedMlms.values().toArray(new MedicalLogicModule[initializedMlms.size()]);
+		found = ExecutionContextHelpers.findModule(name, institution, mlms, null);
+		if (found != null) {
+			modules.put(key, found);
+		}
+		return found;
+	}
+
+	/** Opens a file on the searchpath, without caching opened jars. */
+	private static InputStream openStream(URL url) throws IOException {
+		URLConnection connection = url.openConnection();
+		connection.setUseCaches(false);
+		return connection.getInputStream();
+	}
+
+	private void cacheModule(URL url, MedicalLogicModule mlm) {
+		/*
+		 * Reuse already initialized MLM (e.g. already loaded from .class file
+		 * instead of .mlm file).
+		 */
+		MaintenanceMetadata m2 = mlm.getMaintenance();
+		String m2Name = m2.getMlmName().toLowerCase().trim();
+		String m2Institution = m2.getInstitution().toLowerCase().trim();
+		Validation m2Validation = m2.getValidation();
+		String m2Version = m2.getVersion();
+		for (MedicalLogicModule initializedMlm : initializedMlms.values()) {
+			MaintenanceMetadata m1 = initializedMlm.getMaintenance();
+			String m1Name = m1.getMlmName().toLowerCase().trim();
+			String m1Institution = m1.getInstitution().toLowerCase().trim();
+			Validation m1Validation = m1.getValidation();
+			String m1Version = m1.getVersion();
+			if (m1Name.equals(m2Name) && m1Institution.equals(m2Institution) && m1Validation == m2Validation
+					&& m1Version.equals(m2Version)) {
+				initializedMlms.put(url, initializedMlm);
+				return;
+			}
+		}
+		initializedMlms.put(url, mlm);
+	}
+
+	/** Registers all local directories of the searchpath with a watch service. */
+	private void watch() {
+		WatchService watcher = null;
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+			Set<Path> directories = new HashSet<Path>();
+			for (URL url : searchPath) {
+				if (!"file".equals(url.getProtocol())) {
+					continue;
+				}
+				File file = new File(url.toURI());
+				if (file.isFile()) {
+					// jar file: watch the directory containing it
+					watchedJars.add(file.getName());
+					file = file.getAbsoluteFile().getParentFile();
+				}
+				if (file != null && file.isDirectory()) {
+					directories.add(file.toPath().toAbsolutePath().normalize());
+				}
+			}
+			for (Path directory : directories) {
+				directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			}
+			this.watcher = watcher;
+		} catch (IOException | URISyntaxException | UnsupportedOperationException e) {
+			// without a watch service, files are only loaded once
+			if (watcher != null) {
+				try {
+					watcher.close();
+				} catch (IOException ignored) {
+				}
+			}
+		}
+	}
+
+	private void checkForChanges() {
+		WatchService watcher = this.watcher;
+		if (watcher == null) {
+			return;
+		}
+		boolean changed = false;
+		try {
+			WatchKey key;
+			while ((key = watcher.poll()) != null) {
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						changed = true;
+						continue;
+					}
+					String fileName = event.context().toString();
+					if (fileName.endsWith(".class") || fileName.toLowerCase().endsWith(MainClass.MLM_FILE_EXTENSION)
+							|| watchedJars.contains(fileName)) {
+						changed = true;
+					}
+				}
+				key.reset();
+			}
+		} catch (ClosedWatchServiceException e) {
+			// closed concurrently
+			return;
+		}
+		if (changed) {
+			invalidate();
+		}
+	}
+}
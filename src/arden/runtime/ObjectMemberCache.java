@@ -0,0 +1,117 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+/**
+ * Accesses an object member at one place in an MLM ("obj.field"). Caches the
+ * field index for the object type seen last, so that repeated accesses to
+ * objects of the same type do not need to look up the field name.
+ */
+public final class ObjectMemberCache {
+	private final String upperCaseFieldName;
+	/**
+	 * The last seen type and its field index. Both are replaced together, so
+	 * that concurrent runs of the MLM always see a matching pair.
+	 */
+	private CacheEntry entry;
+
+	private static final class CacheEntry {
+		final ObjectType type;
+		final int index;
+
+		CacheEntry(ObjectType type, int index) {
+			this.type = type;
+			this.index = index;
+		}
+	}
+
+	public ObjectMemberCache(String upperCaseFieldName) {
+		this.upperCaseFieldName = upperCaseFieldName;
+	}
+
+	private int getFieldIndex(ObjectType type) {
+		CacheEntry e = entry;
+		if (e != null && e.type == type)
+			return e.index;
+		int index = type.getFieldIndex(upperCaseFieldName);
+		entry = new CacheEntry(type, index);
+		return index;
+	}
+
+	public ArdenValue get(ArdenValue objref) {
+		return getMember(objref, upperCaseFieldName, this);
+	}
+
+	public void set(ArdenValue objref, ArdenValue newValue) {
+		setMember(objref, upperCaseFieldName, newValue, this);
+	}
+
+	/**
+	 * Gets an object member, also used by RuntimeHelpers.getObjectMember().
+	 * 
+	 * @param cache
+	 *            The cache of the access site, or <code>null</code>.
+	 */
+	static ArdenValue getMember(ArdenValue objref, String upperCaseFieldName, ObjectMemberCache cache) {
+		if (objref instanceof ArdenObject) {
+			ArdenObject obj = (ArdenObject) objref;
+			int index = cache != null ? cache.getFieldIndex(obj.type) : obj.type.getFieldIndex(upperCaseFieldName);
+			if (index < 0)
+				return ArdenNull.INSTANCE;
+			else
+				return obj.fields[index];
+		} else if (objref instanceof ArdenList) {
+			ArdenValue[] inputs = ((ArdenList) objref).values;
+			ArdenValue[] results = new ArdenValue[inputs.length];
+			for (int i = 0; i < inputs.length; i++)
+				results[i] = getMember(inputs[i], upperCaseFieldName, cache);
+			return new ArdenList(results);
+		} else {
+			return ArdenNull.INSTANCE;
+		}
+	}
+
+	/**
+	 * Sets an object member, also used by RuntimeHelpers.setObjectMember().
+	 * 
+	 * @param cache
+	 *            The cache of the access site, or <code>null</code>.
+	 */
+	static void setMember(ArdenValue objref, String upperCaseFieldName, ArdenValue newValue, ObjectMemberCache cache) {
+		if (objref instanceof ArdenObject) {
+			ArdenObject obj = (ArdenObject) objref;
+			int index = cache != null ? cache.getFieldIndex(obj.type) : obj.type.getFieldIndex(upperCaseFieldName);
+			if (index >= 0)
+				obj.fields[index] = newValue;
+		} else if (objref instanceof ArdenList) {
+			for (ArdenValue listEntry : ((ArdenList) objref).values) {
+				setMember(listEntry, upperCaseFieldName, newValue, cache);
+			}
+		}
+	}
+}
@@ -27,6 +27,9 @@
 
 package arden.runtime;
 
+import java.util.HashMap;
+import java.util.Locale;
+
 /**
  * Represents the runtime type of an ArdenObject.
  * 
@@ -36,20 +39,22 @@ package arden.runtime;
 public class ObjectType {
 	public final String name;
 	public final String[] fieldNames;
+	/** Maps the upper case field names to their index */
+	private final HashMap<String, Integer> fieldIndices;
 
 	public ObjectType(String name, String[] fieldNames) {
 		if (name == null || fieldNames == null)
 			throw new NullPointerException();
 		this.name = name;
 		this.fieldNames = fieldNames;
+		this.fieldIndices = new HashMap<String, Integer>(fieldNames.length * 2);
+		for (int i = fieldNames.length - 1; i >= 0; i--)
+			fieldIndices.put(fieldNames[i].toUpperCase(Locale.ENGLISH), i);
 	}
 
 	public int getFieldIndex(String uppercaseName) {
-		for (int i = 0; i < fieldNames.length; i++) {
-			if (fieldNames[i].equalsIgnoreCase(uppercaseName))
-				return i;
-		}
-		return -1;
+		Integer index = fieldIndices.get(uppercaseName);
+		return index == null ? -1 : index;
 	}
 
 	@Override
@@ -318,35 +318,15 @@ public final class RuntimeHelpers {
 	}
 
 	public static ArdenValue getObjectMember(ArdenValue objref, String upperCaseFieldName) {
-		if (objref instanceof ArdenObject) {
-			ArdenObject obj = (ArdenObject) objref;
-			int index = obj.type.getFieldIndex(upperCaseFieldName);
-			if (index < 0)
-				return ArdenNull.INSTANCE;
-			else
-				return obj.fields[index];
-		} else if (objref instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) objref).values;
-			ArdenValue[] results = new ArdenValue[inputs.length];
-			for (int i = 0; i < inputs.length; i++)
-				results[i] = getObjectMember(inputs[i], upperCaseFieldName);
-			return new ArdenList(results);
-		} else {
-			return ArdenNull.INSTANCE;
-		}
+		return ObjectMemberCache.getMember(objref, upperCaseFieldName, null);
 	}
 
+	/**
+	 * Sets an object member. New MLMs use an {@link ObjectMemberCache}, this
+	 * is kept for MLMs compiled by older versions.
+	 */
 	public static void setObjectMember(ArdenValue objref, String upperCaseFieldName, ArdenValue newValue) {
-		if (objref instanceof ArdenObject) {
-			ArdenObject obj = (ArdenObject) objref;
-			int index = obj.type.getFieldIndex(upperCaseFieldName);
-			if (index >= 0)
-				obj.fields[index] = newValue;
-		} else if (objref instanceof ArdenList) {
-			for (ArdenValue listEntry : ((ArdenList) objref).values) {
-				setObjectMember(listEntry, upperCaseFieldName, newValue);
-			}
-		}
+		ObjectMemberCache.setMember(objref, upperCaseFieldName, newValue, null);
 	}
 
 	public static ArdenValue getEventTime(Trigger trigger) {
@@ -40,7 +40,11 @@ import arden.runtime.MedicalLogicModule;
 import arden.runtime.StdIOExecutionContext;
 
 public class JDBCExecutionContext extends StdIOExecutionContext {
-	private Connection connection = null;	
+	/**
+	 * Opened once by the constructor and final, so that it is safely published
+	 * to the engine threads, e.g. the shards of a partitioned engine.
+	 */
+	private final Connection connection;
 	
 	public void loadDatabaseDriver(String className) {
 		try {
@@ -72,17 +76,21 @@ public class JDBCExecutionContext extends StdIOExecutionContext {
 		
 		// handle environment option
 		if (options.getEnvironment() != null) {
-			String environment = options.getEnvironment();			
-			try {
-				connection = DriverManager.getConnection(environment);
-			} catch (SQLException e) {
-				e.printStackTrace();				
-			}
+			connection = openConnection(options.getEnvironment());
 		} else {
 			throw new RuntimeException("No JDBC URL given. Can't connect.");
 		}
 	}
 	
+	private static Connection openConnection(String environment) {
+		try {
+			return DriverManager.getConnection(environment);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
 	@Override
 	public void write(ArdenValue message, ArdenValue destination, double urgency) {
 		String destString = ArdenString.getStringFromValue(destination);
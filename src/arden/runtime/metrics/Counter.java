@@ -0,0 +1,38 @@
+package arden.runtime.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which can be incremented by many threads without contention.
+ * Each thread adds to one of several cells (on separate cache lines), the
+ * value is the sum of all cells.
+ */
+public final class Counter {
+	private static final int STRIPES = stripes();
+	// longs per cell, so each cell is on its own cache line
+	private static final int PADDING = 8;
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	private static int stripes() {
+		int processors = Runtime.getRuntime().availableProcessors();
+		return Integer.highestOneBit(Math.max(1, processors - 1) * 2);
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public void add(long value) {
+		int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+		cells.addAndGet(stripe * PADDING, value);
+	}
+
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += cells.get(i * PADDING);
+		}
+		return sum;
+	}
+}
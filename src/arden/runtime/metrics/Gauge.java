@@ -0,0 +1,6 @@
+package arden.runtime.metrics;
+
+/** A value which is read when the metrics are exported, e.g. a queue size. */
+public interface Gauge {
+	double getValue();
+}
@@ -0,0 +1,212 @@
+package arden.runtime.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import arden.runtime.profiler.LatencyHistogram;
+
+/**
+ * Holds the metrics of the runtime, the evoke engine and the event server,
+ * and writes them in the Prometheus text format.
+ * <p>
+ * Metrics are identified by their name and labels (pairs of label name and
+ * value). Looking up a metric does not lock, and the returned counters and
+ * histograms are updated without locks, so they can be kept in fields and
+ * used on hot paths.
+ * </p>
+ * <p>
+ * Histograms measure durations with the buckets of {@link LatencyHistogram}
+ * and are exported in seconds.
+ * </p>
+ */
+public final class MetricsRegistry {
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+	// histogram buckets to export: 2^10 ns (about 1 microsecond) to 2^36 ns (about 69 seconds)
+	private static final int FIRST_BUCKET = 10;
+	private static final int LAST_BUCKET = 36;
+
+	private enum Type {
+		COUNTER, GAUGE, HISTOGRAM
+	}
+
+	private static final class Family {
+		final String name;
+		final String help;
+		final Type type;
+		// metrics by their formatted labels
+		final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+
+		Family(String name, String help, Type type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+	private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<String, Family>();
+
+	/** Gets the registry used by the runtime. */
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Gets or creates a counter.
+	 * 
+	 * @param labels
+	 *            Label names and values, e.g. <code>"kind", "event"</code>.
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		Family family = getFamily(name, help, Type.COUNTER);
+		String key = formatLabels(labels);
+		Object counter = family.metrics.get(key);
+		if (counter == null) {
+			Counter newCounter = new Counter();
+			counter = family.metrics.putIfAbsent(key, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		return (Counter) counter;
+	}
+
+	/** Gets or creates a histogram of durations in nanoseconds. */
+	public LatencyHistogram histogram(String name, String help, String... labels) {
+		Family family = getFamily(name, help, Type.HISTOGRAM);
+		String key = formatLabels(labels);
+		Object histogram = family.metrics.get(key);
+		if (histogram == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram();
+			histogram = family.metrics.putIfAbsent(key, newHistogram);
+			if (histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		return (LatencyHistogram) histogram;
+	}
+
+	/** Registers a gauge, replacing the gauge with the same name and labels. */
+	public void gauge(String name, String help, Gauge gauge, String... labels) {
+		getFamily(name, help, Type.GAUGE).metrics.put(formatLabels(labels), gauge);
+	}
+
+	/**
+	 * Removes a gauge registered by {@link #gauge(String, String, Gauge, String...)},
+	 * unless it was replaced by another gauge.
+	 */
+	public void removeGauge(String name, Gauge gauge, String... labels) {
+		Family family = families.get(name);
+		if (family != null && family.type == Type.GAUGE) {
+			family.metrics.remove(formatLabels(labels), gauge);
+		}
+	}
+
+	/** Removes all metrics. */
+	public void clear() {
+		families.clear();
+	}
+
+	private Family getFamily(String name, String help, Type type) {
+		Family family = families.get(name);
+		if (family == null) {
+			if (!name.matches("[a-zA-Z_:][a-zA-Z0-9_:]*")) {
+				throw new IllegalArgumentException("Invalid metric name: " + name);
+			}
+			Family newFamily = new Family(name, help, type);
+			family = families.putIfAbsent(name, newFamily);
+			if (family == null) {
+				family = newFamily;
+			}
+		}
+		if (family.type != type) {
+			throw new IllegalArgumentException("Metric " + name + " is a " + family.type.name().toLowerCase());
+		}
+		return family;
+	}
+
+	private static String formatLabels(String[] labels) {
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("Labels must be given as pairs of name and value.");
+		}
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0) {
+				b.append(',');
+			}
+			b.append(labels[i]).append("=\"");
+			String value = labels[i + 1] == null ? "" : labels[i + 1];
+			for (int j = 0; j < value.length(); j++) {
+				char c = value.charAt(j);
+				if (c == '\\' || c == '"') {
+					b.append('\\').append(c);
+				} else if (c == '\n') {
+					b.append("\\n");
+				} else {
+					b.append(c);
+				}
+			}
+			b.append('"');
+		}
+		return b.toString();
+	}
+
+	/** Writes all metrics in the Prometheus text exposition format. */
+	public void write(Writer out) throws IOException {
+		Map<String, Family> sorted = new TreeMap<String, Family>(families);
+		for (Family family : sorted.values()) {
+			out.write("# HELP " + family.name + " " + family.help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+			out.write("# TYPE " + family.name + " " + family.type.name().toLowerCase() + "\n");
+			Map<String, Object> metrics = new TreeMap<String, Object>(family.metrics);
+			for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+				String labels = entry.getKey();
+				Object metric = entry.getValue();
+				switch (family.type) {
+				case COUNTER:
+					writeSample(out, family.name, labels, ((Counter) metric).get());
+					break;
+				case GAUGE:
+					writeSample(out, family.name, labels, ((Gauge) metric).getValue());
+					break;
+				case HISTOGRAM:
+					writeHistogram(out, family.name, labels, ((LatencyHistogram) metric).copy());
+					break;
+				}
+			}
+		}
+		out.flush();
+	}
+
+	private static void writeHistogram(Writer out, String name, String labels, LatencyHistogram histogram)
+			throws IOException {
+		String separator = labels.isEmpty() ? "" : ",";
+		for (int bucket = FIRST_BUCKET; bucket <= LAST_BUCKET; bucket += 2) {
+			long upperBound = (1L << bucket) - 1;
+			writeSample(out, name + "_bucket", labels + separator + "le=\"" + upperBound / 1e9 + "\"",
+					histogram.getCountUpTo(bucket));
+		}
+		// the total of the buckets, which may be updated after the count
+		long count = histogram.getCountUpTo(Long.SIZE);
+		writeSample(out, name + "_bucket", labels + separator + "le=\"+Inf\"", count);
+		writeSample(out, name + "_sum", labels, histogram.getTotal() / 1e9);
+		writeSample(out, name + "_count", labels, count);
+	}
+
+	private static void writeSample(Writer out, String name, String labels, double value) throws IOException {
+		out.write(name);
+		if (!labels.isEmpty()) {
+			out.write("{" + labels + "}");
+		}
+		out.write(" ");
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+			out.write(Long.toString((long) value));
+		} else {
+			out.write(Double.toString(value));
+		}
+		out.write("\n");
+	}
+}
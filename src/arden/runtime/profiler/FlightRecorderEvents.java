@@ -0,0 +1,176 @@
+package arden.runtime.profiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenValue;
+
+/**
+ * The JFR event types. Only used through {@link JfrEvents}, so this class is
+ * not loaded on Java versions without JFR.
+ */
+final class FlightRecorderEvents {
+	private FlightRecorderEvents() {
+	}
+
+	@Name("arden.MlmExecution")
+	@Label("MLM Execution")
+	@Category("Arden")
+	@Description("Run of the data, logic and action slots of an MLM")
+	static class MlmExecutionEvent extends Event {
+		@Label("MLM")
+		String mlmName;
+
+		@Label("Concluded")
+		@Description("Whether the logic slot concluded true, so the action slot was run")
+		boolean concluded;
+	}
+
+	@Name("arden.Query")
+	@Label("READ Query")
+	@Category("Arden")
+	@Description("Execution of the database query of a READ statement")
+	static class QueryEvent extends Event {
+		@Label("Mapping")
+		String mapping;
+
+		@Label("Rows")
+		int rows;
+
+		@Label("Failed")
+		boolean failed;
+	}
+
+	@Name("arden.EngineCall")
+	@Label("Engine Call")
+	@Category("Arden")
+	@Description("Event or MLM call run by the evoke engine")
+	@StackTrace(false)
+	static class EngineCallEvent extends Event {
+		@Label("Kind")
+		String kind;
+
+		@Label("Name")
+		@Description("Name of the event or MLM")
+		String name;
+
+		@Label("Priority")
+		int priority;
+
+		@Label("Queue Wait")
+		@Description("Time between adding the call to the queue and running it")
+		@Timespan(Timespan.NANOSECONDS)
+		long queueWait;
+	}
+
+	@Name("arden.Schedule")
+	@Label("Scheduled Call")
+	@Category("Arden")
+	@Description("Event or MLM call which is added to the queue of the evoke engine after a delay")
+	static class ScheduleEvent extends Event {
+		@Label("Kind")
+		String kind;
+
+		@Label("Name")
+		@Description("Name of the event or MLM")
+		String name;
+
+		@Label("Delay")
+		@Timespan(Timespan.MILLISECONDS)
+		long delay;
+	}
+
+	/** Keeps {@link JfrEvents#recording} up to date. */
+	static void watchRecordings() {
+		FlightRecorder.addListener(new FlightRecorderListener() {
+			@Override
+			public void recorderInitialized(FlightRecorder recorder) {
+				updateRecording();
+			}
+
+			@Override
+			public void recordingStateChanged(Recording recording) {
+				updateRecording();
+			}
+		});
+		updateRecording();
+	}
+
+	private static void updateRecording() {
+		boolean running = false;
+		if (FlightRecorder.isInitialized()) {
+			for (Recording recording : FlightRecorder.getFlightRecorder().getRecordings()) {
+				if (recording.getState() == RecordingState.RUNNING) {
+					running = true;
+				}
+			}
+		}
+		JfrEvents.recording = running;
+	}
+
+	static Object beginMlmExecution() {
+		MlmExecutionEvent event = new MlmExecutionEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endMlmExecution(Object event, String mlmName, boolean concluded) {
+		MlmExecutionEvent e = (MlmExecutionEvent) event;
+		e.mlmName = mlmName;
+		e.concluded = concluded;
+		e.commit();
+	}
+
+	static Object beginQuery() {
+		QueryEvent event = new QueryEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endQuery(Object event, String mapping, ArdenValue[] result) {
+		QueryEvent e = (QueryEvent) event;
+		e.mapping = mapping;
+		if (result == null) {
+			e.failed = true;
+		} else if (result.length > 0) {
+			// multiple rows are returned as a list in each column
+			e.rows = result[0] instanceof ArdenList ? ((ArdenList) result[0]).values.length : 1;
+		}
+		e.commit();
+	}
+
+	static Object beginEngineCall() {
+		EngineCallEvent event = new EngineCallEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endEngineCall(Object event, String kind, String name, int priority, long queueWait) {
+		EngineCallEvent e = (EngineCallEvent) event;
+		e.kind = kind;
+		e.name = name;
+		e.priority = priority;
+		e.queueWait = queueWait;
+		e.commit();
+	}
+
+	static void schedule(String kind, String name, long delay) {
+		ScheduleEvent event = new ScheduleEvent();
+		if (event.isEnabled()) {
+			event.kind = kind;
+			event.name = name;
+			event.delay = delay;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package arden.runtime.profiler;
+
+import arden.runtime.ArdenValue;
+
+/**
+ * Emits Java Flight Recorder events for MLM executions, READ queries and the
+ * calls of the evoke engine, so they can be analyzed next to the JVM events
+ * (GC, locks, ...) with the standard JFR tools.
+ * <p>
+ * Events are only created while a recording is running, otherwise each
+ * method only reads a volatile flag. On Java versions without JFR, this
+ * class does nothing.
+ * </p>
+ * <p>
+ * The <code>begin</code> methods return the started event (or
+ * <code>null</code>), which is passed to the matching <code>end</code> method
+ * with the values of the event.
+ * </p>
+ */
+public final class JfrEvents {
+	private static final boolean AVAILABLE = isJfrAvailable();
+
+	static volatile boolean recording = false;
+
+	static {
+		if (AVAILABLE) {
+			FlightRecorderEvents.watchRecordings();
+		}
+	}
+
+	private JfrEvents() {
+	}
+
+	private static boolean isJfrAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	/** Returns whether the JVM supports JFR (Java 11 or newer). */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/** Returns whether a flight recording is currently running. */
+	public static boolean isRecording() {
+		return recording;
+	}
+
+	public static Object beginMlmExecution() {
+		return recording ? FlightRecorderEvents.beginMlmExecution() : null;
+	}
+
+	public static void endMlmExecution(Object event, String mlmName, boolean concluded) {
+		if (event != null) {
+			FlightRecorderEvents.endMlmExecution(event, mlmName, concluded);
+		}
+	}
+
+	public static Object beginQuery() {
+		return recording ? FlightRecorderEvents.beginQuery() : null;
+	}
+
+	/**
+	 * @param result
+	 *            The columns returned by the query, or <code>null</code> if
+	 *            the query failed.
+	 */
+	public static void endQuery(Object event, String mapping, ArdenValue[] result) {
+		if (event != null) {
+			FlightRecorderEvents.endQuery(event, mapping, result);
+		}
+	}
+
+	public static Object beginEngineCall() {
+		return recording ? FlightRecorderEvents.beginEngineCall() : null;
+	}
+
+	/**
+	 * @param queueWait
+	 *            The time the call waited in the queue in nanoseconds.
+	 */
+	public static void endEngineCall(Object event, String kind, String name, int priority, long queueWait) {
+		if (event != null) {
+			FlightRecorderEvents.endEngineCall(event, kind, name, priority, queueWait);
+		}
+	}
+
+	/**
+	 * Records that a call is scheduled to be run after a delay.
+	 * 
+	 * @param delay
+	 *            The delay in milliseconds.
+	 */
+	public static void schedule(String kind, String name, long delay) {
+		if (recording) {
+			FlightRecorderEvents.schedule(kind, name, delay);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package arden.runtime.profiler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets of powers of two nanoseconds. Recording is
+ * thread-safe and does not allocate, percentiles are given as the upper bound
+ * of their bucket (so they may be up to twice the real value).
+ */
+public final class LatencyHistogram {
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/** Records a duration in nanoseconds. */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		// bucket i holds durations from 2^(i-1) to 2^i - 1
+		buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		long currentMax;
+		while (nanos > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, nanos)) {
+				break;
+			}
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/** Returns the sum of all recorded durations in nanoseconds. */
+	public long getTotal() {
+		return total.get();
+	}
+
+	/** Returns the longest recorded duration in nanoseconds. */
+	public long getMax() {
+		return max.get();
+	}
+
+	/** Returns the mean duration in nanoseconds, or 0 if nothing is recorded. */
+	public double getMean() {
+		long n = getCount();
+		return n == 0 ? 0 : (double) getTotal() / n;
+	}
+
+	/**
+	 * Returns the upper bound in nanoseconds of the bucket containing the
+	 * given percentile.
+	 * 
+	 * @param percentile
+	 *            Percentile between 0 and 1, e.g. 0.99.
+	 */
+	public long getPercentile(double percentile) {
+		long n = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			n += counts[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(i == 0 ? 0 : (1L << i) - 1, getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Returns the number of durations up to <code>2^bucket - 1</code>
+	 * nanoseconds, i.e. in the buckets up to the given one.
+	 */
+	public long getCountUpTo(int bucket) {
+		long n = 0;
+		for (int i = 0; i <= bucket && i < BUCKETS; i++) {
+			n += buckets.get(i);
+		}
+		return n;
+	}
+
+	/** Returns a copy of the current values. */
+	public LatencyHistogram copy() {
+		LatencyHistogram copy = new LatencyHistogram();
+		for (int i = 0; i < BUCKETS; i++) {
+			copy.buckets.set(i, buckets.get(i));
+		}
+		copy.count.set(count.get());
+		copy.total.set(total.get());
+		copy.max.set(max.get());
+		return copy;
+	}
+}
@@ -0,0 +1,84 @@
+package arden.runtime.profiler;
+
+/**
+ * The number of executions and their durations for each part of one MLM.
+ * <p>
+ * The durations are inclusive: the data, logic and action slots include the
+ * READ and WRITE statements and the MLM calls they contain.
+ * </p>
+ */
+public final class MlmProfile {
+	/** The measured parts of an MLM. */
+	public enum Part {
+		/** The data slot, run when the MLM is created. */
+		DATA,
+		/** A single READ statement (executing the query). */
+		READ,
+		LOGIC,
+		ACTION,
+		/** A single WRITE statement. */
+		WRITE
+	}
+
+	private final String name;
+	private final String institution;
+	private final String version;
+	private final LatencyHistogram[] histograms;
+
+	MlmProfile(String name, String institution, String version) {
+		this.name = name;
+		this.institution = institution;
+		this.version = version;
+		this.histograms = new LatencyHistogram[Part.values().length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	private MlmProfile(String name, String institution, String version, LatencyHistogram[] histograms) {
+		this.name = name;
+		this.institution = institution;
+		this.version = version;
+		this.histograms = histograms;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getInstitution() {
+		return institution;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public LatencyHistogram getHistogram(Part part) {
+		return histograms[part.ordinal()];
+	}
+
+	/** Returns the number of runs of this MLM, i.e. of its data slot. */
+	public long getRuns() {
+		return getHistogram(Part.DATA).getCount();
+	}
+
+	/** Returns the total time of all runs of this MLM in nanoseconds. */
+	public long getTotalTime() {
+		return getHistogram(Part.DATA).getTotal() + getHistogram(Part.LOGIC).getTotal()
+				+ getHistogram(Part.ACTION).getTotal();
+	}
+
+	/** Records the time since <code>start</code> (from {@link System#nanoTime()}). */
+	public void record(Part part, long start) {
+		histograms[part.ordinal()].record(System.nanoTime() - start);
+	}
+
+	MlmProfile copy() {
+		LatencyHistogram[] copies = new LatencyHistogram[histograms.length];
+		for (int i = 0; i < histograms.length; i++) {
+			copies[i] = histograms[i].copy();
+		}
+		return new MlmProfile(name, institution, version, copies);
+	}
+}
@@ -0,0 +1,141 @@
+package arden.runtime.profiler;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import arden.runtime.ExecutionContext;
+
+/**
+ * Collects the execution times of MLMs, see {@link MlmProfile}.
+ * <p>
+ * The profiler is disabled by default. While it is disabled, running an MLM
+ * only checks {@link #isEnabled()}. When enabled, each run of a compiled MLM
+ * is measured and the MLM uses a {@link ProfilingExecutionContext} to measure
+ * its READ and WRITE statements.
+ * </p>
+ */
+public final class MlmProfiler {
+	private static volatile boolean enabled = false;
+	private static final ConcurrentMap<Key, MlmProfile> profiles = new ConcurrentHashMap<Key, MlmProfile>();
+
+	/** Identifies a module, so different versions are profiled separately. */
+	private static final class Key {
+		private final String name;
+		private final String institution;
+		private final String version;
+
+		Key(String name, String institution, String version) {
+			this.name = name;
+			this.institution = institution;
+			this.version = version;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return equals(name, other.name) && equals(institution, other.institution)
+					&& equals(version, other.version);
+		}
+
+		private static boolean equals(String s1, String s2) {
+			return s1 == null ? s2 == null : s1.equals(s2);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = name != null ? name.hashCode() : 0;
+			hash = hash * 31 + (institution != null ? institution.hashCode() : 0);
+			return hash * 31 + (version != null ? version.hashCode() : 0);
+		}
+	}
+
+	private MlmProfiler() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean value) {
+		enabled = value;
+	}
+
+	/**
+	 * Gets the profile of the MLM with the given name, institution and
+	 * version, creating it if needed.
+	 */
+	public static MlmProfile getProfile(String mlmName, String institution, String version) {
+		Key key = new Key(mlmName, institution, version);
+		MlmProfile profile = profiles.get(key);
+		if (profile == null) {
+			MlmProfile newProfile = new MlmProfile(mlmName, institution, version);
+			profile = profiles.putIfAbsent(key, newProfile);
+			if (profile == null) {
+				profile = newProfile;
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * Wraps the context so the READ and WRITE statements of an MLM are
+	 * recorded in its profile (if not <code>null</code>) and READ statements
+	 * as JFR events.
+	 */
+	public static ExecutionContext wrap(ExecutionContext context, MlmProfile profile) {
+		if (context instanceof ProfilingExecutionContext) {
+			// called by another MLM, don't count its statements twice
+			context = ((ProfilingExecutionContext) context).getContext();
+		}
+		return new ProfilingExecutionContext(context, profile);
+	}
+
+	/**
+	 * Returns a copy of the current profiles, sorted by their total time
+	 * (highest first).
+	 */
+	public static List<MlmProfile> getSnapshot() {
+		List<MlmProfile> snapshot = new ArrayList<MlmProfile>();
+		for (MlmProfile profile : profiles.values()) {
+			snapshot.add(profile.copy());
+		}
+		Collections.sort(snapshot, new Comparator<MlmProfile>() {
+			@Override
+			public int compare(MlmProfile p1, MlmProfile p2) {
+				return Long.compare(p2.getTotalTime(), p1.getTotalTime());
+			}
+		});
+		return snapshot;
+	}
+
+	/** Removes all profiles. */
+	public static void reset() {
+		profiles.clear();
+	}
+
+	/** Prints a table of the current profiles, times are in milliseconds. */
+	public static void dump(PrintStream out) {
+		out.println(String.format("%-30s %-20s %-8s %-6s %10s %12s %10s %10s %10s %10s", "MLM", "institution",
+				"version", "part", "count", "total", "mean", "p50", "p99", "max"));
+		for (MlmProfile profile : getSnapshot()) {
+			for (MlmProfile.Part part : MlmProfile.Part.values()) {
+				LatencyHistogram histogram = profile.getHistogram(part);
+				if (histogram.getCount() == 0) {
+					continue;
+				}
+				out.println(String.format("%-30s %-20s %-8s %-6s %10d %12.3f %10.3f %10.3f %10.3f %10.3f",
+						profile.getName(), profile.getInstitution(), profile.getVersion(), part, histogram.getCount(),
+						histogram.getTotal() / 1e6, histogram.getMean() / 1e6, histogram.getPercentile(0.5) / 1e6,
+						histogram.getPercentile(0.99) / 1e6, histogram.getMax() / 1e6));
+			}
+		}
+	}
+}
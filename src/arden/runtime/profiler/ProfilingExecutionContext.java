@@ -0,0 +1,110 @@
+package arden.runtime.profiler;
+
+import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenObject;
+import arden.runtime.ArdenRunnable;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.DatabaseQuery;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.ObjectType;
+import arden.runtime.evoke.Trigger;
+
+/**
+ * Forwards all methods to another context and records the duration of READ
+ * and WRITE statements in the profile of an MLM. READ statements are also
+ * recorded as JFR events.
+ */
+final class ProfilingExecutionContext extends ExecutionContext {
+	private final ExecutionContext context;
+	private final MlmProfile profile;
+
+	/**
+	 * @param profile
+	 *            The profile of the MLM, <code>null</code> if the profiler is
+	 *            disabled.
+	 */
+	ProfilingExecutionContext(ExecutionContext context, MlmProfile profile) {
+		this.context = context;
+		this.profile = profile;
+	}
+
+	ExecutionContext getContext() {
+		return context;
+	}
+
+	@Override
+	public DatabaseQuery createQuery(MedicalLogicModule mlm, String mapping) {
+		return new ProfilingQuery(context.createQuery(mlm, mapping), profile, mapping);
+	}
+
+	@Override
+	public ArdenValue getMessage(MedicalLogicModule mlm, String mapping) {
+		return context.getMessage(mlm, mapping);
+	}
+
+	@Override
+	public ArdenObject getMessageAs(MedicalLogicModule mlm, String mapping, ObjectType type) {
+		return context.getMessageAs(mlm, mapping, type);
+	}
+
+	@Override
+	public ArdenValue getDestination(MedicalLogicModule mlm, String mapping) {
+		return context.getDestination(mlm, mapping);
+	}
+
+	@Override
+	public ArdenObject getDestinationAs(MedicalLogicModule mlm, String mapping, ObjectType type) {
+		return context.getDestinationAs(mlm, mapping, type);
+	}
+
+	@Override
+	public ArdenEvent getEvent(MedicalLogicModule mlm, String mapping) {
+		return context.getEvent(mlm, mapping);
+	}
+
+	@Override
+	public ArdenRunnable findInterface(MedicalLogicModule mlm, String mapping) {
+		return context.findInterface(mlm, mapping);
+	}
+
+	@Override
+	public MedicalLogicModule findModule(String name, String institution) {
+		return context.findModule(name, institution);
+	}
+
+	@Override
+	public MedicalLogicModule[] findModules(ArdenEvent event) {
+		return context.findModules(event);
+	}
+
+	@Override
+	public ArdenTime getCurrentTime() {
+		return context.getCurrentTime();
+	}
+
+	@Override
+	public void write(ArdenValue message, ArdenValue destination, double urgency) {
+		if (profile == null) {
+			context.write(message, destination, urgency);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			context.write(message, destination, urgency);
+		} finally {
+			profile.record(MlmProfile.Part.WRITE, start);
+		}
+	}
+
+	@Override
+	public void call(ArdenRunnable mlm, ArdenValue[] arguments, ArdenValue delay, Trigger trigger, double urgency) {
+		context.call(mlm, arguments, delay, trigger, urgency);
+	}
+
+	@Override
+	public void call(ArdenEvent event, ArdenValue delay, double urgency) {
+		context.call(event, delay, urgency);
+	}
+}
@@ -0,0 +1,169 @@
+package arden.runtime.profiler;
+
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.DatabaseQuery;
+
+/**
+ * Forwards all methods to another query and records the duration of
+ * {@link #execute()} as a READ in the profile of an MLM and as JFR event. The
+ * constraints and aggregations return wrapped queries, as they are applied
+ * before the query is executed.
+ */
+final class ProfilingQuery extends DatabaseQuery {
+	private final DatabaseQuery query;
+	private final MlmProfile profile;
+	private final String mapping;
+
+	/**
+	 * @param profile
+	 *            The profile of the MLM, <code>null</code> if the profiler is
+	 *            disabled.
+	 */
+	ProfilingQuery(DatabaseQuery query, MlmProfile profile, String mapping) {
+		this.query = query;
+		this.profile = profile;
+		this.mapping = mapping;
+	}
+
+	@Override
+	public ArdenValue[] execute() {
+		Object event = JfrEvents.beginQuery();
+		long start = System.nanoTime();
+		ArdenValue[] result = null;
+		try {
+			result = query.execute();
+			return result;
+		} finally {
+			if (profile != null) {
+				profile.record(MlmProfile.Part.READ, start);
+			}
+			JfrEvents.endQuery(event, mapping, result);
+		}
+	}
+
+	@Override
+	public DatabaseQuery occursWithinTo(ArdenTime start, ArdenTime end) {
+		return new ProfilingQuery(query.occursWithinTo(start, end), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery occursNotWithinTo(ArdenTime start, ArdenTime end) {
+		return new ProfilingQuery(query.occursNotWithinTo(start, end), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery occursBefore(ArdenTime time) {
+		return new ProfilingQuery(query.occursBefore(time), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery occursNotBefore(ArdenTime time) {
+		return new ProfilingQuery(query.occursNotBefore(time), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery occursAfter(ArdenTime time) {
+		return new ProfilingQuery(query.occursAfter(time), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery occursNotAfter(ArdenTime time) {
+		return new ProfilingQuery(query.occursNotAfter(time), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery occursAt(ArdenTime time) {
+		return new ProfilingQuery(query.occursAt(time), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery occursNotAt(ArdenTime time) {
+		return new ProfilingQuery(query.occursNotAt(time), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery average() {
+		return new ProfilingQuery(query.average(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery count() {
+		return new ProfilingQuery(query.count(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery exist() {
+		return new ProfilingQuery(query.exist(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery sum() {
+		return new ProfilingQuery(query.sum(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery median() {
+		return new ProfilingQuery(query.median(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery minimum() {
+		return new ProfilingQuery(query.minimum(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery minimum(int numberOfElements) {
+		return new ProfilingQuery(query.minimum(numberOfElements), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery maximum() {
+		return new ProfilingQuery(query.maximum(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery maximum(int numberOfElements) {
+		return new ProfilingQuery(query.maximum(numberOfElements), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery last() {
+		return new ProfilingQuery(query.last(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery last(int numberOfElements) {
+		return new ProfilingQuery(query.last(numberOfElements), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery first() {
+		return new ProfilingQuery(query.first(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery first(int numberOfElements) {
+		return new ProfilingQuery(query.first(numberOfElements), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery latest() {
+		return new ProfilingQuery(query.latest(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery latest(int numberOfElements) {
+		return new ProfilingQuery(query.latest(numberOfElements), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery earliest() {
+		return new ProfilingQuery(query.earliest(), profile, mapping);
+	}
+
+	@Override
+	public DatabaseQuery earliest(int numberOfElements) {
+		return new ProfilingQuery(query.earliest(numberOfElements), profile, mapping);
+	}
+}
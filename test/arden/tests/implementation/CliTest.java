@@ -2,13 +2,89 @@ package arden.tests.implementation;
 
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 
 import arden.MainClass;
 
 /** tests for the command line interface (CLI) */
 public class CliTest extends ImplementationTest {
+	private File directory;
+	private String out;
+	private String err;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("cli").toFile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		deleteRecursively(directory);
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static String createMlm(String name, String returnValue) {
+		return new MlmSource(name).action("return \"" + returnValue + "\"").toString();
+	}
+
+	private String writeFile(String fileName, String text) throws Exception {
+		File file = new File(directory, fileName);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(text);
+		} finally {
+			writer.close();
+		}
+		return file.getPath();
+	}
+
+	/** Runs the command line, the output is stored in out and err. */
+	private boolean runCli(String... args) {
+		PrintStream oldOut = System.out;
+		PrintStream oldErr = System.err;
+		ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(outBytes, true));
+		System.setErr(new PrintStream(errBytes, true));
+		try {
+			return new MainClass().handleCommandLineArgs(args);
+		} finally {
+			System.setOut(oldOut);
+			System.setErr(oldErr);
+			out = outBytes.toString();
+			err = errBytes.toString();
+		}
+	}
+
+	private static String[] concat(String[] options, List<String> files) {
+		List<String> args = new ArrayList<String>(Arrays.asList(options));
+		args.addAll(files);
+		return args.toArray(new String[args.size()]);
+	}
+
 	@Test
 	public void testBasename() throws Exception {
 		Assert.assertEquals("basename", MainClass.getFilenameBase("sdvnj/\\$%&../\\//./4e5\\v.s..df.v/basename.bfgb"));
@@ -45,4 +121,66 @@ public class CliTest extends ImplementationTest {
 		// not too short
 		assertTrue(max >= MainClass.MAX_LINE_LENGTH * 0.8);
 	}
+
+	@Test
+	public void testParallelLoadingKeepsFileOrder() throws Exception {
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < 8; i++) {
+			files.add(writeFile("mlm" + i + ".mlm", createMlm("mlm" + i, "value " + i)));
+		}
+		Assert.assertTrue(err, runCli(concat(new String[] { "-n", "-r" }, files)));
+
+		int position = -1;
+		for (int i = 0; i < 8; i++) {
+			int next = out.indexOf("Return Value: \"value " + i + "\"");
+			Assert.assertTrue(out, next > position);
+			position = next;
+		}
+	}
+
+	@Test
+	public void testParallelLoadingCollectsErrors() throws Exception {
+		List<String> files = new ArrayList<String>();
+		files.add(writeFile("good1.mlm", createMlm("good1", "first")));
+		files.add(writeFile("broken1.mlm", "maintenance: this is not an MLM"));
+		files.add(writeFile("good2.mlm", createMlm("good2", "second")));
+		files.add(writeFile("broken2.mlm", new MlmSource("broken2").logic("x :=;").toString()));
+		Assert.assertFalse(runCli(concat(new String[] { "-n", "-r" }, files)));
+
+		// all errors are reported, in the order of the files
+		int first = err.indexOf("Could not compile " + files.get(1));
+		int second = err.indexOf("Could not compile " + files.get(3));
+		Assert.assertTrue(err, first >= 0 && second > first);
+		Assert.assertFalse(err, err.contains(files.get(0)) || err.contains(files.get(2)));
+		// no MLM runs if any file could not be loaded
+		Assert.assertFalse(out, out.contains("Return Value"));
+	}
+
+	@Test
+	public void testParallelCompilationPrintsMessagesInOrder() throws Exception {
+		File outputDir = new File(directory, "out");
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < 6; i++) {
+			files.add(writeFile("mlm" + i + ".mlm", createMlm("mlm" + i, "value " + i)));
+		}
+		files.add(3, writeFile("broken.mlm", "maintenance: this is not an MLM"));
+		Assert.assertFalse(runCli(concat(new String[] { "-n", "-c", "-j", "2", "-d", outputDir.getPath(), "-v" },
+				files)));
+
+		for (int i = 0; i < 6; i++) {
+			Assert.assertTrue(new File(outputDir, "mlm" + i + ".class").isFile());
+		}
+		// the messages of each file are printed together, in the order of the files
+		String newline = System.getProperty("line.separator");
+		StringBuilder expected = new StringBuilder();
+		for (String file : files) {
+			expected.append("Compiling ").append(file).append(newline);
+			if (!file.endsWith("broken.mlm")) {
+				String name = new File(file).getName().replace(".mlm", ".class");
+				expected.append("Saved to ").append(new File(outputDir, name).getPath()).append(newline);
+			}
+		}
+		Assert.assertTrue(out, out.endsWith(expected.toString()));
+		Assert.assertTrue(err, err.startsWith("Could not compile " + files.get(3)));
+	}
 }
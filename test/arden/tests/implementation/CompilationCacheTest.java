@@ -0,0 +1,75 @@
+package arden.tests.implementation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import arden.compiler.CompilationCache;
+import arden.compiler.CompiledMlm;
+
+public class CompilationCacheTest extends ImplementationTest {
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("cache").toFile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static String readMlm(String filename) throws Exception {
+		InputStream s = CompilationCacheTest.class.getResourceAsStream(filename);
+		return inputStreamToString(s);
+	}
+
+	private static byte[] getBytes(CompiledMlm mlm) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		mlm.saveClassFile(bos);
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testUnchangedSourceIsCached() throws Exception {
+		CompilationCache cache = new CompilationCache(directory);
+		String source = readMlm("x3.1.mlm");
+
+		CompiledMlm first = cache.compileMlm(new StringReader(source), "x3.1.mlm");
+		Assert.assertEquals(1, directory.listFiles().length);
+		CompiledMlm second = cache.compileMlm(new StringReader(source), "x3.1.mlm");
+		Assert.assertEquals(1, directory.listFiles().length);
+		Assert.assertArrayEquals(getBytes(first), getBytes(second));
+		Assert.assertEquals("fractional_na", second.getName());
+
+		// a different source text or file name is a new entry
+		cache.compileMlm(new StringReader(source + "\n"), "x3.1.mlm");
+		cache.compileMlm(new StringReader(source), "other.mlm");
+		Assert.assertEquals(3, directory.listFiles().length);
+	}
+
+	@Test
+	public void testDamagedEntryIsCompiledAgain() throws Exception {
+		CompilationCache cache = new CompilationCache(directory);
+		String source = readMlm("x3.3.mlm");
+		CompiledMlm first = cache.compileMlm(new StringReader(source), null);
+
+		File entry = directory.listFiles()[0];
+		Files.write(entry.toPath(), new byte[] { 0, 0, 0, 1, 0, 0, 0, 4, 1, 2, 3, 4 });
+
+		CompiledMlm second = cache.compileMlm(new StringReader(source), null);
+		Assert.assertEquals("pen_allergy", second.getName());
+		Assert.assertArrayEquals(getBytes(first), getBytes(second));
+	}
+}
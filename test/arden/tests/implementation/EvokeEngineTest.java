@@ -0,0 +1,487 @@
+package arden.tests.implementation;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.compiler.CompiledMlm;
+import arden.engine.Coalescing;
+import arden.engine.EvokeEngine;
+import arden.engine.OverloadPolicy;
+import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenRunnable;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.BaseExecutionContext;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.evoke.CallTrigger;
+import arden.runtime.evoke.Trigger;
+import arden.runtime.metrics.MetricsRegistry;
+
+public class EvokeEngineTest extends ImplementationTest {
+	private static CompiledMlm compileVersion(String version) throws Exception {
+		return new MlmSource("swapped_mlm").version(version).action("write \"" + version + "\"").compile();
+	}
+
+	private static class OutputContext extends BaseExecutionContext {
+		private final StringBuffer output = new StringBuffer();
+
+		OutputContext() {
+			super(new URL[0]);
+		}
+
+		@Override
+		public void write(ArdenValue message, ArdenValue destination, double urgency) {
+			output.append(((ArdenString) message).value).append('\n');
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testReplaceModuleRedirectsDelayedCalls() throws Exception {
+		CompiledMlm oldVersion = compileVersion("1.00");
+		CompiledMlm newVersion = compileVersion("2.00");
+		OutputContext context = new OutputContext();
+		EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> singletonList(oldVersion));
+		context.setEngine(engine);
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		try {
+			engine.call(oldVersion, null, 300, new CallTrigger(), 50);
+			Assert.assertSame(oldVersion, engine.replaceModule(newVersion));
+			Assert.assertEquals(Collections.singletonList(newVersion), engine.getModules());
+
+			while (context.output.length() == 0) {
+				Thread.sleep(20);
+			}
+			Assert.assertEquals("2.00\n", context.output.toString());
+		} finally {
+			engineThread.interrupt();
+			engineThread.join();
+		}
+	}
+
+	@Test
+	public void testReplaceModuleAddsNewModule() throws Exception {
+		CompiledMlm mlm = compileVersion("1.00");
+		EvokeEngine engine = new EvokeEngine(new OutputContext(), Collections.<MedicalLogicModule> emptyList());
+		Assert.assertNull(engine.replaceModule(mlm));
+		Assert.assertEquals(Collections.singletonList(mlm), engine.getModules());
+	}
+
+	private static CompiledMlm compileWriteArgument() throws Exception {
+		return new MlmSource("write_argument").data("(a) := argument").action("write \"\" || a").compile();
+	}
+
+	private static void call(EvokeEngine engine, MedicalLogicModule mlm, int urgency) {
+		engine.call(mlm, new ArdenValue[] { new ArdenNumber(urgency) }, 0, new CallTrigger(), urgency);
+	}
+
+	private static String runQueuedCalls(EvokeEngine engine, OutputContext context, int expectedLines)
+			throws InterruptedException {
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		try {
+			while (context.output.toString().replaceAll("[^\n]", "").length() < expectedLines) {
+				Thread.sleep(20);
+			}
+			return context.output.toString();
+		} finally {
+			engineThread.interrupt();
+			engineThread.join();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testFullQueueRejectsCalls() throws Exception {
+		CompiledMlm mlm = compileWriteArgument();
+		OutputContext context = new OutputContext();
+		EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> emptyList(), 2,
+				OverloadPolicy.REJECT);
+		context.setEngine(engine);
+		call(engine, mlm, 10);
+		call(engine, mlm, 20);
+		call(engine, mlm, 30);
+		Assert.assertEquals(2, engine.getQueueSize());
+		String output = runQueuedCalls(engine, context, 2);
+		Assert.assertTrue(output, output.contains("10") && output.contains("20") && !output.contains("30"));
+	}
+
+	@Test(timeout = 10000)
+	public void testFullQueueShedsLowestUrgency() throws Exception {
+		CompiledMlm mlm = compileWriteArgument();
+		OutputContext context = new OutputContext();
+		EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> emptyList(), 2,
+				OverloadPolicy.SHED);
+		context.setEngine(engine);
+		call(engine, mlm, 50);
+		call(engine, mlm, 10);
+		call(engine, mlm, 30);
+		call(engine, mlm, 5);
+		Assert.assertEquals(2, engine.getQueueSize());
+		String output = runQueuedCalls(engine, context, 2);
+		Assert.assertTrue(output, output.contains("50") && output.contains("30"));
+		Assert.assertFalse(output, output.contains("10") || output.contains("5\n"));
+	}
+
+	@Test(timeout = 10000)
+	public void testFullQueueCoalescesDuplicates() throws Exception {
+		CompiledMlm mlm = compileWriteArgument();
+		OutputContext context = new OutputContext();
+		EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> emptyList(), 1,
+				OverloadPolicy.COALESCE);
+		context.setEngine(engine);
+		call(engine, mlm, 10);
+		call(engine, mlm, 10);
+		call(engine, mlm, 20);
+		Assert.assertEquals(1, engine.getQueueSize());
+		Assert.assertEquals("10\n", runQueuedCalls(engine, context, 1));
+	}
+
+	@Test(timeout = 10000)
+	public void testFullQueueBlocksProducer() throws Exception {
+		final CompiledMlm mlm = compileWriteArgument();
+		OutputContext context = new OutputContext();
+		final EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> emptyList(), 1,
+				OverloadPolicy.BLOCK);
+		context.setEngine(engine);
+		call(engine, mlm, 10);
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				call(engine, mlm, 20);
+			}
+		};
+		producer.start();
+		while (producer.getState() != Thread.State.WAITING) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(1, engine.getQueueSize());
+
+		String output = runQueuedCalls(engine, context, 2);
+		producer.join();
+		Assert.assertTrue(output, output.contains("10") && output.contains("20"));
+	}
+
+	@Test(timeout = 10000)
+	public void testShutdownReleasesBlockedProducer() throws Exception {
+		final CompiledMlm mlm = compileWriteArgument();
+		OutputContext context = new OutputContext();
+		final EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> emptyList(), 1,
+				OverloadPolicy.BLOCK);
+		context.setEngine(engine);
+		call(engine, mlm, 10);
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				call(engine, mlm, 20);
+			}
+		};
+		producer.start();
+		while (producer.getState() != Thread.State.WAITING) {
+			Thread.sleep(10);
+		}
+
+		// the engine stops without taking the waiting call
+		Thread engineThread = new Thread() {
+			@Override
+			public void run() {
+				interrupt();
+				engine.run();
+			}
+		};
+		engineThread.start();
+		engineThread.join();
+		producer.join();
+		Assert.assertEquals(1, engine.getQueueSize());
+		Assert.assertEquals("", context.output.toString());
+	}
+
+	@Test(timeout = 10000)
+	public void testHigherPriorityRunsFirstThenFifo() throws Exception {
+		CompiledMlm mlm = compileWriteArgument();
+		OutputContext context = new OutputContext();
+		EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> emptyList());
+		context.setEngine(engine);
+		int[] urgencies = { 10, 50, 10, 50, 99 };
+		for (int i = 0; i < urgencies.length; i++) {
+			engine.call(mlm, new ArdenValue[] { new ArdenNumber(i) }, 0, new CallTrigger(), urgencies[i]);
+		}
+		Assert.assertEquals("4\n1\n3\n0\n2\n", runQueuedCalls(engine, context, urgencies.length));
+	}
+
+	@Test(timeout = 30000)
+	public void testConcurrentProducers() throws Exception {
+		final int producers = 4;
+		final int callsPerProducer = 5000;
+		final AtomicInteger runs = new AtomicInteger();
+		final int[] lastRun = new int[producers];
+		final AtomicInteger outOfOrder = new AtomicInteger();
+		final ArdenRunnable runnable = new ArdenRunnable() {
+			@Override
+			public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments, Trigger evokingTrigger) {
+				int producer = (int) ((ArdenNumber) arguments[0]).value;
+				int sequence = (int) ((ArdenNumber) arguments[1]).value;
+				// calls of one producer have the same priority, so they run in order
+				if (sequence <= lastRun[producer]) {
+					outOfOrder.incrementAndGet();
+				}
+				lastRun[producer] = sequence;
+				runs.incrementAndGet();
+				return null;
+			}
+		};
+		final EvokeEngine engine = new EvokeEngine(new OutputContext(), Collections.<MedicalLogicModule> emptyList());
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		try {
+			Thread[] threads = new Thread[producers];
+			for (int p = 0; p < producers; p++) {
+				final int producer = p;
+				threads[p] = new Thread() {
+					@Override
+					public void run() {
+						for (int i = 1; i <= callsPerProducer; i++) {
+							engine.call(runnable, new ArdenValue[] { new ArdenNumber(producer), new ArdenNumber(i) },
+									0, new CallTrigger(), 10 + producer);
+						}
+					}
+				};
+				threads[p].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			while (runs.get() < producers * callsPerProducer) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(0, outOfOrder.get());
+			Assert.assertEquals(0, engine.getQueueSize());
+		} finally {
+			engineThread.interrupt();
+			engineThread.join();
+		}
+	}
+
+	/** Records the event time of the triggering event of each run. */
+	private static class EventTimeRecorder implements ArdenRunnable {
+		private final StringBuffer runs = new StringBuffer();
+
+		@Override
+		public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments, Trigger evokingTrigger) {
+			runs.append(arguments[0]).append(':').append(evokingTrigger.getTriggeringEvent().eventTime).append('\n');
+			return null;
+		}
+	}
+
+	private static String runCoalesced(Coalescing coalescing) throws Exception {
+		EventTimeRecorder recorder = new EventTimeRecorder();
+		EvokeEngine engine = new EvokeEngine(new OutputContext(), Collections.<MedicalLogicModule> emptyList());
+		engine.setCoalescing(coalescing);
+		for (int time = 1; time <= 3; time++) {
+			ArdenEvent event = new ArdenEvent("Lab_Result", time, time);
+			engine.call(recorder, new ArdenValue[] { new ArdenNumber(1) }, 0, new CallTrigger(event), 50);
+		}
+		// other arguments or events are not merged
+		engine.call(recorder, new ArdenValue[] { new ArdenNumber(2) }, 0,
+				new CallTrigger(new ArdenEvent("lab_result", 4, 4)), 50);
+		engine.call(recorder, new ArdenValue[] { new ArdenNumber(1) }, 0,
+				new CallTrigger(new ArdenEvent("other_event", 5, 5)), 50);
+		Assert.assertEquals(coalescing == Coalescing.NONE ? 5 : 3, engine.getQueueSize());
+
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		try {
+			while (engine.getQueueSize() > 0 || recorder.runs.toString().replaceAll("[^\n]", "").length() < 3) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(50);
+			return recorder.runs.toString();
+		} finally {
+			engineThread.interrupt();
+			engineThread.join();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testCoalescingLatestEventWins() throws Exception {
+		Assert.assertEquals("1:3\n2:4\n1:5\n", runCoalesced(Coalescing.LATEST));
+	}
+
+	@Test(timeout = 10000)
+	public void testCoalescingCountOnly() throws Exception {
+		Assert.assertEquals("1:1\n2:4\n1:5\n", runCoalesced(Coalescing.COUNT));
+	}
+
+	@Test(timeout = 10000)
+	public void testNoCoalescing() throws Exception {
+		Assert.assertEquals("1:1\n1:2\n1:3\n2:4\n1:5\n", runCoalesced(Coalescing.NONE));
+	}
+
+	/**
+	 * Runs an MLM evoked after three events, returns the event time it saw.
+	 * The calls of scheduled triggers share the MLM's trigger.
+	 */
+	private static String runCoalescedEvents(Coalescing coalescing) throws Exception {
+		CompiledMlm mlm = new MlmSource("evoked").data("e := event {lab_result}").evoke("1 second after time of e")
+				.action("write \"\" || eventtime").compile();
+		OutputContext context = new OutputContext();
+		EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> singletonList(mlm));
+		engine.setCoalescing(coalescing);
+		context.setEngine(engine);
+		for (int time = 1; time <= 3; time++) {
+			engine.call(new ArdenEvent("lab_result", time * 1000, time * 1000), 0, 50);
+		}
+		// the events are handled before the MLM calls they add (their time is long past)
+		return runQueuedCalls(engine, context, 1);
+	}
+
+	@Test(timeout = 10000)
+	public void testCoalescedEventsLatestEventWins() throws Exception {
+		Assert.assertEquals("" + new ArdenTime(3000) + "\n", runCoalescedEvents(Coalescing.LATEST));
+	}
+
+	@Test(timeout = 10000)
+	public void testCoalescedEventsCountKeepsFirstEvent() throws Exception {
+		// the MLM's trigger has seen the last event, but the call keeps its own
+		Assert.assertEquals("" + new ArdenTime(1000) + "\n", runCoalescedEvents(Coalescing.COUNT));
+	}
+
+	@Test(timeout = 10000)
+	public void testCoalescingAfterCallWasTaken() throws Exception {
+		CompiledMlm mlm = compileWriteArgument();
+		OutputContext context = new OutputContext();
+		EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> emptyList());
+		engine.setCoalescing(Coalescing.LATEST);
+		context.setEngine(engine);
+		call(engine, mlm, 10);
+		call(engine, mlm, 10);
+		Assert.assertEquals("10\n", runQueuedCalls(engine, context, 1));
+		// the first call is no longer waiting, so a new call runs again
+		call(engine, mlm, 10);
+		Assert.assertEquals("10\n10\n", runQueuedCalls(engine, context, 2));
+	}
+
+	@Test(timeout = 10000)
+	public void testCoalescingIntoFullQueue() throws Exception {
+		CompiledMlm mlm = compileWriteArgument();
+		OutputContext context = new OutputContext();
+		MetricsRegistry metrics = new MetricsRegistry();
+		EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> emptyList(), 1,
+				OverloadPolicy.REJECT, metrics);
+		engine.setCoalescing(Coalescing.COUNT);
+		context.setEngine(engine);
+		call(engine, mlm, 10);
+		// merging needs no space in the queue
+		call(engine, mlm, 10);
+		call(engine, mlm, 20);
+		call(engine, mlm, 20);
+		Assert.assertEquals(1, engine.getQueueSize());
+		Assert.assertEquals(1, getCount(metrics, "arden_engine_merged_calls_total"));
+		Assert.assertEquals(2, getCount(metrics, "arden_engine_rejected_calls_total"));
+		Assert.assertEquals("10\n", runQueuedCalls(engine, context, 1));
+	}
+
+	@Test(timeout = 30000)
+	public void testNoCoalescingIntoRejectedCall() throws Exception {
+		final int producers = 4;
+		final int callsPerProducer = 5000;
+		final CompiledMlm mlm = compileWriteArgument();
+		OutputContext context = new OutputContext();
+		MetricsRegistry metrics = new MetricsRegistry();
+		final EvokeEngine engine = new EvokeEngine(context, Collections.<MedicalLogicModule> emptyList(), 1,
+				OverloadPolicy.REJECT, metrics);
+		engine.setCoalescing(Coalescing.LATEST);
+		context.setEngine(engine);
+		call(engine, mlm, 10);
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			threads[p] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < callsPerProducer; i++) {
+						call(engine, mlm, 20);
+					}
+				}
+			};
+			threads[p].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		// a call merged into a rejected call would be lost
+		Assert.assertEquals(0, getCount(metrics, "arden_engine_merged_calls_total"));
+		Assert.assertEquals(producers * callsPerProducer, getCount(metrics, "arden_engine_rejected_calls_total"));
+	}
+
+	private static long getCount(MetricsRegistry metrics, String name) {
+		return metrics.counter(name, "").get();
+	}
+
+	@Test(timeout = 30000)
+	public void testConcurrentCoalescing() throws Exception {
+		final int producers = 4;
+		final int callsPerProducer = 20000;
+		final Set<Long> runEvents = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		final AtomicInteger runTwice = new AtomicInteger();
+		final ArdenRunnable runnable = new ArdenRunnable() {
+			@Override
+			public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments, Trigger evokingTrigger) {
+				if (!runEvents.add(evokingTrigger.getTriggeringEvent().eventTime)) {
+					runTwice.incrementAndGet();
+				}
+				return null;
+			}
+		};
+		final EvokeEngine engine = new EvokeEngine(new OutputContext(), Collections.<MedicalLogicModule> emptyList());
+		engine.setCoalescing(Coalescing.LATEST);
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		try {
+			Thread[] threads = new Thread[producers];
+			for (int p = 0; p < producers; p++) {
+				final int producer = p;
+				threads[p] = new Thread() {
+					@Override
+					public void run() {
+						// two producers share each key, each event time is used once
+						ArdenValue[] args = new ArdenValue[] { new ArdenNumber(producer % 2) };
+						for (int i = 1; i <= callsPerProducer; i++) {
+							long time = (long) producer * callsPerProducer + i;
+							engine.call(runnable, args, 0, new CallTrigger(new ArdenEvent("lab_result", time, time)),
+									50);
+							if (i % 16 == 0) {
+								// let the engine take calls while others are merged
+								Thread.yield();
+							}
+						}
+					}
+				};
+				threads[p].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			// a call after all others is never lost
+			for (int key = 0; key < 2; key++) {
+				long time = -1 - key;
+				engine.call(runnable, new ArdenValue[] { new ArdenNumber(key) }, 0,
+						new CallTrigger(new ArdenEvent("lab_result", time, time)), 50);
+			}
+			while (!runEvents.contains(-1L) || !runEvents.contains(-2L)) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(0, runTwice.get());
+		} finally {
+			engineThread.interrupt();
+			engineThread.join();
+		}
+	}
+}
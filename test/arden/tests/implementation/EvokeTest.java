@@ -38,6 +38,7 @@ import arden.compiler.CompiledMlm;
 import arden.compiler.Compiler;
 import arden.compiler.CompilerException;
 import arden.runtime.ArdenEvent;
+import arden.runtime.DatabaseQuery;
 import arden.runtime.MedicalLogicModule;
 import arden.runtime.evoke.AfterTrigger;
 import arden.runtime.evoke.CyclicTrigger;
@@ -84,6 +85,41 @@ public class EvokeTest extends ImplementationTest {
 		Assert.assertNull(trigger.getTriggeringEvent());
 	}
 
+	private static class CountingContext extends TestContext {
+		int queries = 0;
+
+		@Override
+		public DatabaseQuery createQuery(MedicalLogicModule mlm, String mapping) {
+			queries++;
+			return super.createQuery(mlm, mapping);
+		}
+	}
+
+	@Test
+	public void testStaticTriggersDoNotRunDataSlot() throws Exception {
+		CountingContext context = new CountingContext();
+
+		MedicalLogicModule mlm = parseEvoke("x := READ {some query}; penicillin_storage := EVENT{penicillin storage}",
+				"penicillin_storage; 3 days after 1992-01-01T00:00:00");
+		Trigger[] triggers = mlm.getTriggers(context);
+		Assert.assertEquals(0, context.queries);
+		Assert.assertEquals(2, triggers.length);
+		Assert.assertTrue(triggers[0].runOnEvent(new ArdenEvent("penicillin storage")));
+		Assert.assertEquals(createDate(1992, 0, 4), triggers[1].getNextRunTime());
+	}
+
+	@Test
+	public void testConditionalEventRunsDataSlot() throws Exception {
+		CountingContext context = new CountingContext();
+
+		MedicalLogicModule mlm = parseEvoke("x := READ {some query}; "
+				+ "IF x IS NULL THEN penicillin_storage := EVENT{penicillin storage}; "
+				+ "ELSE penicillin_storage := EVENT{penicillin order}; ENDIF;", "penicillin_storage");
+		Trigger trigger = mlm.getTriggers(context)[0];
+		Assert.assertEquals(1, context.queries);
+		Assert.assertTrue(trigger.runOnEvent(new ArdenEvent("penicillin storage")));
+	}
+
 	@Test
 	public void testEventVariable() throws Exception {
 		TestContext context = new TestContext();
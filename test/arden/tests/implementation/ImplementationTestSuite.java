@@ -7,7 +7,9 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
 	CliTest.class,
+	CompilationCacheTest.class,
 	ConstantParserTest.class,
+	EvokeEngineTest.class,
 	EvokeTest.class,
 	ExampleEvokeTest.class,
 	ExampleTest.class,
@@ -15,6 +17,12 @@ import org.junit.runners.Suite.SuiteClasses;
 	JDBCQueryTest.class,
 	LoadMlmFromBytecodeTest.class,
 	MetadataTest.class,
+	MetricsTest.class,
+	MlmProfilerTest.class,
+	MlmBundleTest.class,
+	ModuleRegistryTest.class,
+	ModuleReloaderTest.class,
+	PartitionedEngineTest.class,
 	RuntimeTest.class
 })
 public class ImplementationTestSuite {
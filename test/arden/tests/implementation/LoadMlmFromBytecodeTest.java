@@ -5,6 +5,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStreamReader;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 import arden.compiler.CompiledMlm;
@@ -218,4 +219,27 @@ public class LoadMlmFromBytecodeTest extends ImplementationTest {
 		
 		Assert.assertEquals(51, compiledMlm.getUrgency(), 0);
 	}
+
+	@Test
+	public void x33hiddenClass() throws Exception {
+		Assume.assumeTrue(CompiledMlm.isHiddenClassSupported());
+		CompiledMlm.setUseHiddenClasses(true);
+		try {
+			MedicalLogicModule first = compileBytecode("x3.3.mlm");
+			MedicalLogicModule second = compileBytecode("x3.3.mlm");
+			TestContext context = new TestContext();
+			Class<?> firstClass = first.createInstance(context, null, new CallTrigger()).getClass();
+			Class<?> secondClass = second.createInstance(context, null, new CallTrigger()).getClass();
+
+			// hidden classes have no binary name, so MLMs with the same name do not clash
+			Assert.assertTrue(firstClass.getName().startsWith("pen_allergy/"));
+			Assert.assertNotSame(firstClass, secondClass);
+			Assert.assertSame(firstClass.getClassLoader(), secondClass.getClassLoader());
+
+			first.run(context, null, new CallTrigger());
+			Assert.assertEquals("", context.getOutputText());
+		} finally {
+			CompiledMlm.setUseHiddenClasses(false);
+		}
+	}
 }
@@ -27,9 +27,12 @@
 
 package arden.tests.implementation;
 
+import java.io.ByteArrayOutputStream;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import arden.compiler.CompiledMlm;
 import arden.runtime.ExecutionContext;
 import arden.runtime.LibraryMetadata;
 import arden.runtime.MaintenanceMetadata;
@@ -38,6 +41,7 @@ import arden.runtime.MaintenanceMetadata.Validation;
 import arden.runtime.evoke.CallTrigger;
 import arden.runtime.MedicalLogicModule;
 import arden.runtime.MedicalLogicModuleImplementation;
+import arden.runtime.ModuleMetadata;
 
 public class MetadataTest extends ImplementationTest {
 	@Test
@@ -133,4 +137,24 @@ public class MetadataTest extends ImplementationTest {
 
 		Assert.assertEquals(42, impl.getPriority(), 0);
 	}
+
+	@Test
+	public void testMetadataFromClassFile() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		((CompiledMlm) compile("x3.1.mlm")).saveClassFile(bos);
+		ModuleMetadata metadata = ModuleMetadata.fromClassFile(bos.toByteArray());
+
+		MaintenanceMetadata m = metadata.getMaintenance();
+		Assert.assertEquals("Fractional excretion of sodium", m.getTitle());
+		Assert.assertEquals("fractional_na", m.getMlmName());
+		Assert.assertEquals(ArdenVersion.V2, m.getArdenVersion());
+		Assert.assertEquals("Columbia-Presbyterian Medical Center", m.getInstitution());
+		Assert.assertNull(m.getSpecialist());
+		Assert.assertEquals(Validation.TESTING, m.getValidation());
+		Assert.assertEquals(3, metadata.getLibrary().getKeywords().size());
+		Assert.assertEquals("azotemia", metadata.getLibrary().getKeywords().get(2));
+		Assert.assertEquals(50, metadata.getPriority(), 0);
+		Assert.assertEquals(1, metadata.getEvokeEvents().size());
+		Assert.assertEquals("storage of urine electrolytes", metadata.getEvokeEvents().get(0));
+	}
 }
@@ -0,0 +1,158 @@
+package arden.tests.implementation;
+
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.MetricsServer;
+import arden.engine.EvokeEngine;
+import arden.engine.OverloadPolicy;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.metrics.Counter;
+import arden.runtime.metrics.Gauge;
+import arden.runtime.metrics.MetricsRegistry;
+import arden.runtime.profiler.LatencyHistogram;
+
+public class MetricsTest extends ImplementationTest {
+	private static String format(MetricsRegistry registry) throws Exception {
+		StringWriter text = new StringWriter();
+		registry.write(text);
+		return text.toString();
+	}
+
+	@Test
+	public void testCountersWithLabels() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		Counter counter = registry.counter("test_calls_total", "Calls", "kind", "event");
+		Assert.assertSame(counter, registry.counter("test_calls_total", "Calls", "kind", "event"));
+		counter.increment();
+		counter.add(2);
+		registry.counter("test_calls_total", "Calls", "kind", "a \"quoted\"\\name").increment();
+
+		String text = format(registry);
+		Assert.assertTrue(text, text.contains("# HELP test_calls_total Calls\n# TYPE test_calls_total counter\n"));
+		Assert.assertTrue(text, text.contains("test_calls_total{kind=\"event\"} 3\n"));
+		Assert.assertTrue(text, text.contains("test_calls_total{kind=\"a \\\"quoted\\\"\\\\name\"} 1\n"));
+	}
+
+	@Test
+	public void testGaugeAndHistogram() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.gauge("test_queue_depth", "Queue depth", new Gauge() {
+			@Override
+			public double getValue() {
+				return 7;
+			}
+		});
+		LatencyHistogram histogram = registry.histogram("test_duration_seconds", "Duration");
+		histogram.record(500);
+		histogram.record(2000000);
+
+		String text = format(registry);
+		Assert.assertTrue(text, text.contains("test_queue_depth 7\n"));
+		Assert.assertTrue(text, text.contains("# TYPE test_duration_seconds histogram\n"));
+		Assert.assertTrue(text, text.contains("test_duration_seconds_bucket{le=\"1.023E-6\"} 1\n"));
+		Assert.assertTrue(text, text.contains("test_duration_seconds_bucket{le=\"+Inf\"} 2\n"));
+		Assert.assertTrue(text, text.contains("test_duration_seconds_count 2\n"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTypeMismatch() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("test_metric", "Metric");
+		registry.histogram("test_metric", "Metric");
+	}
+
+	@Test(timeout = 10000)
+	public void testMetricsServer() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("test_requests_total", "Requests").increment();
+		MetricsServer server = new MetricsServer(registry, false, 0);
+		server.startServer();
+		try {
+			URL url = new URL("http://localhost:" + server.getPort() + "/metrics");
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			Assert.assertEquals(200, connection.getResponseCode());
+			Assert.assertTrue(connection.getContentType().startsWith("text/plain"));
+			InputStream in = connection.getInputStream();
+			Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A");
+			String text = scanner.next();
+			scanner.close();
+			Assert.assertTrue(text, text.contains("test_requests_total 1\n"));
+		} finally {
+			server.stopServer();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testMetricsServerBindsToLoopback() throws Exception {
+		MetricsServer server = new MetricsServer(new MetricsRegistry(), false, 0);
+		server.startServer();
+		try {
+			Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			socket.close();
+			for (InetAddress address : getNonLoopbackAddresses()) {
+				try {
+					socket = new Socket(address, server.getPort());
+					socket.close();
+					Assert.fail("Connected to " + address);
+				} catch (ConnectException e) {
+					// expected
+				}
+			}
+		} finally {
+			server.stopServer();
+		}
+	}
+
+	private static List<InetAddress> getNonLoopbackAddresses() throws SocketException {
+		List<InetAddress> addresses = new ArrayList<InetAddress>();
+		for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+			for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+				if (!address.isLoopbackAddress() && address instanceof Inet4Address) {
+					addresses.add(address);
+				}
+			}
+		}
+		return addresses;
+	}
+
+	@Test(timeout = 10000)
+	public void testEngineGaugesWhileRunning() throws Exception {
+		MetricsRegistry first = new MetricsRegistry();
+		MetricsRegistry second = new MetricsRegistry();
+		EvokeEngine engine = new EvokeEngine(new TestContext(), Collections.<MedicalLogicModule> emptyList(), 0,
+				OverloadPolicy.BLOCK, first);
+		new EvokeEngine(new TestContext(), Collections.<MedicalLogicModule> emptyList(), 0, OverloadPolicy.BLOCK,
+				second);
+		Assert.assertFalse(format(first).contains("arden_engine_queue_depth 0\n"));
+
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		while (!format(first).contains("arden_engine_queue_depth 0\n")) {
+			Thread.sleep(10);
+		}
+		// the other engine does not replace the gauges in its own registry
+		Assert.assertFalse(format(second).contains("arden_engine_queue_depth 0\n"));
+
+		engineThread.interrupt();
+		engineThread.join();
+		String text = format(first);
+		Assert.assertFalse(text, text.contains("arden_engine_queue_depth 0\n"));
+		Assert.assertFalse(text, text.contains("arden_engine_mlms 0\n"));
+	}
+}
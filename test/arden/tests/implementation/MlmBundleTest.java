@@ -0,0 +1,113 @@
+package arden.tests.implementation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.MlmBundle;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.evoke.CallTrigger;
+import arden.runtime.evoke.Trigger;
+
+public class MlmBundleTest extends ImplementationTest {
+	private static byte[] getBytes(CompiledMlm mlm) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		mlm.saveClassFile(bos);
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testWriteAndOpenBundle() throws Exception {
+		CompiledMlm first = (CompiledMlm) compile("x3.1.mlm");
+		CompiledMlm second = (CompiledMlm) compile("x3.3.mlm");
+
+		File file = File.createTempFile("test", MlmBundle.FILE_EXTENSION);
+		try {
+			MlmBundle.write(file, Arrays.asList(first, second));
+			MlmBundle bundle = MlmBundle.open(file);
+
+			List<MlmBundle.Entry> entries = bundle.getEntries();
+			Assert.assertEquals(2, entries.size());
+			Assert.assertEquals("fractional_na", entries.get(0).getName());
+			Assert.assertEquals("pen_allergy", entries.get(1).getName());
+			Assert.assertEquals("Columbia-Presbyterian Medical Center", entries.get(0).getInstitution());
+			Assert.assertEquals("1.00", entries.get(0).getVersion());
+			Assert.assertEquals("TESTING", entries.get(0).getValidation());
+
+			Assert.assertArrayEquals(getBytes(first), getBytes(entries.get(0).getModule()));
+			Assert.assertArrayEquals(getBytes(second), getBytes(entries.get(1).getModule()));
+
+			List<MedicalLogicModule> modules = bundle.getModules();
+			Assert.assertEquals(2, modules.size());
+			Assert.assertEquals("pen_allergy", modules.get(1).getName());
+			Assert.assertEquals("Columbia-Presbyterian Medical Center", modules.get(1).getMaintenance().getInstitution());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testRunModuleFromBundle() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		MlmBundle.write(bos, Arrays.asList((CompiledMlm) compile("x3.3.mlm")));
+		MlmBundle bundle = MlmBundle.read(ByteBuffer.wrap(bos.toByteArray()));
+
+		MedicalLogicModule mlm = bundle.getModules().get(0);
+		TestContext context = new TestContext();
+		mlm.run(context, null, new CallTrigger());
+		Assert.assertEquals("", context.getOutputText());
+	}
+
+	@Test
+	public void testEvokedModuleIsDefinedWhenTriggered() throws Exception {
+		CompiledMlm evoked = new MlmSource("evoked_mlm").data("lab := event {lab_result}").evoke("lab")
+				.action("write \"run\"").compile();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		MlmBundle.write(bos, Arrays.asList(evoked));
+		CompiledMlm mlm = MlmBundle.read(ByteBuffer.wrap(bos.toByteArray())).getEntries().get(0).getModule();
+
+		TestContext context = new TestContext();
+		Trigger[] triggers = mlm.getTriggers(context);
+		Assert.assertEquals(1, triggers.length);
+		// only the triggers stay resident
+		Assert.assertFalse(mlm.isLoaded());
+		Assert.assertSame(triggers, mlm.getTriggers(context));
+
+		mlm.run(context, null, triggers[0]);
+		Assert.assertTrue(mlm.isLoaded());
+		Assert.assertEquals("run\n", context.getOutputText());
+	}
+
+	@Test(expected = java.io.IOException.class)
+	public void testDamagedBundle() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		MlmBundle.write(bos, Arrays.asList((CompiledMlm) compile("x3.1.mlm")));
+		byte[] data = Arrays.copyOf(bos.toByteArray(), 30);
+		MlmBundle.read(ByteBuffer.wrap(data));
+	}
+
+	@Test(expected = java.io.IOException.class)
+	public void testInvalidCount() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		MlmBundle.write(bos, Arrays.asList((CompiledMlm) compile("x3.1.mlm")));
+		ByteBuffer buffer = ByteBuffer.wrap(bos.toByteArray());
+		// must not allocate the index for this many MLMs
+		buffer.putInt(8, Integer.MAX_VALUE);
+		MlmBundle.read(buffer);
+	}
+
+	@Test(expected = java.io.IOException.class)
+	public void testClassFileOutsideOfBundle() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		MlmBundle.write(bos, Arrays.asList((CompiledMlm) compile("x3.1.mlm")));
+		byte[] data = bos.toByteArray();
+		// drop the end of the class file, the index stays intact
+		MlmBundle.read(ByteBuffer.wrap(Arrays.copyOf(data, data.length - 10)));
+	}
+}
@@ -0,0 +1,117 @@
+package arden.tests.implementation;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.compiler.CompiledMlm;
+import arden.runtime.evoke.CallTrigger;
+import arden.runtime.profiler.JfrEvents;
+import arden.runtime.profiler.MlmProfile;
+import arden.runtime.profiler.MlmProfiler;
+
+public class MlmProfilerTest extends ImplementationTest {
+	private static CompiledMlm compile(String name, String data, String action) throws Exception {
+		return new MlmSource(name).data(data).action(action).compile();
+	}
+
+	@After
+	public void disableProfiler() {
+		MlmProfiler.setEnabled(false);
+		MlmProfiler.reset();
+	}
+
+	@Test
+	public void testDisabledProfilerRecordsNothing() throws Exception {
+		CompiledMlm mlm = compile("not_profiled", "x := read {x}", "write \"a\"");
+		mlm.run(new TestContext(), null, new CallTrigger());
+		Assert.assertTrue(MlmProfiler.getSnapshot().isEmpty());
+	}
+
+	@Test
+	public void testSlotsAreCounted() throws Exception {
+		MlmProfiler.setEnabled(true);
+		CompiledMlm mlm = compile("profiled", "x := read {x}; y := read last {y}", "write \"a\"; write \"b\"");
+		TestContext context = new TestContext();
+		mlm.run(context, null, new CallTrigger());
+		mlm.run(context, null, new CallTrigger());
+		Assert.assertEquals("a\nb\na\nb\n", context.getOutputText());
+
+		List<MlmProfile> snapshot = MlmProfiler.getSnapshot();
+		Assert.assertEquals(1, snapshot.size());
+		MlmProfile profile = snapshot.get(0);
+		Assert.assertEquals("profiled", profile.getName());
+		Assert.assertEquals(2, profile.getRuns());
+		Assert.assertEquals(4, profile.getHistogram(MlmProfile.Part.READ).getCount());
+		Assert.assertEquals(2, profile.getHistogram(MlmProfile.Part.LOGIC).getCount());
+		Assert.assertEquals(2, profile.getHistogram(MlmProfile.Part.ACTION).getCount());
+		Assert.assertEquals(4, profile.getHistogram(MlmProfile.Part.WRITE).getCount());
+		Assert.assertTrue(profile.getHistogram(MlmProfile.Part.DATA).getPercentile(0.99) <= profile
+				.getHistogram(MlmProfile.Part.DATA).getMax());
+	}
+
+	@Test
+	public void testVersionsAreProfiledSeparately() throws Exception {
+		MlmProfiler.setEnabled(true);
+		CompiledMlm oldVersion = new MlmSource("versioned").version("1.00").compile();
+		CompiledMlm newVersion = new MlmSource("versioned").version("2.00").compile();
+		CompiledMlm otherInstitution = new MlmSource("versioned").version("2.00").institution("other").compile();
+		TestContext context = new TestContext();
+		oldVersion.run(context, null, new CallTrigger());
+		newVersion.run(context, null, new CallTrigger());
+		newVersion.run(context, null, new CallTrigger());
+		otherInstitution.run(context, null, new CallTrigger());
+
+		List<MlmProfile> snapshot = MlmProfiler.getSnapshot();
+		Assert.assertEquals(3, snapshot.size());
+		Set<String> runs = new HashSet<String>();
+		for (MlmProfile profile : snapshot) {
+			runs.add(profile.getName() + " " + profile.getInstitution() + " " + profile.getVersion() + " "
+					+ profile.getRuns());
+		}
+		Assert.assertTrue(runs.toString(), runs.contains("versioned test institution 1.00 1"));
+		Assert.assertTrue(runs.toString(), runs.contains("versioned test institution 2.00 2"));
+		Assert.assertTrue(runs.toString(), runs.contains("versioned other 2.00 1"));
+	}
+
+	@Test
+	public void testFlightRecorderEvents() throws Exception {
+		CompiledMlm mlm = compile("recorded", "x := read {x}", "write \"a\"");
+		File file = File.createTempFile("arden", ".jfr");
+		try {
+			Recording recording = new Recording();
+			recording.enable("arden.MlmExecution").withThreshold(java.time.Duration.ZERO);
+			recording.enable("arden.Query").withThreshold(java.time.Duration.ZERO);
+			recording.start();
+			Assert.assertTrue(JfrEvents.isRecording());
+			mlm.run(new TestContext(), null, new CallTrigger());
+			recording.stop();
+			Assert.assertFalse(JfrEvents.isRecording());
+			recording.dump(file.toPath());
+			recording.close();
+
+			Set<String> events = new HashSet<String>();
+			for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+				String type = event.getEventType().getName();
+				if (type.equals("arden.MlmExecution")) {
+					events.add(type + " " + event.getString("mlmName") + " " + event.getBoolean("concluded"));
+				} else if (type.equals("arden.Query")) {
+					events.add(type + " " + event.getString("mapping") + " " + event.getInt("rows"));
+				}
+			}
+			Assert.assertTrue(events.toString(), events.contains("arden.MlmExecution recorded true"));
+			Assert.assertTrue(events.toString(), events.contains("arden.Query x 0"));
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package arden.tests.implementation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.compiler.CompilerException;
+
+/**
+ * Creates the source of a test MLM from MlmTemplate.mlm, e.g.
+ * <code>new MlmSource("my_mlm").version("2.00").action("write \"x\"").compile()</code>.
+ */
+final class MlmSource {
+	private static String template;
+
+	private final String name;
+	private String version = "1.00";
+	private String institution = "test institution";
+	private String validation = "testing";
+	private String data = "";
+	private String evoke = "";
+	private String logic = "conclude true;";
+	private String action = "";
+
+	MlmSource(String name) {
+		this.name = name;
+	}
+
+	MlmSource version(String version) {
+		this.version = version;
+		return this;
+	}
+
+	MlmSource institution(String institution) {
+		this.institution = institution;
+		return this;
+	}
+
+	MlmSource validation(String validation) {
+		this.validation = validation;
+		return this;
+	}
+
+	MlmSource data(String data) {
+		this.data = data;
+		return this;
+	}
+
+	MlmSource evoke(String evoke) {
+		this.evoke = evoke;
+		return this;
+	}
+
+	MlmSource logic(String logic) {
+		this.logic = logic;
+		return this;
+	}
+
+	MlmSource action(String action) {
+		this.action = action;
+		return this;
+	}
+
+	CompiledMlm compile() throws CompilerException, IOException {
+		return new Compiler().compileMlm(new StringReader(toString()));
+	}
+
+	private static synchronized String getTemplate() {
+		if (template == null) {
+			try {
+				InputStream s = MlmSource.class.getResourceAsStream("MlmTemplate.mlm");
+				template = ImplementationTest.inputStreamToString(s);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return template;
+	}
+
+	@Override
+	public String toString() {
+		return getTemplate().replace("$NAME", name).replace("$VERSION", version).replace("$INSTITUTION", institution)
+				.replace("$VALIDATION", validation).replace("$DATA", data).replace("$EVOKE", evoke)
+				.replace("$LOGIC", logic).replace("$ACTION", action);
+	}
+}
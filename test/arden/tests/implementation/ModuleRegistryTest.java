@@ -0,0 +1,162 @@
+package arden.tests.implementation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.ModuleClassCache;
+import arden.runtime.MaintenanceMetadata.Validation;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.ModuleRegistry;
+import arden.runtime.evoke.CallTrigger;
+
+public class ModuleRegistryTest extends ImplementationTest {
+	private File directory;
+	private ModuleRegistry registry;
+
+	private void writeMlm(String fileName, String text) throws Exception {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, fileName)), "UTF-8");
+		try {
+			writer.write(text);
+		} finally {
+			writer.close();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("registry").toFile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (registry != null) {
+			registry.close();
+		}
+		CompiledMlm.setClassCache(null);
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testLookupIsCached() throws Exception {
+		writeMlm("first_mlm.mlm", new MlmSource("first_mlm").toString());
+		registry = new ModuleRegistry(new URL[] { directory.toURI().toURL() });
+
+		MedicalLogicModule mlm = registry.findModule("first_mlm", "Test Institution");
+		Assert.assertNotNull(mlm);
+		Assert.assertSame(mlm, registry.findModule("FIRST_MLM", "test institution "));
+		Assert.assertNull(registry.findModule("first_mlm", "other institution"));
+		Assert.assertNull(registry.findModule("missing_mlm", "test institution"));
+	}
+
+	@Test
+	public void testBestValidationIsSelected() throws Exception {
+		writeMlm("first_mlm.mlm", new MlmSource("first_mlm").toString());
+		File subdirectory = new File(directory, "production");
+		subdirectory.mkdir();
+		writeMlm("production/first_mlm.mlm", new MlmSource("first_mlm").validation("production").toString());
+		registry = new ModuleRegistry(new URL[] { directory.toURI().toURL(), subdirectory.toURI().toURL() });
+		try {
+			MedicalLogicModule mlm = registry.findModule("first_mlm", "test institution");
+			Assert.assertEquals(Validation.PRODUCTION, mlm.getMaintenance().getValidation());
+		} finally {
+			new File(subdirectory, "first_mlm.mlm").delete();
+			subdirectory.delete();
+		}
+	}
+
+	@Test
+	public void testChangedFileInvalidates() throws Exception {
+		writeMlm("first_mlm.mlm", new MlmSource("first_mlm").toString());
+		registry = new ModuleRegistry(new URL[] { directory.toURI().toURL() });
+		MedicalLogicModule mlm = registry.findModule("first_mlm", "test institution");
+		Assert.assertEquals("1.00", mlm.getMaintenance().getVersion());
+
+		writeMlm("first_mlm.mlm", new MlmSource("first_mlm").version("2.00").toString());
+		// file system notifications are delivered asynchronously
+		long deadline = System.currentTimeMillis() + 10000;
+		while (registry.findModule("first_mlm", "test institution") == mlm
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		MedicalLogicModule changedMlm = registry.findModule("first_mlm", "test institution");
+		Assert.assertEquals("2.00", changedMlm.getMaintenance().getVersion());
+
+		// explicit invalidation
+		registry.invalidate();
+		Assert.assertNotSame(changedMlm, registry.findModule("first_mlm", "test institution"));
+	}
+
+	private void writeJar(String fileName, String entryName, String text) throws Exception {
+		// write a new file, like a build replacing the jar
+		File temp = new File(directory, fileName + ".tmp");
+		JarOutputStream jar = new JarOutputStream(new FileOutputStream(temp));
+		try {
+			jar.putNextEntry(new JarEntry(entryName));
+			jar.write(text.getBytes("UTF-8"));
+			jar.closeEntry();
+		} finally {
+			jar.close();
+		}
+		Files.move(temp.toPath(), new File(directory, fileName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@Test
+	public void testReplacedJarIsReadAgain() throws Exception {
+		writeJar("mlms.jar", "first_mlm.mlm", new MlmSource("first_mlm").toString());
+		registry = new ModuleRegistry(new URL[] { new File(directory, "mlms.jar").toURI().toURL() });
+		Assert.assertEquals("1.00", registry.findModule("first_mlm", "test institution").getMaintenance()
+				.getVersion());
+
+		writeJar("mlms.jar", "first_mlm.mlm", new MlmSource("first_mlm").version("2.00").toString());
+		registry.invalidate();
+		Assert.assertEquals("2.00", registry.findModule("first_mlm", "test institution").getMaintenance()
+				.getVersion());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedClassIsUnloaded() throws Exception {
+		writeMlm("first_mlm.mlm", new MlmSource("first_mlm").toString());
+		ModuleClassCache classCache = new ModuleClassCache(1);
+		CompiledMlm.setClassCache(classCache);
+		registry = new ModuleRegistry(new URL[] { directory.toURI().toURL() });
+
+		CompiledMlm first = (CompiledMlm) registry.findModule("first_mlm", "test institution");
+		first.run(new TestContext(), null, new CallTrigger());
+		first.run(new TestContext(), null, new CallTrigger());
+		Assert.assertTrue(first.isLoaded());
+		Assert.assertEquals(1, classCache.getHits());
+		Assert.assertEquals(1, classCache.getMisses());
+
+		// MLMs which are not found by the registry (e.g. run by the engine) count as well
+		CompiledMlm second = new MlmSource("second_mlm").compile();
+		second.run(new TestContext(), null, new CallTrigger());
+		Assert.assertFalse(first.isLoaded());
+		Assert.assertTrue(second.isLoaded());
+		Assert.assertEquals(1, classCache.getEvictions());
+		Assert.assertEquals(1, classCache.size());
+
+		// unloaded MLM is defined again from its bytes
+		Assert.assertSame(first, registry.findModule("first_mlm", "test institution"));
+		first.run(new TestContext(), null, new CallTrigger());
+		Assert.assertTrue(first.isLoaded());
+		Assert.assertFalse(second.isLoaded());
+		Assert.assertEquals(3, classCache.getMisses());
+		Assert.assertEquals(2, classCache.getEvictions());
+	}
+}
@@ -0,0 +1,82 @@
+package arden.tests.implementation;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import arden.ModuleReloader;
+
+public class ModuleReloaderTest extends ImplementationTest {
+	private static final long QUIET_MILLIS = 300;
+
+	private File directory;
+	private File file;
+	private ModuleReloader reloader;
+	private final List<File> reloaded = Collections.synchronizedList(new ArrayList<File>());
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("reloader").toFile();
+		file = new File(directory, "reloaded.mlm");
+		write(1);
+		List<File> files = new ArrayList<File>();
+		files.add(file);
+		reloader = new ModuleReloader(null, null, null, files, false, QUIET_MILLIS) {
+			@Override
+			protected void reload(File changed) {
+				reloaded.add(changed);
+			}
+		};
+		reloader.startReloader();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		reloader.stopReloader();
+		file.delete();
+		directory.delete();
+	}
+
+	private void write(int version) throws Exception {
+		String source = new MlmSource("reloaded").version(version + ".00").toString();
+		Files.write(file.toPath(), source.getBytes("UTF-8"));
+	}
+
+	private void awaitReloads(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (reloaded.size() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		// give further (wrong) reloads time to happen
+		Thread.sleep(2 * QUIET_MILLIS);
+	}
+
+	@Test
+	public void testChangesWithinQuietPeriodAreMerged() throws Exception {
+		for (int version = 2; version <= 5; version++) {
+			write(version);
+			Thread.sleep(QUIET_MILLIS / 10);
+		}
+		awaitReloads(1);
+		Assert.assertEquals(1, reloaded.size());
+		Assert.assertEquals(file, reloaded.get(0));
+	}
+
+	@Test
+	public void testLaterChangeIsReloadedAgain() throws Exception {
+		write(2);
+		awaitReloads(1);
+		Assert.assertEquals(1, reloaded.size());
+
+		write(3);
+		awaitReloads(2);
+		Assert.assertEquals(2, reloaded.size());
+	}
+}
@@ -0,0 +1,314 @@
+package arden.tests.implementation;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.compiler.CompiledMlm;
+import arden.engine.PartitionedEngine;
+import arden.engine.OverloadPolicy;
+import arden.engine.Partitioner;
+import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenRunnable;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenValue;
+import arden.runtime.BaseExecutionContext;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.evoke.CallTrigger;
+import arden.runtime.evoke.Trigger;
+
+public class PartitionedEngineTest extends ImplementationTest {
+	private static class OutputContext extends BaseExecutionContext {
+		private final StringBuffer output = new StringBuffer();
+
+		OutputContext() {
+			super(new URL[0]);
+		}
+
+		@Override
+		public void write(ArdenValue message, ArdenValue destination, double urgency) {
+			output.append(((ArdenString) message).value).append('\n');
+		}
+	}
+
+	private static ArdenEvent patientEvent(String name, long patient) {
+		// the time of the event is the patient as well, so MLMs can write it
+		return new ArdenEvent(name, patient * 1000, patient * 1000, "patient " + patient);
+	}
+
+	private static long getPatient(Trigger trigger) {
+		return Long.parseLong(trigger.getTriggeringEvent().partitionKey.substring("patient ".length()));
+	}
+
+	private static CompiledMlm compileEventMlm() throws Exception {
+		return new MlmSource("lab_mlm").data("lab := event {lab_result}").evoke("lab").action("write \"run\"")
+				.compile();
+	}
+
+	@Test
+	public void testSameKeyUsesSameShard() throws Exception {
+		PartitionedEngine engine = new PartitionedEngine(new OutputContext(),
+				Collections.<MedicalLogicModule> emptyList(), 4, Partitioner.PARTITION_KEY);
+		Assert.assertEquals(4, engine.getShardCount());
+		for (long patient = 0; patient < 20; patient++) {
+			int shard = engine.getShardIndex(patientEvent("a", patient));
+			Assert.assertTrue(shard >= 0 && shard < 4);
+			Assert.assertEquals(shard, engine.getShardIndex(new ArdenEvent("b", 1000, 1000, "patient " + patient)));
+		}
+		Assert.assertNotEquals(engine.getShardIndex(patientEvent("a", 1)),
+				engine.getShardIndex(patientEvent("a", 2)));
+		// events without a partition key are partitioned by their name
+		Assert.assertEquals(engine.getShardIndex(new ArdenEvent("A", 1)), engine.getShardIndex(new ArdenEvent("a", 2)));
+	}
+
+	@Test(timeout = 30000)
+	public void testCallsWithSameKeyRunInOrderOnOneThread() throws Exception {
+		final int patients = 8;
+		final int callsPerPatient = 500;
+		final Map<Long, String> threads = new ConcurrentHashMap<Long, String>();
+		final int[] lastRun = new int[patients];
+		final AtomicInteger runs = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+		ArdenRunnable runnable = new ArdenRunnable() {
+			@Override
+			public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments, Trigger evokingTrigger) {
+				long patient = getPatient(evokingTrigger);
+				int sequence = (int) ((ArdenNumber) arguments[0]).value;
+				String thread = Thread.currentThread().getName();
+				String previous = threads.put(patient, thread);
+				if ((previous != null && !previous.equals(thread)) || sequence != lastRun[(int) patient] + 1) {
+					errors.incrementAndGet();
+				}
+				lastRun[(int) patient] = sequence;
+				runs.incrementAndGet();
+				return null;
+			}
+		};
+
+		PartitionedEngine engine = new PartitionedEngine(new OutputContext(),
+				Collections.<MedicalLogicModule> emptyList(), 4, Partitioner.PARTITION_KEY);
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		try {
+			for (int i = 1; i <= callsPerPatient; i++) {
+				for (long patient = 0; patient < patients; patient++) {
+					Trigger trigger = new CallTrigger(patientEvent("lab_result", patient));
+					engine.call(runnable, new ArdenValue[] { new ArdenNumber(i) }, 0, trigger, 50);
+				}
+			}
+			while (runs.get() < patients * callsPerPatient) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(0, errors.get());
+			Assert.assertEquals(patients, threads.size());
+			// the patients are spread over the shards
+			Assert.assertNotEquals(threads.get(1L), threads.get(2L));
+		} finally {
+			engineThread.interrupt();
+			engineThread.join();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testEventsTriggerMlmOnTheirShard() throws Exception {
+		CompiledMlm mlm = compileEventMlm();
+		OutputContext context = new OutputContext();
+		PartitionedEngine engine = new PartitionedEngine(context, Collections.<MedicalLogicModule> singletonList(mlm),
+				2, Partitioner.PARTITION_KEY);
+		context.setEngine(engine);
+		Assert.assertEquals(Collections.singletonList(mlm), engine.getModules());
+		Assert.assertArrayEquals(new MedicalLogicModule[] { mlm },
+				engine.findModules(patientEvent("lab_result", 1)));
+
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		try {
+			engine.call(patientEvent("lab_result", 1), 0, 50);
+			engine.call(patientEvent("lab_result", 2), 0, 50);
+			engine.call(patientEvent("other_event", 3), 0, 50);
+			while (context.output.length() < "run\nrun\n".length()) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(50);
+			Assert.assertEquals("run\nrun\n", context.output.toString());
+		} finally {
+			engineThread.interrupt();
+			engineThread.join();
+		}
+	}
+
+	/** Records on which thread the MLMs write for each patient (event time). */
+	private static class ThreadContext extends BaseExecutionContext {
+		private final Map<String, String> threads = new ConcurrentHashMap<String, String>();
+		private final AtomicInteger errors = new AtomicInteger();
+		private final AtomicInteger writes = new AtomicInteger();
+
+		ThreadContext() {
+			super(new URL[0]);
+		}
+
+		@Override
+		public void write(ArdenValue message, ArdenValue destination, double urgency) {
+			String patient = ((ArdenString) message).value;
+			String thread = Thread.currentThread().getName();
+			String previous = threads.put(patient, thread);
+			if (previous != null && !previous.equals(thread)) {
+				errors.incrementAndGet();
+			}
+			writes.incrementAndGet();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testEventsSentByMlmStayInPartition() throws Exception {
+		CompiledMlm first = new MlmSource("first_mlm").data("lab := event {lab_result}; next := event {next_event}")
+				.evoke("lab").action("write \"\" || eventtime; call next").compile();
+		CompiledMlm second = new MlmSource("second_mlm").data("next := event {next_event}").evoke("next")
+				.action("write \"\" || eventtime").compile();
+		ThreadContext context = new ThreadContext();
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		mlms.add(first);
+		mlms.add(second);
+		PartitionedEngine engine = new PartitionedEngine(context, mlms, 4, Partitioner.PARTITION_KEY);
+		context.setEngine(engine);
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		try {
+			for (long patient = 0; patient < 8; patient++) {
+				engine.call(patientEvent("lab_result", patient), 0, 50);
+			}
+			while (context.writes.get() < 16) {
+				Thread.sleep(10);
+			}
+			// without its partition key, next_event would go to the shard of its name
+			Assert.assertEquals(0, context.errors.get());
+		} finally {
+			engineThread.interrupt();
+			engineThread.join();
+		}
+	}
+
+	/** Counts the writes of the MLMs for each patient (event time). */
+	private static class CountingContext extends BaseExecutionContext {
+		private final Map<String, AtomicInteger> writes = new ConcurrentHashMap<String, AtomicInteger>();
+		private final AtomicInteger total = new AtomicInteger();
+
+		CountingContext() {
+			super(new URL[0]);
+		}
+
+		@Override
+		public void write(ArdenValue message, ArdenValue destination, double urgency) {
+			String patient = ((ArdenString) message).value;
+			AtomicInteger count = writes.get(patient);
+			if (count == null) {
+				writes.putIfAbsent(patient, new AtomicInteger());
+				count = writes.get(patient);
+			}
+			count.incrementAndGet();
+			total.incrementAndGet();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testShardsShareContextAndMlms() throws Exception {
+		final int patients = 32;
+		final int eventsPerPatient = 20;
+		// both MLMs are loaded lazily by whichever shard runs them first
+		CompiledMlm first = new MlmSource("first_mlm").data("lab := event {lab_result}").evoke("lab")
+				.action("write \"\" || eventtime").compile();
+		CompiledMlm second = new MlmSource("second_mlm").data("lab := event {lab_result}").evoke("lab")
+				.action("write \"\" || eventtime").compile();
+		CountingContext context = new CountingContext();
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		mlms.add(first);
+		mlms.add(second);
+		PartitionedEngine engine = new PartitionedEngine(context, mlms, 4, Partitioner.PARTITION_KEY);
+		context.setEngine(engine);
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		try {
+			for (int i = 0; i < eventsPerPatient; i++) {
+				for (long patient = 0; patient < patients; patient++) {
+					engine.call(patientEvent("lab_result", patient), 0, 50);
+				}
+			}
+			while (context.total.get() < 2 * patients * eventsPerPatient) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(50);
+			Assert.assertEquals(2 * patients * eventsPerPatient, context.total.get());
+			Assert.assertEquals(patients, context.writes.size());
+			for (AtomicInteger count : context.writes.values()) {
+				Assert.assertEquals(2 * eventsPerPatient, count.get());
+			}
+		} finally {
+			engineThread.interrupt();
+			engineThread.join();
+		}
+	}
+
+	@Test
+	public void testReplaceModuleOnAllShards() throws Exception {
+		CompiledMlm oldVersion = compileEventMlm();
+		CompiledMlm newVersion = compileEventMlm();
+		PartitionedEngine engine = new PartitionedEngine(new OutputContext(),
+				Collections.<MedicalLogicModule> singletonList(oldVersion), 3, Partitioner.EVENT_NAME);
+		Assert.assertSame(oldVersion, engine.replaceModule(newVersion));
+		Assert.assertEquals(Collections.singletonList(newVersion), engine.getModules());
+	}
+
+	@Test(timeout = 10000)
+	public void testFullShardsCallingEachOtherDoNotDeadlock() throws Exception {
+		final int depth = 4;
+		final AtomicInteger runs = new AtomicInteger();
+		// each shard can hold one waiting call
+		final PartitionedEngine engine = new PartitionedEngine(new OutputContext(),
+				Collections.<MedicalLogicModule> emptyList(), 2, Partitioner.PARTITION_KEY, 1, OverloadPolicy.BLOCK);
+		Assert.assertNotEquals(engine.getShardIndex(patientEvent("a", 1)),
+				engine.getShardIndex(patientEvent("a", 2)));
+		ArdenRunnable runnable = new ArdenRunnable() {
+			@Override
+			public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments, Trigger evokingTrigger) {
+				runs.incrementAndGet();
+				int remaining = (int) ((ArdenNumber) arguments[0]).value;
+				if (remaining > 0) {
+					// call the other shard more often than its queue can hold
+					long otherPatient = 3 - getPatient(evokingTrigger);
+					for (int i = 0; i < 3; i++) {
+						engine.call(this, new ArdenValue[] { new ArdenNumber(remaining - 1) }, 0,
+								new CallTrigger(patientEvent("a", otherPatient)), 50);
+					}
+				}
+				return null;
+			}
+		};
+		for (long patient = 1; patient <= 2; patient++) {
+			engine.call(runnable, new ArdenValue[] { new ArdenNumber(depth) }, 0,
+					new CallTrigger(patientEvent("a", patient)), 50);
+		}
+
+		Thread engineThread = new Thread(engine);
+		engineThread.start();
+		try {
+			// 1 + 3 + 9 + 27 + 81 runs for each patient
+			while (runs.get() < 2 * 121) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(50);
+			Assert.assertEquals(2 * 121, runs.get());
+		} finally {
+			engineThread.interrupt();
+			engineThread.join();
+		}
+	}
+}
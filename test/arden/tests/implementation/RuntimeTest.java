@@ -5,9 +5,15 @@ import java.util.Comparator;
 import org.junit.Assert;
 import org.junit.Test;
 
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenNull;
 import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenObject;
 import arden.runtime.ArdenString;
 import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.ObjectMemberCache;
+import arden.runtime.ObjectType;
 
 public class RuntimeTest {
 	
@@ -30,4 +36,25 @@ public class RuntimeTest {
 		Assert.assertTrue(c.compare(t2, null) < 0);
 		Assert.assertTrue(c.compare(null, t2) > 0);
 	}
+
+	@Test
+	public void testObjectMemberCache() throws Exception {
+		ObjectType typeA = new ObjectType("A", new String[] { "x", "Name" });
+		ObjectType typeB = new ObjectType("B", new String[] { "name" });
+		ArdenObject a = new ArdenObject(typeA);
+		ArdenObject b = new ArdenObject(typeB);
+		ObjectMemberCache cache = new ObjectMemberCache("NAME");
+		cache.set(a, new ArdenString("a"));
+		cache.set(b, new ArdenString("b"));
+		Assert.assertEquals(new ArdenString("a"), a.fields[1]);
+		Assert.assertEquals(new ArdenString("b"), b.fields[0]);
+		// alternate between types to replace the cached entry
+		Assert.assertEquals(new ArdenString("a"), cache.get(a));
+		Assert.assertEquals(new ArdenString("b"), cache.get(b));
+		Assert.assertEquals(new ArdenList(new ArdenValue[] { new ArdenString("b"), new ArdenString("a"),
+				ArdenNull.INSTANCE }), cache.get(new ArdenList(new ArdenValue[] { b, a, ArdenNumber.ZERO })));
+		Assert.assertEquals(ArdenNull.INSTANCE, new ObjectMemberCache("Y").get(a));
+		Assert.assertEquals(-1, typeA.getFieldIndex("Y"));
+		Assert.assertEquals(1, typeA.getFieldIndex("NAME"));
+	}
 }
@@ -53,6 +53,25 @@ public class AggregationOperatorsTest extends SpecificationTest {
 		assertEvaluatesToWithData(data, "TIME AVERAGE (x,z)", "NULL");
 	}
 
+	@Test
+	public void testAggregationOfWhere() throws Exception {
+		assertEvaluatesTo("COUNT ((4,7,9,2) WHERE IT > 5)", "2");
+		assertEvaluatesTo("COUNT ((4,7,9,2) WHERE IT > 10)", "0");
+		assertEvaluatesTo("COUNT ((1,2) WHERE (TRUE,FALSE,TRUE))", "1");
+		assertEvaluatesTo("COUNT (3 WHERE (TRUE,FALSE,TRUE))", "2");
+		assertEvaluatesTo("SUM ((4,7,9,2) WHERE IT > 5)", "16");
+		assertEvaluatesTo("SUM ((4,7) WHERE IT > 10)", "0");
+		assertEvaluatesTo("AVERAGE ((4,7,9,2) WHERE IT > 5)", "8");
+		assertEvaluatesTo("AVG ((4,7,9,2) WHERE IT > 10)", "NULL");
+		assertEvaluatesTo("AVERAGE ((2 days, \"x\", 4 days) WHERE IT IS DURATION) = 3 days", "TRUE");
+		assertEvaluatesTo("AVERAGE ((4,\"x\") WHERE TRUE)", "NULL");
+
+		String data = createData();
+		assertEvaluatesToWithData(data, "AVERAGE ((u,x,y,z) WHERE IT OCCURRED AFTER 1990-01-02T00:00:00)", "3.5");
+		assertEvaluatesToWithData(data, "TIME AVERAGE ((x,y,z) WHERE IT > 2)", "1990-01-01T00:00:00");
+		assertEvaluatesToWithData(data, "TIME AVERAGE ((x,y,z) WHERE IT > 1)", "NULL");
+	}
+
 	@Test
 	public void testMedian() throws Exception {
 		assertEvaluatesTo("MEDIAN (12,17,13)", "13");
@@ -221,6 +240,9 @@ public class AggregationOperatorsTest extends SpecificationTest {
 		assertEvaluatesToWithData(data, "LATEST (v,x,z)", "5");
 		assertEvaluatesTo("EARLIEST ()", "NULL");
 		assertEvaluatesToWithData(data, "EARLIEST (v,z)", "2");
+		assertEvaluatesToWithData(data, "TIME LATEST OF (SORT TIME (z,v,x))", "2000-01-01T00:00:00");
+		assertEvaluatesToWithData(data, "EARLIEST (SORT TIME (v,z,y))", "3");
+		assertEvaluatesToWithData(data, "LATEST (SORT TIME (v,3))", "NULL");
 	}
 
 	@Test
@@ -102,6 +102,25 @@ public class IsComparisonOperatorsTest extends SpecificationTest {
 		assertEvaluatesToWithData(data, "TIME FIRST ((5,y) IS IN (x,y,z))", "NULL");
 	}
 
+	@Test
+	public void testIsInLongList() throws Exception {
+		// long and constant right-hand lists are searched using a hash index
+		assertEvaluatesTo("(3,25,0) IS IN (1 SEQTO 20)", "(TRUE,FALSE,FALSE)");
+		assertEvaluatesTo("(0,-0) IS IN (1 SEQTO 8, -0)", "(TRUE,TRUE)");
+		assertEvaluatesTo("(\"b\",NULL,\"x\") IS IN (\"a\",\"b\",NULL,\"c\")", "(TRUE,TRUE,FALSE)");
+		assertEvaluatesTo("(1990-01-01,1991-01-01) IS IN (1990-01-01T00:00:00,1992-01-01)", "(TRUE,FALSE)");
+		assertEvaluatesTo("(TRUE,3) IS IN (FALSE,\"3\",3)", "(FALSE,TRUE)");
+
+		String data = createCodeBuilder()
+				.addData("x := 5; TIME x := 1990-01-01T00:00:00;")
+				.addData("y := 3; TIME y := 1990-01-02T00:00:00;")
+				.addData("z := 2; TIME z := 1990-01-03T00:00:00;")
+				.toString();
+		assertEvaluatesToWithData(data, "TIME FIRST ((x,y) IS IN (x,y,z,10 SEQTO 20))", "1990-01-01T00:00:00");
+		assertEvaluatesToWithData(data, "TIME FIRST ((5,y) IS IN (x,y,z,10 SEQTO 20))", "NULL");
+		assertEvaluatesToWithData(data, "TIME FIRST ((x,y) IS IN (5,3,2))", "NULL");
+	}
+
 	@Test
 	@Compatibility(min = ArdenVersion.V2_9)
 	public void testIsInFuzzy() throws Exception {
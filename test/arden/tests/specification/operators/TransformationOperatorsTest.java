@@ -72,6 +72,25 @@ public class TransformationOperatorsTest extends SpecificationTest {
 		assertEvaluatesToWithData(createData(), "TIME FIRST FIRST 1 FROM mylist", "1995-01-01T00:00:00");
 	}
 
+	@Test
+	@Compatibility(min = ArdenVersion.V2)
+	public void testFirstLastFromSort() throws Exception {
+		assertEvaluatesTo("FIRST 3 FROM (SORT (8,3,9,1,5,2,7))", "(1,2,3)");
+		assertEvaluatesTo("LAST 2 FROM (SORT DATA (8,3,9,1,5,2,7))", "(8,9)");
+		assertEvaluatesTo("FIRST 0 FROM (SORT (3,1,2))", "()");
+		assertEvaluatesTo("FIRST 5 FROM (SORT (3,1,2))", "(1,2,3)");
+		assertEvaluatesTo("FIRST 2 FROM (SORT (\"b\",\"c\",\"a\"))", "(\"a\",\"b\")");
+		assertEvaluatesTo("FIRST 2 FROM (SORT (3,\"a\",1))", "(,NULL)");
+		assertEvaluatesTo("FIRST (-1) FROM (SORT (3,1,2))", "NULL");
+
+		// equal elements keep their order
+		String data = createData();
+		assertEvaluatesToWithData(data, "TIME FIRST (LAST 2 FROM (SORT (z,v,w,x)))", "2000-01-01T00:00:00");
+		assertEvaluatesToWithData(data, "TIME LAST (FIRST 4 FROM (SORT (x,w,v,z,y)))", "1990-01-01T00:00:00");
+		assertEvaluatesToWithData(data, "TIME LAST (FIRST 4 FROM (SORT (v,w,x,z,y)))", "2000-01-01T00:00:00");
+		assertEvaluatesToWithData(data, "FIRST 2 FROM (SORT TIME (v,z,x))", "(5,2)");
+	}
+
 	@Test
 	@Compatibility(max = ArdenVersion.V1, pedantic = true)
 	public void testFirstV1() throws Exception {
@@ -576,6 +576,112 @@ public class LogicSlotTest extends SpecificationTest {
 		assertInvalid(reassign);
 	}
 
+	@Test
+	public void testSeqtoForLoop() throws Exception {
+		String sum = createEmptyLogicSlotCodeBuilder()
+				.addData("s := 0;")
+				.addLogic("FOR i IN 3 SEQTO 6 DO s := s + i;")
+				.addLogic("ENDDO;")
+				.addLogic("CONCLUDE TRUE;")
+				.addAction("RETURN s;")
+				.toString();
+		assertReturns(sum, "18");
+
+		String unusedVariable = createEmptyLogicSlotCodeBuilder()
+				.addData("n := 0;")
+				.addLogic("FOR i IN -2 SEQTO 2 DO n := n + 1;")
+				.addLogic("ENDDO;")
+				.addLogic("CONCLUDE TRUE;")
+				.addAction("RETURN n;")
+				.toString();
+		assertReturns(unusedVariable, "5");
+
+		String nested = createEmptyLogicSlotCodeBuilder()
+				.addData("s := 0;")
+				.addLogic("FOR i IN 1 SEQTO 3 DO FOR j IN i SEQTO 3 DO s := s + i * j; ENDDO;")
+				.addLogic("ENDDO;")
+				.addLogic("CONCLUDE TRUE;")
+				.addAction("RETURN s;")
+				.toString();
+		assertReturns(nested, "25");
+
+		String noIterations = createEmptyLogicSlotCodeBuilder()
+				.addData("n := 0;")
+				.addLogic("FOR i IN 3 SEQTO 1 DO n := n + 1; ENDDO;")
+				.addLogic("FOR i IN 1.5 SEQTO 3 DO n := n + 1; ENDDO;")
+				.addLogic("FOR i IN 1 SEQTO NULL DO n := n + 1; ENDDO;")
+				.addLogic("CONCLUDE TRUE;")
+				.addAction("RETURN n;")
+				.toString();
+		assertReturns(noIterations, "0");
+
+		String loopVariable = createEmptyLogicSlotCodeBuilder()
+				.addData("r := ();")
+				.addLogic("FOR i IN 1 SEQTO 3 DO r := r, (TIME i), i IS NUMBER;")
+				.addLogic("ENDDO;")
+				.addLogic("CONCLUDE TRUE;")
+				.addAction("RETURN r;")
+				.toString();
+		assertReturns(loopVariable, "(NULL,TRUE,NULL,TRUE,NULL,TRUE)");
+	}
+
+	@Test
+	public void testListAppendInLoop() throws Exception {
+		String forLoop = createEmptyLogicSlotCodeBuilder()
+				.addData("result := ();")
+				.addLogic("FOR i IN 1 SEQTO 20 DO result := result, i * 2;")
+				.addLogic("ENDDO;")
+				.addLogic("CONCLUDE TRUE;")
+				.addAction("RETURN (COUNT result, LAST result);")
+				.toString();
+		assertReturns(forLoop, "(20,40)");
+
+		String whileLoop = createEmptyLogicSlotCodeBuilder()
+				.addData("result := NULL; i := 0;")
+				.addLogic("WHILE i < 3 DO i := i + 1; result := result, (i, \"a\");")
+				.addLogic("ENDDO;")
+				.addLogic("CONCLUDE TRUE;")
+				.addAction("RETURN result;")
+				.toString();
+		assertReturns(whileLoop, "(null,1,\"a\",2,\"a\",3,\"a\")");
+
+		String nested = createEmptyLogicSlotCodeBuilder()
+				.addData("result := ();")
+				.addLogic("FOR i IN (1,2) DO FOR j IN (3,4) DO result := result, i * j; ENDDO;")
+				.addLogic("ENDDO;")
+				.addLogic("CONCLUDE TRUE;")
+				.addAction("RETURN result;")
+				.toString();
+		assertReturns(nested, "(3,4,6,8)");
+
+		String noIterations = createEmptyLogicSlotCodeBuilder()
+				.addData("result := 5;")
+				.addLogic("FOR i IN () DO result := result, i;")
+				.addLogic("ENDDO;")
+				.addLogic("CONCLUDE TRUE;")
+				.addAction("RETURN result;")
+				.toString();
+		assertReturns(noIterations, "5");
+
+		String readInLoop = createEmptyLogicSlotCodeBuilder()
+				.addData("result := ();")
+				.addLogic("FOR i IN 1 SEQTO 3 DO result := result, COUNT result;")
+				.addLogic("ENDDO;")
+				.addLogic("CONCLUDE TRUE;")
+				.addAction("RETURN result;")
+				.toString();
+		assertReturns(readInLoop, "(0,1,2)");
+
+		String concludeInLoop = createEmptyLogicSlotCodeBuilder()
+				.addData("result := ();")
+				.addLogic("FOR i IN 1 SEQTO 3 DO result := result, i; IF i = 2 THEN CONCLUDE TRUE; ENDIF;")
+				.addLogic("ENDDO;")
+				.addLogic("CONCLUDE FALSE;")
+				.addAction("RETURN result;")
+				.toString();
+		assertReturns(concludeInLoop, "(1,2)");
+	}
+
 	@Test
 	@Compatibility(min = ArdenVersion.V2_5)
 	public void testNewStatement() throws Exception {